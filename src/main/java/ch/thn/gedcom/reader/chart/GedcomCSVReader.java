@@ -28,7 +28,9 @@ import ch.thn.gedcom.reader.chart.GedcomChartEnums.Columns;
 import ch.thn.gedcom.reader.chart.core.AbstractTableReader;
 import ch.thn.gedcom.reader.chart.core.CSVReader;
 import ch.thn.gedcom.reader.chart.core.ChartLinePostProcessor;
+import ch.thn.gedcom.reader.chart.core.ChartTable;
 import ch.thn.gedcom.reader.chart.core.ChartValuePreProcessor;
+import ch.thn.gedcom.reader.chart.core.ColumnMapping;
 import ch.thn.gedcom.store.GedcomStore;
 
 /**
@@ -46,6 +48,12 @@ public class GedcomCSVReader extends GedcomReader {
 	public static final int CSV_TAB = 3;
 	
 	private GedcomChartConverter converter = null;
+	
+	private ColumnMapping columnMapping = null;
+	
+	private boolean columnar = false;
+	
+	private boolean streaming = false;
 		
 	
 	/**
@@ -59,6 +67,67 @@ public class GedcomCSVReader extends GedcomReader {
 		converter = new GedcomChartConverter(store);
 	}
 	
+	/**
+	 * Sets the mapping of the column names of the chart to the internally used 
+	 * columns. Each reader can have its own mapping.
+	 * 
+	 * @param columnMapping The mapping or <code>null</code> to use the column 
+	 * names of {@link Columns}
+	 */
+	public void setColumnMapping(ColumnMapping columnMapping) {
+		this.columnMapping = columnMapping;
+	}
+	
+	/**
+	 * 
+	 * 
+	 * @return
+	 */
+	public ColumnMapping getColumnMapping() {
+		return columnMapping;
+	}
+	
+	/**
+	 * If set to <code>true</code>, the chart is read into a {@link ChartTable}, 
+	 * which keeps the chart by column and resolves the partners and parents 
+	 * by their row, instead of keeping a map for each line.
+	 * 
+	 * @param columnar
+	 */
+	public void setColumnar(boolean columnar) {
+		this.columnar = columnar;
+	}
+	
+	/**
+	 * 
+	 * 
+	 * @return
+	 */
+	public boolean isColumnar() {
+		return columnar;
+	}
+	
+	/**
+	 * If set to <code>true</code>, the individuals are created while the 
+	 * lines are read and only the columns which are needed to create the 
+	 * families are kept in memory, instead of reading the whole chart first. 
+	 * This takes precedence over {@link #setColumnar(boolean)}.
+	 * 
+	 * @param streaming
+	 */
+	public void setStreaming(boolean streaming) {
+		this.streaming = streaming;
+	}
+	
+	/**
+	 * 
+	 * 
+	 * @return
+	 */
+	public boolean isStreaming() {
+		return streaming;
+	}
+	
 	/**
 	 * Reads the data of the whole CSV file
 	 * 
@@ -74,10 +143,10 @@ public class GedcomCSVReader extends GedcomReader {
 	public boolean read(String csvFileName, int columnSeparator, 
 			ChartValuePreProcessor valuePreProcessor, ChartLinePostProcessor linePostProcessor) 
 			throws GedcomReaderException, FileNotFoundException, IOException {
-		CSVReader reader = new CSVReader(getCsvPreference(columnSeparator), valuePreProcessor, linePostProcessor);
+		CSVReader reader = new CSVReader(getCsvPreference(columnSeparator), columnMapping, 
+				valuePreProcessor, linePostProcessor);
 		reader.open(csvFileName);
-		Map<String, Map<Columns, Object>> data = doReading(reader);
-		converter.convert(data, getStructureStorage());
+		doReading(reader);
 		return true;
 	}
 	
@@ -95,10 +164,10 @@ public class GedcomCSVReader extends GedcomReader {
 	public boolean read(Reader inputReader, int columnSeparator, 
 			ChartValuePreProcessor valuePreProcessor, ChartLinePostProcessor linePostProcessor) 
 			throws GedcomReaderException, IOException {
-		CSVReader reader = new CSVReader(getCsvPreference(columnSeparator), valuePreProcessor, linePostProcessor);
+		CSVReader reader = new CSVReader(getCsvPreference(columnSeparator), columnMapping, 
+				valuePreProcessor, linePostProcessor);
 		reader.open(inputReader);
-		Map<String, Map<Columns, Object>> data = doReading(reader);
-		converter.convert(data, getStructureStorage());
+		doReading(reader);
 		return true;
 	}
 	
@@ -124,13 +193,37 @@ public class GedcomCSVReader extends GedcomReader {
 	}
 	
 	/**
-	 * 
+	 * Reads all the lines and converts them
 	 * 
 	 * @param reader
-	 * @return
 	 * @throws GedcomReaderException
 	 */
-	private Map<String, Map<Columns, Object>> doReading(AbstractTableReader reader) throws GedcomReaderException {
+	private void doReading(AbstractTableReader reader) throws GedcomReaderException {
+		if (streaming) {
+			try {
+				converter.convert(reader, getStructureStorage());
+			} finally {
+				reader.close();
+			}
+			
+			return;
+		}
+		
+		if (columnar) {
+			ChartTable table = null;
+			
+			try {
+				table = reader.readTable();
+				
+				System.out.println("CSV data loaded with " + table.size() + " lines.");	
+			} finally {
+				reader.close();
+			}
+			
+			converter.convert(table, getStructureStorage());
+			return;
+		}
+		
 		Map<String, Map<Columns, Object>> chartData = null;
 		
 		//Read all CSV data at once
@@ -142,7 +235,7 @@ public class GedcomCSVReader extends GedcomReader {
 			reader.close();
 		}
 		
-		return chartData;
+		converter.convert(chartData, reader.getSchema(), getStructureStorage());
 	}
 	
 
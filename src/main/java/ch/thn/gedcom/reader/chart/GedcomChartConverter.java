@@ -22,8 +22,14 @@ import ch.thn.gedcom.creator.GedcomCreatorStructureStorage;
 import ch.thn.gedcom.creator.structures.GedcomFamily;
 import ch.thn.gedcom.creator.structures.GedcomIndividual;
 import ch.thn.gedcom.reader.GedcomReaderError;
+import ch.thn.gedcom.reader.GedcomReaderException;
 import ch.thn.gedcom.reader.GedcomReaderUtil;
 import ch.thn.gedcom.reader.chart.GedcomChartEnums.Columns;
+import ch.thn.gedcom.reader.chart.core.AbstractTableReader;
+import ch.thn.gedcom.reader.chart.core.ChartLineListener;
+import ch.thn.gedcom.reader.chart.core.ChartRow;
+import ch.thn.gedcom.reader.chart.core.ChartSchema;
+import ch.thn.gedcom.reader.chart.core.ChartTable;
 import ch.thn.gedcom.store.GedcomStore;
 
 /**
@@ -39,6 +45,11 @@ public class GedcomChartConverter {
 		
 	private static int familyIdCount = 1;
 	
+	/** The columns which are needed to create and link the families */
+	private static final Columns[] RELATION_COLUMNS = {Columns.ID, Columns.GENDER, 
+		Columns.PARENT1_ID, Columns.PARENT2_ID, Columns.PARTNER_ID, Columns.CIVIL_STATUS, 
+		Columns.MARRIAGE_DATE, Columns.LAST_MODIFIED};
+	
 	
 	
 	/**
@@ -72,7 +83,7 @@ public class GedcomChartConverter {
 	 * &lt;Individual ID &lt;Column, Cell value&gt;&gt;
 	 */
 	public void convert(Map<String, Map<Columns, Object>> chartData) {
-		convert(chartData);
+		convert(chartData, structureStorage);
 	}
 	
 	/**
@@ -86,21 +97,41 @@ public class GedcomChartConverter {
 	 */
 	public void convert(Map<String, Map<Columns, Object>> chartData, 
 			GedcomCreatorStructureStorage structureStorage) {
+		convert(chartData, null, structureStorage);
+	}
+	
+	/**
+	 * Converts the given chart data into gedcom individual and family records. 
+	 * If the schema of the chart has all the mandatory columns, the rows are 
+	 * not checked again.
+	 * 
+	 * @param chartData A map which contains all the chart lines and their columns 
+	 * with values. The inner map contains the columns with values, and the outer 
+	 * map contains the individual ID as string and the inner map.<br />
+	 * &lt;Individual ID &lt;Column, Cell value&gt;&gt;
+	 * @param schema The schema of the chart, as read by the table reader. If 
+	 * <code>null</code>, all the rows are checked for the mandatory columns.
+	 * @param structureStorage Add the converted structures to this storage
+	 */
+	public void convert(Map<String, Map<Columns, Object>> chartData, ChartSchema schema, 
+			GedcomCreatorStructureStorage structureStorage) {
 		this.structureStorage = structureStorage;
 		
 		if (chartData == null || chartData.size() == 0) {
 			return;
 		}
 		
-		//Check if all mandatory columns are present
+		//Check if all mandatory columns are present. A line post processor 
+		//could have added the columns which are missing from the schema.
 		Columns[] allColumns = Columns.values();
 		for (int i = 0; i < allColumns.length; i++) {
-			if (allColumns[i].isMandatory()) {
+			if (allColumns[i].isMandatory() 
+					&& (schema == null || !schema.hasColumn(allColumns[i]))) {
 				//Checks ALL the rows if the mandatory column is present
-				//TODO use a table object -> for example google guavas Table
 				for (Map<Columns, Object> row : chartData.values()) {
 					if (!row.containsKey(allColumns[i])) {
-						throw new GedcomReaderError("Mandatory column " + allColumns[i].getValue() + 
+						throw new GedcomReaderError("Mandatory column " + 
+								GedcomChartConverterUtil.getColumnName(allColumns[i], schema) + 
 								" is missing from row " + row);
 					}
 				}
@@ -137,6 +168,167 @@ public class GedcomChartConverter {
 			GedcomChartConverterUtil.createFamilyIndividualLinks(structureStorage, individualData);
 		}
 		
+		finish();
+	}
+	
+	/**
+	 * Converts the given chart table into gedcom individual and family records. 
+	 * The partners and parents of the individuals are looked up with the 
+	 * related rows of the table instead of searching the IDs for each individual.<br>
+	 * <br>
+	 * A table has a column as soon as one of its rows has it, so the rows have 
+	 * to be checked for the mandatory columns when they are added, like 
+	 * {@link AbstractTableReader#readTable()} does. Here, only the columns of 
+	 * the table are checked.
+	 * 
+	 * @param table
+	 * @param structureStorage Add the converted structures to this storage
+	 */
+	public void convert(ChartTable table, GedcomCreatorStructureStorage structureStorage) {
+		this.structureStorage = structureStorage;
+		
+		if (table == null || table.size() == 0) {
+			return;
+		}
+		
+		//Check if all mandatory columns are present. The rows themselves have 
+		//been checked when they have been added to the table.
+		Columns[] allColumns = Columns.values();
+		for (int i = 0; i < allColumns.length; i++) {
+			if (allColumns[i].isMandatory() && !table.hasColumn(allColumns[i])) {
+				throw new GedcomReaderError("Mandatory column " + allColumns[i].getValue() + 
+						" is missing from row " + table.getRow(0));
+			}
+		}
+		
+		System.out.println("Creating individuals...");
+		for (int row = 0; row < table.size(); row++) {
+			//Creates an individual record for each line
+			GedcomIndividual individual = GedcomChartConverterUtil.createIndividual(store, table.getRow(row));
+			structureStorage.addIndividual(individual);
+		}
+		
+		createFamilies(table);
+		finish();
+	}
+	
+	/**
+	 * Converts the lines of the given reader into gedcom individual and family 
+	 * records while they are read. The individuals are created as soon as their 
+	 * line has been read, and only the columns which are needed to create the 
+	 * families are kept in a {@link ChartTable}. The families are created and 
+	 * linked after all the lines have been read.<br>
+	 * <br>
+	 * If several lines have the same ID, the first line is kept and the later 
+	 * lines are ignored, since the individual of the first line has already 
+	 * been created. This is different from the chart data map of 
+	 * {@link AbstractTableReader#readAll()} and from 
+	 * {@link AbstractTableReader#readTable()}, where the last line replaces 
+	 * the previous ones.<br>
+	 * <br>
+	 * The reader has to be opened or initialized, it is not closed.
+	 * 
+	 * @param reader
+	 * @param structureStorage Add the converted structures to this storage
+	 * @throws GedcomReaderException
+	 */
+	public void convert(AbstractTableReader reader, 
+			final GedcomCreatorStructureStorage structureStorage) throws GedcomReaderException {
+		this.structureStorage = structureStorage;
+		
+		final ChartSchema schema = reader.getSchema();
+		final ChartTable relations = new ChartTable();
+		
+		System.out.println("Creating individuals...");
+		int count = reader.readLines(new ChartLineListener() {
+			
+			@Override
+			public void lineRead(Map<Columns, Object> line) {
+				GedcomChartConverterUtil.checkMandatoryColumns(line, schema);
+				
+				if (relations.findRow(GedcomChartConverterUtil.getString(line, Columns.ID)) != -1) {
+					System.err.println("Line with ID " + line.get(Columns.ID) + 
+							" already exists. Ignoring this line.");
+					return;
+				}
+				
+				//Creates an individual record for each line
+				GedcomIndividual individual = GedcomChartConverterUtil.createIndividual(store, line);
+				structureStorage.addIndividual(individual);
+				
+				ChartRow relation = new ChartRow();
+				for (Columns column : RELATION_COLUMNS) {
+					if (line.containsKey(column)) {
+						relation.put(column, line.get(column));
+					}
+				}
+				
+				relations.addRow(relation);
+			}
+		});
+		
+		System.out.println("Chart data converted with " + count + " lines.");
+		
+		if (relations.size() == 0) {
+			return;
+		}
+		
+		createFamilies(relations);
+		finish();
+	}
+	
+	/**
+	 * Creates the families of each row of the table with its partner and with 
+	 * its parents, and then links the individuals to their families
+	 * 
+	 * @param table
+	 */
+	private void createFamilies(ChartTable table) {
+		System.out.println("Creating families...");
+		for (int row = 0; row < table.size(); row++) {
+			Map<Columns, Object> individualData = table.getRow(row);
+			
+			//Create family from individual and partner
+			Map<Columns, Object> partnerData = getRelatedRow(table, row, Columns.PARTNER_ID);
+			String family1Id = String.valueOf(++familyIdCount);
+			GedcomFamily family1 = GedcomChartConverterUtil.createFamily(store, family1Id, individualData, partnerData);
+			structureStorage.addFamily(family1Id, family1);
+			
+			//Create family from parents
+			Map<Columns, Object> parent1Data = getRelatedRow(table, row, Columns.PARENT1_ID);
+			Map<Columns, Object> parent2Data = getRelatedRow(table, row, Columns.PARENT2_ID);
+			String family2Id = String.valueOf(++familyIdCount);
+			GedcomFamily family2 = GedcomChartConverterUtil.createFamily(store, family2Id, parent1Data, parent2Data);
+			structureStorage.addFamily(family2Id, family2);
+		}
+		
+		System.out.println("Linking individuals and families...");
+		//Now since all the family ID's are known, the families can be linked 
+		//to their children and parents
+		for (int row = 0; row < table.size(); row++) {
+			GedcomChartConverterUtil.createFamilyIndividualLinks(structureStorage, table.getRow(row));
+		}
+	}
+	
+	/**
+	 * 
+	 * 
+	 * @param table
+	 * @param row
+	 * @param column
+	 * @return The related row or <code>null</code> if there is none
+	 */
+	private Map<Columns, Object> getRelatedRow(ChartTable table, int row, Columns column) {
+		int related = table.getRelatedRow(row, column);
+		return related < 0 ? null : table.getRow(related);
+	}
+	
+	/**
+	 * Cleans up the storage and builds the family relations after all the 
+	 * individuals and families have been created and linked
+	 * 
+	 */
+	private void finish() {
 		System.out.println("Cleanup...");
 		structureStorage.cleanup();
 		
@@ -144,8 +336,6 @@ public class GedcomChartConverter {
 		structureStorage.buildFamilyRelations();
 		
 		System.out.println(GedcomReaderUtil.printStorageStatistics(structureStorage));
-
-		
 	}
 
 }
@@ -34,6 +34,9 @@ import ch.thn.gedcom.data.GedcomError;
 import ch.thn.gedcom.reader.GedcomReaderError;
 import ch.thn.gedcom.reader.chart.GedcomChartEnums.CivilStatus;
 import ch.thn.gedcom.reader.chart.GedcomChartEnums.Columns;
+import ch.thn.gedcom.reader.chart.core.ChartRow;
+import ch.thn.gedcom.reader.chart.core.ChartSchema;
+import ch.thn.gedcom.reader.chart.core.ChartTable;
 import ch.thn.gedcom.store.GedcomStore;
 
 /**
@@ -467,6 +470,40 @@ public class GedcomChartConverterUtil {
 	}
 	
 	
+	/**
+	 * Checks if the line has the mandatory columns which are not in the schema. 
+	 * A line post processor could have added a mandatory column which is 
+	 * missing from the schema to some lines only.
+	 * 
+	 * @param line
+	 * @param schema The schema or <code>null</code> to check all the mandatory 
+	 * columns
+	 * @throws GedcomReaderError If a mandatory column is missing
+	 */
+	public static void checkMandatoryColumns(Map<Columns, Object> line, ChartSchema schema) {
+		Columns[] allColumns = Columns.values();
+		for (int i = 0; i < allColumns.length; i++) {
+			if (allColumns[i].isMandatory() 
+					&& (schema == null || !schema.hasColumn(allColumns[i])) 
+					&& !line.containsKey(allColumns[i])) {
+				throw new GedcomReaderError("Mandatory column " + getColumnName(allColumns[i], schema) + 
+						" is missing from row " + line);
+			}
+		}
+	}
+	
+	/**
+	 * The name of the given column in the chart
+	 * 
+	 * @param column
+	 * @param schema The schema or <code>null</code> to use the column name 
+	 * which is currently set for the column
+	 * @return
+	 */
+	public static String getColumnName(Columns column, ChartSchema schema) {
+		return schema == null ? column.getValue() : schema.getColumnName(column);
+	}
+	
 	/**
 	 * Returns the string representation of the value stored for the given key. 
 	 * If there is a value stored for that key, the value is returned. If the 
@@ -479,6 +516,14 @@ public class GedcomChartConverterUtil {
 	 * @throws FamilyChartConverterError If the key does not exist for the data
 	 */
 	public static String getString(Map<Columns, Object> data, Columns column) {
+		if (data instanceof ChartRow) {
+			return ((ChartRow)data).getString(column);
+		}
+		
+		if (data instanceof ChartTable.Row) {
+			return ((ChartTable.Row)data).getString(column);
+		}
+		
 		if (!data.containsKey(column)) {
 			throw new GedcomReaderError("No such column " + column);
 		}
@@ -509,6 +554,14 @@ public class GedcomChartConverterUtil {
 	 * @throws FamilyChartConverterError If the key does not exist for the data
 	 */
 	public static int getInteger(Map<Columns, Object> data, Columns column) {
+		if (data instanceof ChartRow) {
+			return ((ChartRow)data).getInteger(column);
+		}
+		
+		if (data instanceof ChartTable.Row) {
+			return ((ChartTable.Row)data).getInteger(column);
+		}
+		
 		if (!data.containsKey(column)) {
 			throw new GedcomReaderError("No such column " + column);
 		}
@@ -24,8 +24,10 @@ import ch.thn.gedcom.reader.GedcomReaderException;
 import ch.thn.gedcom.reader.chart.GedcomChartEnums.Columns;
 import ch.thn.gedcom.reader.chart.core.AbstractTableReader;
 import ch.thn.gedcom.reader.chart.core.ChartLinePostProcessor;
+import ch.thn.gedcom.reader.chart.core.ChartTable;
 import ch.thn.gedcom.reader.chart.core.ResultSetReader;
 import ch.thn.gedcom.reader.chart.core.ChartValuePreProcessor;
+import ch.thn.gedcom.reader.chart.core.ColumnMapping;
 import ch.thn.gedcom.store.GedcomStore;
 
 /**
@@ -41,6 +43,12 @@ public class GedcomResultSetReader extends GedcomReader {
 	
 	private GedcomChartConverter converter = null;
 	
+	private ColumnMapping columnMapping = null;
+	
+	private boolean columnar = false;
+	
+	private boolean streaming = false;
+	
 	
 	/**
 	 * 
@@ -54,6 +62,67 @@ public class GedcomResultSetReader extends GedcomReader {
 		
 	}
 	
+	/**
+	 * Sets the mapping of the column names of the chart to the internally used 
+	 * columns. Each reader can have its own mapping.
+	 * 
+	 * @param columnMapping The mapping or <code>null</code> to use the column 
+	 * names of {@link Columns}
+	 */
+	public void setColumnMapping(ColumnMapping columnMapping) {
+		this.columnMapping = columnMapping;
+	}
+	
+	/**
+	 * 
+	 * 
+	 * @return
+	 */
+	public ColumnMapping getColumnMapping() {
+		return columnMapping;
+	}
+	
+	/**
+	 * If set to <code>true</code>, the chart is read into a {@link ChartTable}, 
+	 * which keeps the chart by column and resolves the partners and parents 
+	 * by their row, instead of keeping a map for each line.
+	 * 
+	 * @param columnar
+	 */
+	public void setColumnar(boolean columnar) {
+		this.columnar = columnar;
+	}
+	
+	/**
+	 * 
+	 * 
+	 * @return
+	 */
+	public boolean isColumnar() {
+		return columnar;
+	}
+	
+	/**
+	 * If set to <code>true</code>, the individuals are created while the 
+	 * lines are read and only the columns which are needed to create the 
+	 * families are kept in memory, instead of reading the whole chart first. 
+	 * This takes precedence over {@link #setColumnar(boolean)}.
+	 * 
+	 * @param streaming
+	 */
+	public void setStreaming(boolean streaming) {
+		this.streaming = streaming;
+	}
+	
+	/**
+	 * 
+	 * 
+	 * @return
+	 */
+	public boolean isStreaming() {
+		return streaming;
+	}
+	
 	/**
 	 * 
 	 * 
@@ -67,21 +136,45 @@ public class GedcomResultSetReader extends GedcomReader {
 			ChartValuePreProcessor valuePreProcessor, ChartLinePostProcessor linePostProcessor) 
 			throws GedcomReaderException {
 		
-		ResultSetReader reader = new ResultSetReader(valuePreProcessor, linePostProcessor);
+		ResultSetReader reader = new ResultSetReader(columnMapping, valuePreProcessor, 
+				linePostProcessor);
 		reader.init(resultSet);
-		Map<String, Map<Columns, Object>> data = doReading(reader);
-		converter.convert(data, getStructureStorage());
+		doReading(reader);
 		return true;
 	}
 	
 	/**
-	 * 
+	 * Reads all the lines and converts them
 	 * 
 	 * @param reader
-	 * @return
 	 * @throws GedcomReaderException
 	 */
-	private Map<String, Map<Columns, Object>> doReading(AbstractTableReader reader) throws GedcomReaderException {
+	private void doReading(AbstractTableReader reader) throws GedcomReaderException {
+		if (streaming) {
+			try {
+				converter.convert(reader, getStructureStorage());
+			} finally {
+				reader.close();
+			}
+			
+			return;
+		}
+		
+		if (columnar) {
+			ChartTable table = null;
+			
+			try {
+				table = reader.readTable();
+				
+				System.out.println("Result set loaded with " + table.size() + " lines.");	
+			} finally {
+				reader.close();
+			}
+			
+			converter.convert(table, getStructureStorage());
+			return;
+		}
+		
 		Map<String, Map<Columns, Object>> chartData = null;
 		
 		//Read all data at once
@@ -93,7 +186,7 @@ public class GedcomResultSetReader extends GedcomReader {
 			reader.close();
 		}
 		
-		return chartData;
+		converter.convert(chartData, reader.getSchema(), getStructureStorage());
 	}
 	
 
@@ -19,6 +19,7 @@ package ch.thn.gedcom.reader.chart.core;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
+import ch.thn.gedcom.reader.GedcomReaderError;
 import ch.thn.gedcom.reader.GedcomReaderException;
 import ch.thn.gedcom.reader.chart.GedcomChartConverterUtil;
 import ch.thn.gedcom.reader.chart.GedcomChartEnums.Columns;
@@ -30,21 +31,40 @@ import ch.thn.gedcom.reader.chart.GedcomChartEnums.Columns;
 public abstract class AbstractTableReader {
 	
 	
-	/** Holds the whole csv file data */
+	/** Holds the whole csv file data, the rows are {@link ChartRow}s */
 	private  Map<String, Map<Columns, Object>> chartData = null;
 		
 	private ChartValuePreProcessor valuePreProcessor = null;
 	private ChartLinePostProcessor linePostProcessor = null;
 	
+	private ColumnMapping columnMapping = null;
+	
+	private ChartSchema schema = null;
+	
 	/**
 	 * 
 	 * 
-	 * @param columnSeparator
 	 * @param valuePreProcessor
 	 * @param linePostProcessor
 	 */
 	public AbstractTableReader(ChartValuePreProcessor valuePreProcessor, 
 			ChartLinePostProcessor linePostProcessor) {
+		this(null, valuePreProcessor, linePostProcessor);
+	}
+	
+	/**
+	 * 
+	 * 
+	 * @param columnMapping The mapping of the column names. If <code>null</code>, 
+	 * a mapping with the column names of {@link Columns} is created when the 
+	 * header is read.
+	 * @param valuePreProcessor
+	 * @param linePostProcessor
+	 */
+	public AbstractTableReader(ColumnMapping columnMapping, 
+			ChartValuePreProcessor valuePreProcessor, 
+			ChartLinePostProcessor linePostProcessor) {
+		this.columnMapping = columnMapping;
 		this.valuePreProcessor = valuePreProcessor;
 		this.linePostProcessor = linePostProcessor;
 				
@@ -68,6 +88,52 @@ public abstract class AbstractTableReader {
 		return linePostProcessor;
 	}
 	
+	/**
+	 * Resolves the columns of the given header with the column mapping of 
+	 * this reader and creates the {@link ChartSchema} of the chart. If there 
+	 * is no line post processor which could still add columns to the lines, 
+	 * the mandatory columns are checked right away.
+	 * 
+	 * @param header
+	 * @return The {@link Columns#ordinal()} of each column of the header or 
+	 * {@link ColumnMapping#UNKNOWN_COLUMN}
+	 * @throws GedcomReaderError If a mandatory column is missing
+	 */
+	protected int[] resolveHeader(String[] header) {
+		if (columnMapping == null) {
+			columnMapping = new ColumnMapping();
+		}
+		
+		int[] columnOrdinals = columnMapping.resolve(header);
+		schema = new ChartSchema(header, columnOrdinals, columnMapping);
+		
+		if (linePostProcessor == null) {
+			schema.validate();
+		}
+		
+		return columnOrdinals;
+	}
+	
+	/**
+	 * 
+	 * 
+	 * @return The schema of the chart or <code>null</code> if no header has 
+	 * been read yet
+	 */
+	public ChartSchema getSchema() {
+		return schema;
+	}
+	
+	/**
+	 * 
+	 * 
+	 * @return The column mapping or <code>null</code> if no header has been 
+	 * read yet and no mapping has been set
+	 */
+	public ColumnMapping getColumnMapping() {
+		return columnMapping;
+	}
+	
 	/**
 	 * 
 	 * 
@@ -106,6 +172,60 @@ public abstract class AbstractTableReader {
 		return chartData;
 	}
 	
+	/**
+	 * Reads all the lines into a {@link ChartTable}, which keeps the chart 
+	 * by column instead of a map for each line. Since the table has a column 
+	 * as soon as one line has it, the lines are checked for the mandatory 
+	 * columns which are not in the schema before they are added.
+	 * 
+	 * @return
+	 * @throws GedcomReaderException
+	 * @throws GedcomReaderError If a line does not have a mandatory column
+	 */
+	public ChartTable readTable() throws GedcomReaderException {
+		ChartTable table = new ChartTable();
+		Map<Columns, Object> readLine = null;
+		
+		while ((readLine = readLine()) != null) {
+			if (getLinePostProcessor() != null) {
+				getLinePostProcessor().process(readLine);
+			}
+			
+			GedcomChartConverterUtil.checkMandatoryColumns(readLine, schema);
+			
+			if (!table.addRow(readLine)) {
+				System.err.println("Line with ID " + readLine.get(Columns.ID) + 
+						" already exists. Overwriting previous entry.");
+			}
+		}
+		
+		return table;
+	}
+	
+	/**
+	 * Reads all the lines and passes them to the given listener one by one. 
+	 * The lines are not kept by the reader.
+	 * 
+	 * @param listener
+	 * @return The number of lines which have been read
+	 * @throws GedcomReaderException
+	 */
+	public int readLines(ChartLineListener listener) throws GedcomReaderException {
+		Map<Columns, Object> readLine = null;
+		int count = 0;
+		
+		while ((readLine = readLine()) != null) {
+			if (getLinePostProcessor() != null) {
+				getLinePostProcessor().process(readLine);
+			}
+			
+			listener.lineRead(readLine);
+			count++;
+		}
+		
+		return count;
+	}
+	
 	/**
 	 * 
 	 * 
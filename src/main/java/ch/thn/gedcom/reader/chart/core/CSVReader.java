@@ -22,13 +22,11 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.Reader;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Map.Entry;
+import java.util.List;
 
 import org.supercsv.cellprocessor.ift.CellProcessor;
-import org.supercsv.io.CsvMapReader;
-import org.supercsv.io.ICsvMapReader;
+import org.supercsv.io.CsvListReader;
+import org.supercsv.io.ICsvListReader;
 import org.supercsv.prefs.CsvPreference;
 
 import ch.thn.gedcom.reader.GedcomReaderError;
@@ -41,13 +39,15 @@ import ch.thn.gedcom.reader.chart.GedcomChartEnums.Columns;
  */
 public class CSVReader extends AbstractTableReader {
 
-	private ICsvMapReader mapReader = null;
+	private ICsvListReader listReader = null;
 
 	private CsvPreference columnSeparator = null;
 
 	private CellProcessor[] processors = null;
 
 	private String[] header = null;
+	
+	private int[] columnOrdinals = null;
 
 	/**
 	 * 
@@ -59,7 +59,23 @@ public class CSVReader extends AbstractTableReader {
 	public CSVReader(CsvPreference columnSeparator,
 			ChartValuePreProcessor valuePreProcessor,
 			ChartLinePostProcessor linePostProcessor) {
-		super(valuePreProcessor, linePostProcessor);
+		this(columnSeparator, null, valuePreProcessor, linePostProcessor);
+
+	}
+	
+	/**
+	 * 
+	 * 
+	 * @param columnSeparator
+	 * @param columnMapping The mapping of the column names or <code>null</code> 
+	 * to use the column names of {@link Columns}
+	 * @param valuePreProcessor
+	 * @param linePostProcessor
+	 */
+	public CSVReader(CsvPreference columnSeparator, ColumnMapping columnMapping, 
+			ChartValuePreProcessor valuePreProcessor,
+			ChartLinePostProcessor linePostProcessor) {
+		super(columnMapping, valuePreProcessor, linePostProcessor);
 		this.columnSeparator = columnSeparator;
 
 	}
@@ -75,7 +91,7 @@ public class CSVReader extends AbstractTableReader {
 	 * @param csvFileName
 	 * @throws IOException
 	 * @throws FileNotFoundException
-	 * @throws FamilyChartConverterError
+	 * @throws GedcomReaderError If a mandatory column is missing
 	 */
 	public void open(String csvFileName) throws IOException, FileNotFoundException {
 		open(new InputStreamReader(new FileInputStream(csvFileName), "UTF-8"));
@@ -92,36 +108,48 @@ public class CSVReader extends AbstractTableReader {
 	 * @param inputReader
 	 * @throws IOException
 	 * @throws FileNotFoundException
+	 * @throws GedcomReaderError If a mandatory column is missing
 	 */
 	public void open(Reader inputReader) throws IOException {
-		mapReader = new CsvMapReader(inputReader, columnSeparator);
+		listReader = new CsvListReader(inputReader, columnSeparator);
 
-		header = mapReader.getHeader(true);
+		header = listReader.getHeader(true);
+		
+		if (header == null) {
+			listReader.close();
+			throw new GedcomReaderError("The CSV data does not have a header");
+		}
+		
 		processors = createProcessors(header);
+		
+		try {
+			columnOrdinals = resolveHeader(header);
+		} catch (GedcomReaderError e) {
+			//A mandatory column is missing
+			listReader.close();
+			throw e;
+		}
 
 	}
 
 	@Override
-	protected Map<Columns, Object> readLine() throws GedcomReaderException {
-		if (mapReader == null || header == null || processors == null) {
+	protected ChartRow readLine() throws GedcomReaderException {
+		if (listReader == null || header == null || processors == null) {
 			throw new GedcomReaderError("File not open and initialized");
 		}
 
 		try {
-			Map<String, Object> read = mapReader.read(header, processors);
+			List<Object> read = listReader.read(processors);
 			if (read == null) {
 				//EOF
 				return null;
 			}
 
-			Map<Columns, Object> ret = new HashMap<>();
-			for (Entry<String, Object> entry : read.entrySet()) {
-				try {
-					ret.put(Columns.getEnumForValue(entry.getKey()), entry.getValue());
-				} catch (IllegalArgumentException e) {
-					//Enum constant not found because column label is not in the
-					//standard columns
-					//					System.out.println("Column " + entry.getKey() + " not used because it is not a known column.");
+			ChartRow ret = new ChartRow();
+			for (int i = 0; i < columnOrdinals.length; i++) {
+				//Columns which are not in the standard columns are not used
+				if (columnOrdinals[i] != ColumnMapping.UNKNOWN_COLUMN) {
+					ret.set(columnOrdinals[i], read.get(i));
 				}
 			}
 			return ret;
@@ -140,15 +168,16 @@ public class CSVReader extends AbstractTableReader {
 	@Override
 	public void close() throws GedcomReaderException {
 		try {
-			mapReader.close();
+			listReader.close();
 		} catch (IOException e) {
 			e.printStackTrace();
 			throw new GedcomReaderException(e.getMessage());
 		}
 
-		mapReader = null;
+		listReader = null;
 		header = null;
 		processors = null;
+		columnOrdinals = null;
 	}
 
 
@@ -0,0 +1,305 @@
+/**
+ *    Copyright 2014 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package ch.thn.gedcom.reader.chart.core;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import ch.thn.gedcom.reader.GedcomReaderError;
+import ch.thn.gedcom.reader.chart.GedcomChartEnums.Columns;
+
+/**
+ * One row of a chart. The values are kept in an array which is indexed by 
+ * {@link Columns#ordinal()}, instead of a hash map per row. A column which 
+ * is not in the chart is different from a column with a <code>null</code> 
+ * value.<br>
+ * <br>
+ * The row is also a {@link java.util.Map} of its columns, for the code which 
+ * works with the rows as maps.
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ */
+public class ChartRow extends AbstractMap<Columns, Object> {
+	
+	private static final Columns[] COLUMNS = Columns.values();
+	
+	/** Marks the columns which are not in the chart */
+	private static final Object NOT_SET = new Object();
+	
+	private Object[] values = null;
+	
+	private int size = 0;
+	
+	
+	/**
+	 * Creates a row without any columns
+	 * 
+	 */
+	public ChartRow() {
+		values = new Object[COLUMNS.length];
+		Arrays.fill(values, NOT_SET);
+	}
+	
+	/**
+	 * Sets the value of the column with the given ordinal
+	 * 
+	 * @param ordinal The {@link Columns#ordinal()} of the column
+	 * @param value
+	 */
+	public void set(int ordinal, Object value) {
+		if (values[ordinal] == NOT_SET) {
+			size++;
+		}
+		
+		values[ordinal] = value;
+	}
+	
+	/**
+	 * Checks if the row has the given column
+	 * 
+	 * @param column
+	 * @return
+	 */
+	public boolean has(Columns column) {
+		return values[column.ordinal()] != NOT_SET;
+	}
+	
+	/**
+	 * Returns the value of the given column
+	 * 
+	 * @param column
+	 * @return The value or <code>null</code> if the value is <code>null</code> 
+	 * or if the row does not have the column
+	 */
+	public Object getValue(Columns column) {
+		Object value = values[column.ordinal()];
+		return value == NOT_SET ? null : value;
+	}
+	
+	/**
+	 * Returns the string representation of the value of the given column. 
+	 * If the value is <code>null</code>, an empty string or <code>0</code>, 
+	 * <code>null</code> is returned.
+	 * 
+	 * @param column
+	 * @return
+	 * @throws GedcomReaderError If the row does not have the column
+	 */
+	public String getString(Columns column) {
+		return stringValue(getExisting(column));
+	}
+	
+	/**
+	 * Returns the value of the given column as integer
+	 * 
+	 * @param column
+	 * @return The integer or <code>0</code> if the value is <code>null</code>
+	 * @throws GedcomReaderError If the row does not have the column
+	 */
+	public int getInteger(Columns column) {
+		return integerValue(getExisting(column));
+	}
+	
+	/**
+	 * Returns the string representation of the given cell value, or 
+	 * <code>null</code> if the value is <code>null</code>, an empty string 
+	 * or <code>0</code>
+	 * 
+	 * @param o
+	 * @return
+	 */
+	static String stringValue(Object o) {
+		if (o == null) {
+			return null;
+		}
+		
+		String s = o.toString();
+		
+		if (s.equals("0") || s.length() == 0) {
+			return null;
+		}
+		
+		return s;
+	}
+	
+	/**
+	 * Returns the given cell value as integer, or <code>0</code> if the value 
+	 * is <code>null</code>
+	 * 
+	 * @param o
+	 * @return
+	 */
+	static int integerValue(Object o) {
+		if (o == null) {
+			return 0;
+		}
+		
+		if (o instanceof Integer) {
+			return (Integer)o;
+		}
+		
+		return Integer.valueOf(o.toString());
+	}
+	
+	/**
+	 * 
+	 * 
+	 * @param column
+	 * @return
+	 * @throws GedcomReaderError If the row does not have the column
+	 */
+	private Object getExisting(Columns column) {
+		Object value = values[column.ordinal()];
+		
+		if (value == NOT_SET) {
+			throw new GedcomReaderError("No such column " + column);
+		}
+		
+		return value;
+	}
+	
+	@Override
+	public Object get(Object key) {
+		return key instanceof Columns ? getValue((Columns)key) : null;
+	}
+	
+	@Override
+	public boolean containsKey(Object key) {
+		return key instanceof Columns && has((Columns)key);
+	}
+	
+	@Override
+	public Object put(Columns key, Object value) {
+		Object previous = getValue(key);
+		set(key.ordinal(), value);
+		return previous;
+	}
+	
+	@Override
+	public Object remove(Object key) {
+		if (!containsKey(key)) {
+			return null;
+		}
+		
+		int ordinal = ((Columns)key).ordinal();
+		Object previous = values[ordinal];
+		values[ordinal] = NOT_SET;
+		size--;
+		return previous;
+	}
+	
+	@Override
+	public int size() {
+		return size;
+	}
+	
+	@Override
+	public Set<Entry<Columns, Object>> entrySet() {
+		return new AbstractSet<Entry<Columns, Object>>() {
+			
+			@Override
+			public Iterator<Entry<Columns, Object>> iterator() {
+				return new EntryIterator();
+			}
+			
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+	
+	
+	/**
+	 * Iterates over the columns of the row, in the order of {@link Columns}
+	 *
+	 * @author Thomas Naeff (github.com/thnaeff)
+	 *
+	 */
+	private class EntryIterator implements Iterator<Entry<Columns, Object>> {
+		
+		private int next = -1;
+		private int current = -1;
+		
+		/**
+		 * 
+		 * 
+		 */
+		public EntryIterator() {
+			next = find(0);
+		}
+		
+		/**
+		 * Returns the ordinal of the first column from the given ordinal on 
+		 * which is in the row
+		 * 
+		 * @param from
+		 * @return
+		 */
+		private int find(int from) {
+			while (from < values.length && values[from] == NOT_SET) {
+				from++;
+			}
+			
+			return from;
+		}
+		
+		@Override
+		public boolean hasNext() {
+			return next < values.length;
+		}
+		
+		@Override
+		public Entry<Columns, Object> next() {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			
+			current = next;
+			next = find(next + 1);
+			
+			final int ordinal = current;
+			
+			return new SimpleEntry<Columns, Object>(COLUMNS[ordinal], values[ordinal]) {
+				private static final long serialVersionUID = 1L;
+				
+				@Override
+				public Object setValue(Object value) {
+					values[ordinal] = value;
+					return super.setValue(value);
+				}
+			};
+		}
+		
+		@Override
+		public void remove() {
+			if (current < 0 || values[current] == NOT_SET) {
+				throw new IllegalStateException();
+			}
+			
+			values[current] = NOT_SET;
+			size--;
+		}
+		
+	}
+
+}
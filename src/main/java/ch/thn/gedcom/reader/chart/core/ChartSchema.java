@@ -0,0 +1,174 @@
+/**
+ *    Copyright 2014 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package ch.thn.gedcom.reader.chart.core;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+import ch.thn.gedcom.reader.GedcomReaderError;
+import ch.thn.gedcom.reader.chart.GedcomChartEnums.Columns;
+
+/**
+ * The columns of a chart, as they are known from the header of a CSV file or 
+ * the meta data of a result set. Since all the lines of a chart have the 
+ * columns of the header, the mandatory columns can be checked once with the 
+ * schema instead of checking each line.
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ */
+public class ChartSchema {
+	
+	private String[] header = null;
+	
+	private Set<Columns> columns = null;
+	
+	private ColumnMapping columnMapping = null;
+	
+	
+	/**
+	 * Creates a schema whose columns are named with the column names which 
+	 * are currently set for the {@link Columns}
+	 * 
+	 * @param header The column names of the chart
+	 * @param columnOrdinals The resolved columns of the header, as returned by 
+	 * {@link ColumnMapping#resolve(String[])}
+	 */
+	public ChartSchema(String[] header, int[] columnOrdinals) {
+		this(header, columnOrdinals, new ColumnMapping());
+	}
+	
+	/**
+	 * 
+	 * 
+	 * @param header The column names of the chart
+	 * @param columnOrdinals The resolved columns of the header, as returned by 
+	 * {@link ColumnMapping#resolve(String[])}
+	 * @param columnMapping The mapping the header has been resolved with
+	 */
+	public ChartSchema(String[] header, int[] columnOrdinals, ColumnMapping columnMapping) {
+		if (header.length != columnOrdinals.length) {
+			throw new IllegalArgumentException("The header has " + header.length + 
+					" columns, but " + columnOrdinals.length + " resolved columns are given");
+		}
+		
+		this.header = header.clone();
+		this.columnMapping = columnMapping;
+		
+		columns = EnumSet.noneOf(Columns.class);
+		for (int i = 0; i < columnOrdinals.length; i++) {
+			if (columnOrdinals[i] != ColumnMapping.UNKNOWN_COLUMN) {
+				columns.add(ColumnMapping.getColumn(columnOrdinals[i]));
+			}
+		}
+		
+	}
+	
+	/**
+	 * The column names of the chart, including the columns which are not 
+	 * used
+	 * 
+	 * @return
+	 */
+	public String[] getHeader() {
+		return header.clone();
+	}
+	
+	/**
+	 * The mapping the header has been resolved with
+	 * 
+	 * @return
+	 */
+	public ColumnMapping getColumnMapping() {
+		return columnMapping;
+	}
+	
+	/**
+	 * The name of the given column in this chart, as it is given by the 
+	 * column mapping
+	 * 
+	 * @param column
+	 * @return
+	 */
+	public String getColumnName(Columns column) {
+		return columnMapping.getColumnName(column);
+	}
+	
+	/**
+	 * The columns of the chart which are used
+	 * 
+	 * @return
+	 */
+	public Set<Columns> getColumns() {
+		return Collections.unmodifiableSet(columns);
+	}
+	
+	/**
+	 * 
+	 * 
+	 * @param column
+	 * @return
+	 */
+	public boolean hasColumn(Columns column) {
+		return columns.contains(column);
+	}
+	
+	/**
+	 * The mandatory columns which are not in the chart
+	 * 
+	 * @return
+	 */
+	public List<Columns> getMissingColumns() {
+		List<Columns> missing = new ArrayList<>();
+		
+		for (Columns column : Columns.values()) {
+			if (column.isMandatory() && !columns.contains(column)) {
+				missing.add(column);
+			}
+		}
+		
+		return missing;
+	}
+	
+	/**
+	 * Checks if the chart has all the mandatory columns
+	 * 
+	 * @return
+	 */
+	public boolean isComplete() {
+		return getMissingColumns().isEmpty();
+	}
+	
+	/**
+	 * Checks if the chart has all the mandatory columns
+	 * 
+	 * @throws GedcomReaderError If a mandatory column is missing
+	 */
+	public void validate() {
+		List<Columns> missing = getMissingColumns();
+		
+		if (!missing.isEmpty()) {
+			throw new GedcomReaderError("Mandatory column " + getColumnName(missing.get(0)) + 
+					" is missing from header " + Arrays.toString(header));
+		}
+	}
+
+}
@@ -0,0 +1,819 @@
+/**
+ *    Copyright 2014 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package ch.thn.gedcom.reader.chart.core;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import ch.thn.gedcom.reader.GedcomReaderError;
+import ch.thn.gedcom.reader.chart.GedcomChartConverterUtil;
+import ch.thn.gedcom.reader.chart.GedcomChartEnums.Columns;
+
+/**
+ * A whole chart, stored by column instead of by row. Each column of the chart 
+ * is kept in its own array:
+ * <ul>
+ * <li>The id columns ({@link Columns#ID}, {@link Columns#PARENT1_ID}, 
+ * {@link Columns#PARENT2_ID} and {@link Columns#PARTNER_ID}) in an int array, 
+ * as long as all their values are integers</li>
+ * <li>The columns with only a few different values ({@link Columns#GENDER}, 
+ * {@link Columns#CIVIL_STATUS}, {@link Columns#TOWN} and {@link Columns#COUNTRY}) 
+ * as codes of a dictionary of the values</li>
+ * <li>All other columns as object array</li>
+ * </ul>
+ * The rows are found by their ID with an index which does not need any objects 
+ * per row, and the rows of the partner and the parents of a row are resolved 
+ * once, after which they are simple array accesses. As long as the ID columns 
+ * are integer columns, the index is searched and the related rows are resolved 
+ * with the int values, without creating strings.<br>
+ * <br>
+ * The rows are in the order they have been added. A row with an ID which 
+ * already exists replaces the previous row, like in the chart data map of 
+ * {@link AbstractTableReader#readAll()}. The values of integer id columns are 
+ * returned as strings.
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ */
+public class ChartTable {
+	
+	private static final Columns[] COLUMNS = Columns.values();
+	
+	private static final Set<Columns> ID_COLUMNS = EnumSet.of(Columns.ID, 
+			Columns.PARENT1_ID, Columns.PARENT2_ID, Columns.PARTNER_ID);
+	
+	private static final Set<Columns> DICTIONARY_COLUMNS = EnumSet.of(Columns.GENDER, 
+			Columns.CIVIL_STATUS, Columns.TOWN, Columns.COUNTRY);
+	
+	/** Marks an empty slot of the ID index */
+	private static final int EMPTY = -1;
+	
+	/** The key of an empty ID, which is not an int value */
+	private static final long NULL_ID = Long.MAX_VALUE;
+	
+	/** The columns by ordinal, <code>null</code> for columns which are not in the chart */
+	private Column[] columns = null;
+	
+	/** The rows of the partner and the parents, resolved when they are needed */
+	private int[][] relatedRows = null;
+	
+	/** Open addressing hash table of the row indexes by the ID of the rows */
+	private int[] index = null;
+	
+	private int size = 0;
+	
+	
+	/**
+	 * Creates an empty table
+	 * 
+	 */
+	public ChartTable() {
+		columns = new Column[COLUMNS.length];
+		relatedRows = new int[COLUMNS.length][];
+		index = new int[64];
+		Arrays.fill(index, EMPTY);
+	}
+	
+	/**
+	 * Adds a row to the table. If there already is a row with the same ID, 
+	 * that row is replaced.
+	 * 
+	 * @param row
+	 * @return <code>false</code> if a row has been replaced
+	 * @throws GedcomReaderError If the row does not have an ID column
+	 */
+	public boolean addRow(Map<Columns, Object> row) {
+		String id = GedcomChartConverterUtil.getString(row, Columns.ID);
+		long key = getKey(id);
+		
+		int target = findRow(key, id);
+		boolean added = (target == EMPTY);
+		
+		if (added) {
+			target = size++;
+		}
+		
+		for (int i = 0; i < COLUMNS.length; i++) {
+			if (row.containsKey(COLUMNS[i])) {
+				if (columns[i] == null) {
+					columns[i] = createColumn(COLUMNS[i]);
+				}
+				
+				columns[i] = columns[i].set(target, row.get(COLUMNS[i]));
+			} else if (!added && columns[i] != null) {
+				columns[i] = columns[i].set(target, null);
+			}
+		}
+		
+		if (added) {
+			addToIndex(key, id, target);
+		}
+		
+		//The related rows have to be resolved again
+		Arrays.fill(relatedRows, null);
+		
+		return added;
+	}
+	
+	/**
+	 * 
+	 * 
+	 * @param column
+	 * @return
+	 */
+	private static Column createColumn(Columns column) {
+		if (ID_COLUMNS.contains(column)) {
+			return new IntColumn();
+		} else if (DICTIONARY_COLUMNS.contains(column)) {
+			return new DictionaryColumn();
+		}
+		
+		return new ObjectColumn();
+	}
+	
+	/**
+	 * The number of rows
+	 * 
+	 * @return
+	 */
+	public int size() {
+		return size;
+	}
+	
+	/**
+	 * Checks if the chart has the given column
+	 * 
+	 * @param column
+	 * @return
+	 */
+	public boolean hasColumn(Columns column) {
+		return columns[column.ordinal()] != null;
+	}
+	
+	/**
+	 * Returns the value of the given column of a row
+	 * 
+	 * @param row
+	 * @param column
+	 * @return The value or <code>null</code> if the chart does not have the 
+	 * column
+	 */
+	public Object getValue(int row, Columns column) {
+		checkRow(row);
+		Column c = columns[column.ordinal()];
+		return c == null ? null : c.get(row);
+	}
+	
+	/**
+	 * Returns the string representation of the value of the given column of 
+	 * a row, with the same rules as {@link ChartRow#getString(Columns)}
+	 * 
+	 * @param row
+	 * @param column
+	 * @return
+	 * @throws GedcomReaderError If the chart does not have the column
+	 */
+	public String getString(int row, Columns column) {
+		return ChartRow.stringValue(getExisting(row, column));
+	}
+	
+	/**
+	 * Returns the value of the given column of a row as integer, with the 
+	 * same rules as {@link ChartRow#getInteger(Columns)}
+	 * 
+	 * @param row
+	 * @param column
+	 * @return
+	 * @throws GedcomReaderError If the chart does not have the column
+	 */
+	public int getInteger(int row, Columns column) {
+		return ChartRow.integerValue(getExisting(row, column));
+	}
+	
+	/**
+	 * 
+	 * 
+	 * @param row
+	 * @param column
+	 * @return
+	 * @throws GedcomReaderError If the chart does not have the column
+	 */
+	private Object getExisting(int row, Columns column) {
+		checkRow(row);
+		Column c = columns[column.ordinal()];
+		
+		if (c == null) {
+			throw new GedcomReaderError("No such column " + column);
+		}
+		
+		return c.get(row);
+	}
+	
+	/**
+	 * 
+	 * 
+	 * @param row
+	 */
+	private void checkRow(int row) {
+		if (row < 0 || row >= size) {
+			throw new IndexOutOfBoundsException("Row " + row + " of " + size + " rows");
+		}
+	}
+	
+	/**
+	 * Searches the row with the given ID
+	 * 
+	 * @param id
+	 * @return The index of the row or <code>-1</code> if there is no row with 
+	 * the ID
+	 */
+	public int findRow(String id) {
+		return findRow(getKey(id), id);
+	}
+	
+	/**
+	 * Searches the row with the given ID key
+	 * 
+	 * @param key The key of the ID, see {@link #getKey(String)}
+	 * @param id The ID or <code>null</code> if the key is an int value
+	 * @return The index of the row or <code>-1</code> if there is no row with 
+	 * the ID
+	 */
+	private int findRow(long key, String id) {
+		int mask = index.length - 1;
+		
+		for (int slot = hash(key, id) & mask; index[slot] != EMPTY; slot = (slot + 1) & mask) {
+			if (hasId(index[slot], key, id)) {
+				return index[slot];
+			}
+		}
+		
+		return EMPTY;
+	}
+	
+	/**
+	 * Returns the row of the individual whose ID is the value of the given 
+	 * column of a row, like the row of the partner for {@link Columns#PARTNER_ID}. 
+	 * The related rows of a column are resolved with the first call and 
+	 * kept until a row is added.
+	 * 
+	 * @param row
+	 * @param column
+	 * @return The index of the related row or <code>-1</code> if the value is 
+	 * empty or if there is no row with the ID
+	 * @throws GedcomReaderError If the chart does not have the column
+	 */
+	public int getRelatedRow(int row, Columns column) {
+		checkRow(row);
+		
+		int[] related = relatedRows[column.ordinal()];
+		
+		if (related == null) {
+			Column c = columns[column.ordinal()];
+			
+			if (c == null) {
+				throw new GedcomReaderError("No such column " + column);
+			}
+			
+			related = new int[size];
+			
+			if (c instanceof IntColumn) {
+				IntColumn ids = (IntColumn)c;
+				
+				for (int i = 0; i < size; i++) {
+					related[i] = findRow(getKey(ids, i), null);
+				}
+			} else {
+				for (int i = 0; i < size; i++) {
+					related[i] = findRow(getString(i, column));
+				}
+			}
+			
+			relatedRows[column.ordinal()] = related;
+		}
+		
+		return related[row];
+	}
+	
+	/**
+	 * Returns a view of the given row. The view reads the values from this 
+	 * table and can not be changed.
+	 * 
+	 * @param row
+	 * @return
+	 */
+	public Row getRow(int row) {
+		checkRow(row);
+		return new Row(row);
+	}
+	
+	/**
+	 * The key of an ID for the index: the int value if the ID is an integer 
+	 * which an {@link IntColumn} can hold, {@link #NULL_ID} if the ID is empty, 
+	 * otherwise {@link IntColumn#NO_INT} and the ID has to be compared as 
+	 * string. An integer ID has the same key, no matter if it is kept in an 
+	 * {@link IntColumn} or as string in an {@link ObjectColumn}.
+	 * 
+	 * @param id
+	 * @return
+	 */
+	private static long getKey(String id) {
+		return id == null ? NULL_ID : IntColumn.parse(id);
+	}
+	
+	/**
+	 * The key of the value of a row of an int column
+	 * 
+	 * @param column
+	 * @param row
+	 * @return
+	 */
+	private static long getKey(IntColumn column, int row) {
+		//0 is an empty ID, like the string "0"
+		return column.isSet(row) && column.getInt(row) != 0 ? column.getInt(row) : NULL_ID;
+	}
+	
+	/**
+	 * The ID of the given row as key. If the key is {@link IntColumn#NO_INT}, 
+	 * the ID has to be compared as string.
+	 * 
+	 * @param row
+	 * @return
+	 */
+	private long getRowKey(int row) {
+		Column c = columns[Columns.ID.ordinal()];
+		
+		if (c == null) {
+			return NULL_ID;
+		} else if (c instanceof IntColumn) {
+			return getKey((IntColumn)c, row);
+		}
+		
+		return getKey(ChartRow.stringValue(c.get(row)));
+	}
+	
+	/**
+	 * Checks if the given row has the ID with the given key
+	 * 
+	 * @param row
+	 * @param key
+	 * @param id The ID or <code>null</code> if the key is an int value
+	 * @return
+	 */
+	private boolean hasId(int row, long key, String id) {
+		Column c = columns[Columns.ID.ordinal()];
+		
+		if (c == null) {
+			return key == NULL_ID;
+		} else if (c instanceof IntColumn) {
+			//An IntColumn can not have an ID which is not an int value
+			return getKey((IntColumn)c, row) == key;
+		}
+		
+		String rowId = ChartRow.stringValue(c.get(row));
+		
+		if (key == IntColumn.NO_INT) {
+			return id.equals(rowId);
+		}
+		
+		return getKey(rowId) == key;
+	}
+	
+	/**
+	 * 
+	 * 
+	 * @param key
+	 * @param id
+	 * @param row
+	 */
+	private void addToIndex(long key, String id, int row) {
+		if (size * 2 > index.length) {
+			//Keep the table at most half full
+			int[] old = index;
+			index = new int[old.length * 2];
+			Arrays.fill(index, EMPTY);
+			
+			for (int i = 0; i < old.length; i++) {
+				if (old[i] != EMPTY) {
+					long rowKey = getRowKey(old[i]);
+					insert(rowKey, rowKey == IntColumn.NO_INT ? getId(old[i]) : null, old[i]);
+				}
+			}
+		}
+		
+		insert(key, id, row);
+	}
+	
+	/**
+	 * The ID of the given row as string
+	 * 
+	 * @param row
+	 * @return
+	 */
+	private String getId(int row) {
+		Column c = columns[Columns.ID.ordinal()];
+		return c == null ? null : ChartRow.stringValue(c.get(row));
+	}
+	
+	/**
+	 * 
+	 * 
+	 * @param key
+	 * @param id
+	 * @param row
+	 */
+	private void insert(long key, String id, int row) {
+		int mask = index.length - 1;
+		int slot = hash(key, id) & mask;
+		
+		while (index[slot] != EMPTY) {
+			slot = (slot + 1) & mask;
+		}
+		
+		index[slot] = row;
+	}
+	
+	/**
+	 * 
+	 * 
+	 * @param key
+	 * @param id The ID, only needed if the key is {@link IntColumn#NO_INT}
+	 * @return
+	 */
+	private static int hash(long key, String id) {
+		if (key == NULL_ID) {
+			return 0;
+		}
+		
+		int h = (key == IntColumn.NO_INT) ? id.hashCode() : (int)key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+	
+	
+	/**
+	 * A read only view of one row of the table
+	 *
+	 * @author Thomas Naeff (github.com/thnaeff)
+	 *
+	 */
+	public class Row extends AbstractMap<Columns, Object> {
+		
+		private int row = 0;
+		
+		/**
+		 * 
+		 * 
+		 * @param row
+		 */
+		private Row(int row) {
+			this.row = row;
+		}
+		
+		/**
+		 * The index of the row in the table
+		 * 
+		 * @return
+		 */
+		public int getIndex() {
+			return row;
+		}
+		
+		/**
+		 * 
+		 * 
+		 * @param column
+		 * @return
+		 * @see ChartTable#getString(int, Columns)
+		 */
+		public String getString(Columns column) {
+			return ChartTable.this.getString(row, column);
+		}
+		
+		/**
+		 * 
+		 * 
+		 * @param column
+		 * @return
+		 * @see ChartTable#getInteger(int, Columns)
+		 */
+		public int getInteger(Columns column) {
+			return ChartTable.this.getInteger(row, column);
+		}
+		
+		@Override
+		public Object get(Object key) {
+			return key instanceof Columns ? getValue(row, (Columns)key) : null;
+		}
+		
+		@Override
+		public boolean containsKey(Object key) {
+			return key instanceof Columns && hasColumn((Columns)key);
+		}
+		
+		@Override
+		public Set<Entry<Columns, Object>> entrySet() {
+			final List<Columns> rowColumns = new ArrayList<>();
+			
+			for (Columns column : COLUMNS) {
+				if (hasColumn(column)) {
+					rowColumns.add(column);
+				}
+			}
+			
+			return new AbstractSet<Entry<Columns, Object>>() {
+				
+				@Override
+				public Iterator<Entry<Columns, Object>> iterator() {
+					final Iterator<Columns> iterator = rowColumns.iterator();
+					
+					return new Iterator<Entry<Columns, Object>>() {
+						
+						@Override
+						public boolean hasNext() {
+							return iterator.hasNext();
+						}
+						
+						@Override
+						public Entry<Columns, Object> next() {
+							Columns column = iterator.next();
+							return new SimpleImmutableEntry<Columns, Object>(column, 
+									getValue(row, column));
+						}
+					};
+				}
+				
+				@Override
+				public int size() {
+					return rowColumns.size();
+				}
+			};
+		}
+		
+	}
+	
+	
+	/**
+	 * The values of one column
+	 *
+	 * @author Thomas Naeff (github.com/thnaeff)
+	 *
+	 */
+	private static abstract class Column {
+		
+		/**
+		 * 
+		 * 
+		 * @param row
+		 * @return
+		 */
+		public abstract Object get(int row);
+		
+		/**
+		 * Sets the value of a row
+		 * 
+		 * @param row
+		 * @param value
+		 * @return The column which holds the value. This is a different 
+		 * column if this column can not hold the value.
+		 */
+		public abstract Column set(int row, Object value);
+		
+		/**
+		 * The capacity which is needed for the given row
+		 * 
+		 * @param row
+		 * @param length The current capacity
+		 * @return
+		 */
+		protected static int grow(int row, int length) {
+			return Math.max(row + 1, Math.max(16, length * 2));
+		}
+		
+	}
+	
+	/**
+	 * A column with any values
+	 *
+	 * @author Thomas Naeff (github.com/thnaeff)
+	 *
+	 */
+	private static class ObjectColumn extends Column {
+		
+		private Object[] values = new Object[16];
+		
+		@Override
+		public Object get(int row) {
+			return row < values.length ? values[row] : null;
+		}
+		
+		@Override
+		public Column set(int row, Object value) {
+			if (row >= values.length) {
+				values = Arrays.copyOf(values, grow(row, values.length));
+			}
+			
+			values[row] = value;
+			return this;
+		}
+		
+	}
+	
+	/**
+	 * A column with only a few different values, which are stored as codes 
+	 * of a dictionary. Code 0 is <code>null</code>.
+	 *
+	 * @author Thomas Naeff (github.com/thnaeff)
+	 *
+	 */
+	private static class DictionaryColumn extends Column {
+		
+		private int[] codes = new int[16];
+		private List<Object> dictionary = new ArrayList<>();
+		private Map<Object, Integer> lookup = new HashMap<>();
+		
+		@Override
+		public Object get(int row) {
+			int code = row < codes.length ? codes[row] : 0;
+			return code == 0 ? null : dictionary.get(code - 1);
+		}
+		
+		@Override
+		public Column set(int row, Object value) {
+			if (row >= codes.length) {
+				codes = Arrays.copyOf(codes, grow(row, codes.length));
+			}
+			
+			if (value == null) {
+				codes[row] = 0;
+				return this;
+			}
+			
+			Integer code = lookup.get(value);
+			
+			if (code == null) {
+				dictionary.add(value);
+				code = dictionary.size();
+				lookup.put(value, code);
+			}
+			
+			codes[row] = code;
+			return this;
+		}
+		
+	}
+	
+	/**
+	 * A column with integer values. The values are returned as strings by 
+	 * {@link #get(int)}, {@link #getInt(int)} returns them without creating 
+	 * a string.
+	 *
+	 * @author Thomas Naeff (github.com/thnaeff)
+	 *
+	 */
+	private static class IntColumn extends Column {
+		
+		/** The result of {@link #parse(String)} if the string is not an integer */
+		public static final long NO_INT = Long.MIN_VALUE;
+		
+		private int[] values = new int[16];
+		private BitSet notNull = new BitSet();
+		
+		@Override
+		public Object get(int row) {
+			return notNull.get(row) ? Integer.toString(values[row]) : null;
+		}
+		
+		/**
+		 * 
+		 * 
+		 * @param row
+		 * @return <code>false</code> if the value of the row is <code>null</code>
+		 */
+		public boolean isSet(int row) {
+			return notNull.get(row);
+		}
+		
+		/**
+		 * 
+		 * 
+		 * @param row
+		 * @return The value or 0 if the value is <code>null</code>
+		 */
+		public int getInt(int row) {
+			return notNull.get(row) ? values[row] : 0;
+		}
+		
+		@Override
+		public Column set(int row, Object value) {
+			if (value == null) {
+				notNull.clear(row);
+				return this;
+			}
+			
+			long integer = toInteger(value);
+			
+			if (integer == NO_INT) {
+				//Not an integer, keep all values as objects from now on
+				ObjectColumn column = new ObjectColumn();
+				
+				for (int i = notNull.nextSetBit(0); i >= 0; i = notNull.nextSetBit(i + 1)) {
+					column.set(i, Integer.toString(values[i]));
+				}
+				
+				return column.set(row, value);
+			}
+			
+			if (row >= values.length) {
+				values = Arrays.copyOf(values, grow(row, values.length));
+			}
+			
+			values[row] = (int)integer;
+			notNull.set(row);
+			return this;
+		}
+		
+		/**
+		 * Returns the value as integer if it is an integer which is 
+		 * written the same way by {@link Integer#toString(int)}
+		 * 
+		 * @param value
+		 * @return The integer or {@link #NO_INT}
+		 */
+		private static long toInteger(Object value) {
+			if (value instanceof Integer) {
+				return (Integer)value;
+			}
+			
+			if (!(value instanceof String)) {
+				return NO_INT;
+			}
+			
+			return parse((String)value);
+		}
+		
+		/**
+		 * Parses the string if it is an integer which is written the same 
+		 * way by {@link Integer#toString(int)}
+		 * 
+		 * @param s
+		 * @return The integer or {@link #NO_INT}
+		 */
+		public static long parse(String s) {
+			int length = s.length();
+			int start = (length > 0 && s.charAt(0) == '-') ? 1 : 0;
+			
+			//No leading zeros and no overflow
+			if (length == start || length - start > 10 
+					|| (s.charAt(start) == '0' && length - start > 1)) {
+				return NO_INT;
+			}
+			
+			long l = 0;
+			
+			for (int i = start; i < length; i++) {
+				char c = s.charAt(i);
+				
+				if (c < '0' || c > '9') {
+					return NO_INT;
+				}
+				
+				l = l * 10 + (c - '0');
+			}
+			
+			if (start == 1) {
+				l = -l;
+			}
+			
+			if (l < Integer.MIN_VALUE || l > Integer.MAX_VALUE || (start == 1 && l == 0)) {
+				return NO_INT;
+			}
+			
+			return l;
+		}
+		
+	}
+
+}
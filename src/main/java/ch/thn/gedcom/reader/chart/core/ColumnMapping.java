@@ -0,0 +1,144 @@
+/**
+ *    Copyright 2014 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package ch.thn.gedcom.reader.chart.core;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+
+import ch.thn.gedcom.reader.chart.GedcomChartEnums.Columns;
+
+/**
+ * Maps the column names of a chart to the internally used {@link Columns}. 
+ * The mapping can not be changed once it has been created, so each reader 
+ * can have its own mapping and readers with different mappings can be used 
+ * at the same time.<br>
+ * <br>
+ * The header of a chart is resolved once with {@link #resolve(String[])}, 
+ * after which the cells of each row are assigned to their columns by index.
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ */
+public class ColumnMapping {
+	
+	/** Returned by {@link #resolve(String[])} for columns which are not used */
+	public static final int UNKNOWN_COLUMN = -1;
+	
+	private static final Columns[] COLUMNS = Columns.values();
+	
+	private Map<Columns, String> columnNames = null;
+	private Map<String, Columns> columns = null;
+	
+	
+	/**
+	 * Creates a mapping with the column names which are currently set for 
+	 * the {@link Columns} (see {@link Columns#setColumnName(String)}). Later 
+	 * changes of the column names do not change this mapping.
+	 * 
+	 */
+	public ColumnMapping() {
+		this(Collections.<Columns, String>emptyMap());
+	}
+	
+	/**
+	 * Creates a mapping with the given column names. The columns which are 
+	 * not in the given map keep the column name which is currently set for 
+	 * them.
+	 * 
+	 * @param columnNames The column names of the chart by column
+	 */
+	public ColumnMapping(Map<Columns, String> columnNames) {
+		Map<Columns, String> names = new EnumMap<>(Columns.class);
+		this.columns = new HashMap<>();
+		
+		for (Columns column : COLUMNS) {
+			String columnName = columnNames.get(column);
+			
+			if (columnName == null) {
+				columnName = column.getValue();
+			}
+			
+			if (columns.containsKey(columnName)) {
+				throw new IllegalArgumentException("The column name " + columnName + 
+						" is used for " + columns.get(columnName) + " and " + column);
+			}
+			
+			names.put(column, columnName);
+			columns.put(columnName, column);
+		}
+		
+		this.columnNames = Collections.unmodifiableMap(names);
+	}
+	
+	/**
+	 * Resolves the columns of the given header. The returned array contains 
+	 * the {@link Columns#ordinal()} of each column of the header, or 
+	 * {@link #UNKNOWN_COLUMN} if the column is not used.
+	 * 
+	 * @param header
+	 * @return
+	 */
+	public int[] resolve(String[] header) {
+		int[] ordinals = new int[header.length];
+		
+		for (int i = 0; i < header.length; i++) {
+			Columns column = columns.get(header[i]);
+			ordinals[i] = (column == null ? UNKNOWN_COLUMN : column.ordinal());
+		}
+		
+		return ordinals;
+	}
+	
+	/**
+	 * Returns the column with the given column name of the chart
+	 * 
+	 * @param columnName
+	 * @return The column or <code>null</code> if the column name is not mapped
+	 */
+	public Columns getColumn(String columnName) {
+		return columns.get(columnName);
+	}
+	
+	/**
+	 * Returns the column name of the chart which is used for the given column
+	 * 
+	 * @param column
+	 * @return
+	 */
+	public String getColumnName(Columns column) {
+		return columnNames.get(column);
+	}
+	
+	/**
+	 * Returns the column with the given ordinal, as resolved by 
+	 * {@link #resolve(String[])}
+	 * 
+	 * @param ordinal
+	 * @return
+	 */
+	public static Columns getColumn(int ordinal) {
+		return COLUMNS[ordinal];
+	}
+	
+	@Override
+	public String toString() {
+		return columnNames.toString();
+	}
+
+}
@@ -19,8 +19,6 @@ package ch.thn.gedcom.reader.chart.core;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
-import java.util.LinkedHashMap;
-import java.util.Map;
 
 import ch.thn.gedcom.reader.GedcomReaderError;
 import ch.thn.gedcom.reader.GedcomReaderException;
@@ -34,6 +32,8 @@ public class ResultSetReader extends AbstractTableReader {
 		
 	private String[] header = null;
 	
+	private int[] columnOrdinals = null;
+	
 	private ResultSet resultSet = null;
 	
 	/**
@@ -44,15 +44,32 @@ public class ResultSetReader extends AbstractTableReader {
 	 */
 	public ResultSetReader(ChartValuePreProcessor valuePreProcessor, 
 			ChartLinePostProcessor linePostProcessor) {
-		super(valuePreProcessor, linePostProcessor);
+		this(null, valuePreProcessor, linePostProcessor);
 		
 	}
 	
 	/**
 	 * 
 	 * 
+	 * @param columnMapping The mapping of the column names or <code>null</code> 
+	 * to use the column names of {@link Columns}
+	 * @param valuePreProcessor
+	 * @param linePostProcessor
+	 */
+	public ResultSetReader(ColumnMapping columnMapping, 
+			ChartValuePreProcessor valuePreProcessor, 
+			ChartLinePostProcessor linePostProcessor) {
+		super(columnMapping, valuePreProcessor, linePostProcessor);
+		
+	}
+	
+	/**
+	 * Reads the column names of the result set and checks if the mandatory 
+	 * columns are present
+	 * 
 	 * @param resultSet
-	 * @throws GedcomReaderError
+	 * @throws GedcomReaderError If the meta data can not be read or if a 
+	 * mandatory column is missing
 	 */
 	public void init(ResultSet resultSet) {
 		this.resultSet = resultSet;
@@ -65,6 +82,8 @@ public class ResultSetReader extends AbstractTableReader {
 			for (int i = 1; i <= columnCount; i++) {
 				header[i - 1] = rsmd.getColumnName(i);
 			}
+			
+			columnOrdinals = resolveHeader(header);
 		} catch (SQLException e) {
 			e.printStackTrace();
 			throw new GedcomReaderError(e.getMessage());
@@ -73,9 +92,9 @@ public class ResultSetReader extends AbstractTableReader {
 	}
 	
 	@Override
-	protected Map<Columns, Object> readLine() throws GedcomReaderException {
+	protected ChartRow readLine() throws GedcomReaderException {
 				
-		LinkedHashMap<Columns, Object> line = new LinkedHashMap<>();
+		ChartRow line = new ChartRow();
 		
 		try {
 			if (!resultSet.next()) {
@@ -83,18 +102,15 @@ public class ResultSetReader extends AbstractTableReader {
 			}
 			
 			for (int i = 0; i < header.length; i++) {
-				Object value = resultSet.getObject(header[i]);
+				Object value = resultSet.getObject(i + 1);
 				
 				if (getValuePreProcessor() != null) {
 					value = getValuePreProcessor().process(value, header[i]);
 				}
 				
-				try {
-					line.put(Columns.getEnumForValue(header[i]), value);
-				} catch (IllegalArgumentException e) {
-					//Enum constant not found because column label is not in the 
-					//standard columns
-//					System.out.println("Column " + header[i] + " not used because it is not a known column.");
+				//Columns which are not in the standard columns are not used
+				if (columnOrdinals[i] != ColumnMapping.UNKNOWN_COLUMN) {
+					line.set(columnOrdinals[i], value);
 				}
 			}
 		} catch (SQLException e) {
@@ -0,0 +1,353 @@
+/**
+ *    Copyright 2014 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ch.thn.gedcom.reader.ged;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.text.Normalizer;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The ANSEL character set (ANSI Z39.47) with the GEDCOM extensions, which is
+ * the default character set of GEDCOM files. The bytes below 0x80 are ASCII,
+ * the other bytes are decoded through a table.<br>
+ * <br>
+ * In ANSEL, the combining diacritics (0xE0 to 0xFE) come before the character
+ * they belong to, in Unicode they come after it. The decoder therefore moves
+ * the diacritics behind their character and composes them into one character
+ * where Unicode has one, for example e with acute accent to &eacute;.<br>
+ * <br>
+ * Only decoding is supported.
+ *
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ */
+public class GedcomAnselCharset extends Charset {
+
+  /** The character set */
+  public static final GedcomAnselCharset ANSEL = new GedcomAnselCharset();
+
+  /** The characters of the bytes from 0x80, 0 if the byte is not defined */
+  private static final char[] TABLE = new char[128];
+
+  /** The character of undefined bytes */
+  private static final char REPLACEMENT = '\uFFFD';
+
+  /** The first combining diacritic */
+  private static final int COMBINING_START = 0xE0;
+
+  /** The composed characters of a character with one diacritic */
+  private static final ConcurrentHashMap<Integer, String> COMPOSED =
+      new ConcurrentHashMap<Integer, String>();
+
+  static {
+    int[] mapping = {
+        0xA1, 0x0141, 0xA2, 0x00D8, 0xA3, 0x0110, 0xA4, 0x00DE, 0xA5, 0x00C6,
+        0xA6, 0x0152, 0xA7, 0x02B9, 0xA8, 0x00B7, 0xA9, 0x266D, 0xAA, 0x00AE,
+        0xAB, 0x00B1, 0xAC, 0x01A0, 0xAD, 0x01AF, 0xAE, 0x02BC, 0xB0, 0x02BB,
+        0xB1, 0x0142, 0xB2, 0x00F8, 0xB3, 0x0111, 0xB4, 0x00FE, 0xB5, 0x00E6,
+        0xB6, 0x0153, 0xB7, 0x02BA, 0xB8, 0x0131, 0xB9, 0x00A3, 0xBA, 0x00F0,
+        0xBC, 0x01A1, 0xBD, 0x01B0, 0xBE, 0x25A1, 0xBF, 0x25A0, 0xC0, 0x00B0,
+        0xC1, 0x2113, 0xC2, 0x2117, 0xC3, 0x00A9, 0xC4, 0x266F, 0xC5, 0x00BF,
+        0xC6, 0x00A1, 0xC7, 0x00DF, 0xC8, 0x20AC, 0xCF, 0x00DF,
+        //Combining diacritics
+        0xE0, 0x0309, 0xE1, 0x0300, 0xE2, 0x0301, 0xE3, 0x0302, 0xE4, 0x0303,
+        0xE5, 0x0304, 0xE6, 0x0306, 0xE7, 0x0307, 0xE8, 0x0308, 0xE9, 0x030C,
+        0xEA, 0x030A, 0xEB, 0xFE20, 0xEC, 0xFE21, 0xED, 0x0315, 0xEE, 0x030B,
+        0xEF, 0x0310, 0xF0, 0x0327, 0xF1, 0x0328, 0xF2, 0x0323, 0xF3, 0x0324,
+        0xF4, 0x0325, 0xF5, 0x0333, 0xF6, 0x0332, 0xF7, 0x0326, 0xF8, 0x031C,
+        0xF9, 0x032E, 0xFA, 0xFE22, 0xFB, 0xFE23, 0xFE, 0x0313
+    };
+
+    for (int i = 0; i < mapping.length; i += 2) {
+      TABLE[mapping[i] - 0x80] = (char)mapping[i + 1];
+    }
+  }
+
+
+  /**
+   *
+   *
+   */
+  private GedcomAnselCharset() {
+    super("ANSEL", new String[] {"ANSI_Z39.47", "Z39.47"});
+  }
+
+  @Override
+  public boolean contains(Charset cs) {
+    return cs == this || "US-ASCII".equals(cs.name());
+  }
+
+  @Override
+  public boolean canEncode() {
+    return false;
+  }
+
+  @Override
+  public CharsetDecoder newDecoder() {
+    return new AnselDecoder(this);
+  }
+
+  @Override
+  public CharsetEncoder newEncoder() {
+    throw new UnsupportedOperationException("ANSEL can only be decoded");
+  }
+
+  /**
+   * Decodes the given bytes without creating a decoder. Bytes which are not
+   * defined in ANSEL become U+FFFD.
+   *
+   * @param bytes
+   * @param start
+   * @param length
+   * @return
+   */
+  public static String decode(byte[] bytes, int start, int length) {
+    StringBuilder sb = new StringBuilder(length);
+    int end = start + length;
+    int i = start;
+
+    while (i < end) {
+      int b = bytes[i] & 0xFF;
+
+      if (b < COMBINING_START) {
+        sb.append(toChar(b));
+        i++;
+        continue;
+      }
+
+      //Diacritics come before their character
+      int marksStart = i;
+      while (i < end && (bytes[i] & 0xFF) >= COMBINING_START) {
+        i++;
+      }
+
+      if (i == end) {
+        //Diacritics without a character are kept as they are
+        for (int j = marksStart; j < end; j++) {
+          sb.append(toMark(bytes[j] & 0xFF));
+        }
+        break;
+      }
+
+      char base = toChar(bytes[i] & 0xFF);
+      i++;
+
+      sb.append(compose(base, bytes, marksStart, i - 1));
+    }
+
+    return sb.toString();
+  }
+
+  /**
+   * The character of a byte which is not a diacritic
+   *
+   * @param b
+   * @return
+   */
+  private static char toChar(int b) {
+    if (b < 0x80) {
+      return (char)b;
+    }
+
+    char c = TABLE[b - 0x80];
+    return c == 0 ? REPLACEMENT : c;
+  }
+
+  /**
+   * Returns the given character followed by the diacritics of the given bytes,
+   * composed where possible
+   *
+   * @param base
+   * @param marks
+   * @param start
+   * @param end
+   * @return
+   */
+  private static String compose(char base, byte[] marks, int start, int end) {
+    if (base < ' ') {
+      //Diacritics before a line break or another control character do not
+      //belong to it
+      StringBuilder sb = new StringBuilder(end - start + 1);
+      for (int i = start; i < end; i++) {
+        sb.append(toMark(marks[i] & 0xFF));
+      }
+
+      return sb.append(base).toString();
+    }
+
+    if (end - start == 1) {
+      //The usual case of one diacritic
+      char mark = toMark(marks[start] & 0xFF);
+      Integer key = (base << 16) | mark;
+      String composed = COMPOSED.get(key);
+
+      if (composed == null) {
+        composed = Normalizer.normalize(new String(new char[] {base, mark}),
+            Normalizer.Form.NFC);
+        COMPOSED.put(key, composed);
+      }
+
+      return composed;
+    }
+
+    char[] chars = new char[end - start + 1];
+    chars[0] = base;
+    for (int i = start; i < end; i++) {
+      chars[i - start + 1] = toMark(marks[i] & 0xFF);
+    }
+
+    return Normalizer.normalize(new String(chars), Normalizer.Form.NFC);
+  }
+
+  /**
+   * The combining character of a diacritic byte
+   *
+   * @param b
+   * @return
+   */
+  private static char toMark(int b) {
+    char c = TABLE[b - 0x80];
+    return c == 0 ? REPLACEMENT : c;
+  }
+
+
+  /**
+   * Decodes ANSEL. Diacritics at the end of the input buffer are left in the
+   * buffer until their character is available. Diacritics at the very end of
+   * the input are malformed.
+   *
+   *
+   * @author Thomas Naeff (github.com/thnaeff)
+   *
+   */
+  private static class AnselDecoder extends CharsetDecoder {
+
+    private byte[] marks = new byte[8];
+
+    /** Decoded characters which did not fit into the output */
+    private String pending = null;
+    private int pendingPos = 0;
+
+    /**
+     *
+     *
+     * @param charset
+     */
+    public AnselDecoder(Charset charset) {
+      super(charset, 1.0f, 2.0f);
+    }
+
+    @Override
+    protected CoderResult decodeLoop(ByteBuffer in, CharBuffer out) {
+      if (!putPending(out)) {
+        return CoderResult.OVERFLOW;
+      }
+
+      while (in.hasRemaining()) {
+        int start = in.position();
+        int b = in.get(start) & 0xFF;
+
+        if (b < COMBINING_START) {
+          if (!out.hasRemaining()) {
+            return CoderResult.OVERFLOW;
+          }
+
+          if (b >= 0x80 && TABLE[b - 0x80] == 0) {
+            return CoderResult.unmappableForLength(1);
+          }
+
+          out.put(toChar(b));
+          in.position(start + 1);
+          continue;
+        }
+
+        //Collect the diacritics up to their character
+        int count = 0;
+        int i = start;
+        while (i < in.limit() && (in.get(i) & 0xFF) >= COMBINING_START) {
+          if (count == marks.length) {
+            marks = Arrays.copyOf(marks, marks.length * 2);
+          }
+
+          marks[count++] = in.get(i++);
+        }
+
+        if (i == in.limit()) {
+          //The character is in the next input
+          return CoderResult.UNDERFLOW;
+        }
+
+        if (!out.hasRemaining()) {
+          return CoderResult.OVERFLOW;
+        }
+
+        pending = compose(toChar(in.get(i) & 0xFF), marks, 0, count);
+        pendingPos = 0;
+        in.position(i + 1);
+
+        if (!putPending(out)) {
+          return CoderResult.OVERFLOW;
+        }
+      }
+
+      return CoderResult.UNDERFLOW;
+    }
+
+    /**
+     * Puts as many of the pending characters into the output as possible
+     *
+     * @param out
+     * @return <code>false</code> if not all of them fit into the output
+     */
+    private boolean putPending(CharBuffer out) {
+      if (pending == null) {
+        return true;
+      }
+
+      while (pendingPos < pending.length() && out.hasRemaining()) {
+        out.put(pending.charAt(pendingPos++));
+      }
+
+      if (pendingPos < pending.length()) {
+        return false;
+      }
+
+      pending = null;
+      return true;
+    }
+
+    @Override
+    protected CoderResult implFlush(CharBuffer out) {
+      return putPending(out) ? CoderResult.UNDERFLOW : CoderResult.OVERFLOW;
+    }
+
+    @Override
+    protected void implReset() {
+      pending = null;
+      pendingPos = 0;
+    }
+
+  }
+
+}
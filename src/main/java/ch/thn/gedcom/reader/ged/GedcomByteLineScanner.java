@@ -0,0 +1,365 @@
+/**
+ *    Copyright 2014 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ch.thn.gedcom.reader.ged;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+import ch.thn.gedcom.reader.GedcomReaderError;
+
+/**
+ * A {@link GedcomLineScanner} which works directly on the bytes of the input.
+ * Line terminators and delimiters are found on the raw bytes and only the
+ * requested parts of a line are decoded. The input has to be in a character
+ * set which is compatible with ASCII (like UTF-8 or ANSEL). A UTF-8 byte order
+ * mark at the start of the file is skipped.<br>
+ * <br>
+ * A file is read through memory mapped windows of the given size. When a line
+ * reaches over the end of a window, the next window is mapped starting at that
+ * line. Files larger than 2GB can therefore be read as well.
+ *
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ */
+public class GedcomByteLineScanner extends GedcomLineScanner {
+
+  /** The default size of the memory mapped windows */
+  public static final int DEFAULT_WINDOW_SIZE = 64 * 1024 * 1024;
+
+  private FileChannel channel = null;
+  private Charset charset = null;
+  private boolean ansel = false;
+
+  private int windowSize = 0;
+  private ByteBuffer window = null;
+  /** The file offset of the first byte in the window */
+  private long windowStart = 0;
+  /** The file offset where the scanning stops */
+  private long dataEnd = 0;
+  private int pos = 0;
+  private boolean skipLF = false;
+
+  private byte[] line = null;
+  private int lineLength = 0;
+  private long lineOffset = 0;
+
+  private byte[] valueBuffer = null;
+
+
+  /**
+   * Scans the given part of the file with memory mapped windows of the default
+   * size.
+   *
+   * @param channel
+   * @param start The file offset of the first byte to scan
+   * @param end The file offset after the last byte to scan
+   * @param charset
+   * @throws IOException
+   */
+  public GedcomByteLineScanner(FileChannel channel, long start, long end, Charset charset)
+      throws IOException {
+    this(channel, start, end, charset, DEFAULT_WINDOW_SIZE);
+  }
+
+  /**
+   * Scans the given part of the file with memory mapped windows of the given
+   * size. A single line has to fit into one window.
+   *
+   * @param channel
+   * @param start The file offset of the first byte to scan
+   * @param end The file offset after the last byte to scan
+   * @param charset
+   * @param windowSize
+   * @throws IOException
+   */
+  public GedcomByteLineScanner(FileChannel channel, long start, long end, Charset charset,
+      int windowSize) throws IOException {
+    this.channel = channel;
+    this.charset = charset;
+    this.ansel = charset == GedcomAnselCharset.ANSEL;
+    this.windowSize = windowSize;
+
+    dataEnd = end;
+    line = new byte[256];
+    valueBuffer = new byte[256];
+
+    map(start);
+  }
+
+  /**
+   * Scans the remaining bytes of the given buffer.
+   *
+   * @param buffer
+   * @param offset The offset of the first byte of the buffer in the source. Only
+   * used for {@link #getLineOffset()} and {@link #getPosition()}.
+   * @param charset
+   */
+  public GedcomByteLineScanner(ByteBuffer buffer, long offset, Charset charset) {
+    this.charset = charset;
+    this.ansel = charset == GedcomAnselCharset.ANSEL;
+
+    window = buffer.slice();
+    windowStart = offset;
+    dataEnd = offset + window.limit();
+    line = new byte[256];
+    valueBuffer = new byte[256];
+  }
+
+  /**
+   * Maps the next window, starting at the given file offset
+   *
+   * @param offset
+   * @throws IOException
+   */
+  private void map(long offset) throws IOException {
+    window = channel.map(MapMode.READ_ONLY, offset, Math.min(windowSize, dataEnd - offset));
+    windowStart = offset;
+    pos = 0;
+  }
+
+  /**
+   * Makes sure that there is at least one more byte to read in the window
+   *
+   * @return <code>false</code> if the end of the data is reached
+   * @throws IOException
+   */
+  private boolean ensureAvailable() throws IOException {
+    if (pos < window.limit()) {
+      return true;
+    }
+
+    long next = windowStart + pos;
+
+    if (channel == null || next >= dataEnd) {
+      return false;
+    }
+
+    map(next);
+    return true;
+  }
+
+  @Override
+  protected boolean readLine() throws IOException {
+    lineLength = 0;
+
+    if (skipLF) {
+      //The previous line ended with \r. Skip the \n of a \r\n
+      skipLF = false;
+
+      if (ensureAvailable() && window.get(pos) == '\n') {
+        pos++;
+      }
+    }
+
+    if (!ensureAvailable()) {
+      return false;
+    }
+
+    lineOffset = windowStart + pos;
+
+    if (lineOffset == 0 && hasBom()) {
+      pos += 3;
+    }
+
+    int limit = window.limit();
+    int i = pos;
+
+    while (true) {
+      while (i < limit) {
+        byte b = window.get(i);
+        if (b == '\n' || b == '\r') {
+          break;
+        }
+        i++;
+      }
+
+      if (i < limit) {
+        //Line terminator found
+        copyLine(pos, i);
+        skipLF = window.get(i) == '\r';
+        pos = i + 1;
+        return true;
+      }
+
+      if (channel == null || windowStart + limit >= dataEnd) {
+        //A last line without line terminator
+        copyLine(pos, limit);
+        pos = limit;
+        return true;
+      }
+
+      //The line continues in the next window. Map the next window
+      //starting at the beginning of this line.
+      int scanned = i - pos;
+      map(lineOffset);
+      limit = window.limit();
+
+      if (scanned >= limit) {
+        throw new GedcomReaderError("Line at byte " + lineOffset + " is longer than " +
+            "the mapped window size of " + windowSize + " bytes");
+      }
+
+      i = scanned;
+    }
+  }
+
+  /**
+   * Checks if the window starts with a UTF-8 byte order mark
+   *
+   * @return
+   */
+  private boolean hasBom() {
+    return window.limit() >= 3 && (window.get(0) & 0xFF) == 0xEF
+        && (window.get(1) & 0xFF) == 0xBB && (window.get(2) & 0xFF) == 0xBF;
+  }
+
+  /**
+   *
+   *
+   * @param start
+   * @param end
+   */
+  private void copyLine(int start, int end) {
+    int length = end - start;
+
+    if (length > line.length) {
+      line = new byte[Math.max(line.length * 2, length)];
+    }
+
+    window.position(start);
+    window.get(line, 0, length);
+    lineLength = length;
+  }
+
+  /**
+   * The offset of the first byte of the current line in the source
+   *
+   * @return
+   */
+  public long getLineOffset() {
+    return lineOffset;
+  }
+
+  /**
+   * The offset of the next byte to read in the source, right after the line
+   * terminator of the current line
+   *
+   * @return
+   */
+  public long getPosition() {
+    return windowStart + pos;
+  }
+
+  @Override
+  protected int getLineLength() {
+    return lineLength;
+  }
+
+  @Override
+  protected int charAt(int index) {
+    return line[index] & 0xFF;
+  }
+
+  @Override
+  protected boolean isDecoded(int start, int end) {
+    //Only ASCII bytes are characters
+    for (int i = start; i < end; i++) {
+      if (line[i] < 0) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  @Override
+  protected String createString(int start, int end, boolean collapseSpaces) {
+    byte[] bytes = line;
+    int length = end - start;
+
+    if (collapseSpaces && hasMultipleSpaces(start, end)) {
+      if (valueBuffer.length < length) {
+        valueBuffer = new byte[length];
+      }
+
+      length = 0;
+      for (int i = start; i < end; i++) {
+        byte b = line[i];
+        if (b != ' ' || line[i - 1] != ' ') {
+          valueBuffer[length++] = b;
+        }
+      }
+
+      bytes = valueBuffer;
+      start = 0;
+    }
+
+    return decode(bytes, start, length);
+  }
+
+  /**
+   * Decodes the given bytes. Pure ASCII (the usual case for tags, xrefs and
+   * most values) does not need the decoder of the character set.
+   *
+   * @param bytes
+   * @param start
+   * @param length
+   * @return
+   */
+  private String decode(byte[] bytes, int start, int length) {
+    for (int i = start; i < start + length; i++) {
+      if (bytes[i] < 0) {
+        if (ansel) {
+          return GedcomAnselCharset.decode(bytes, start, length);
+        }
+
+        return new String(bytes, start, length, charset);
+      }
+    }
+
+    return new String(bytes, start, length, StandardCharsets.ISO_8859_1);
+  }
+
+  /**
+   *
+   *
+   * @param start
+   * @param end
+   * @return
+   */
+  private boolean hasMultipleSpaces(int start, int end) {
+    for (int i = start + 1; i < end; i++) {
+      if (line[i] == ' ' && line[i - 1] == ' ') {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (channel != null) {
+      channel.close();
+    }
+  }
+
+}
@@ -0,0 +1,187 @@
+/**
+ *    Copyright 2014 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ch.thn.gedcom.reader.ged;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * A {@link GedcomLineScanner} which reads already decoded characters from a
+ * {@link Reader} into a reusable character buffer. A byte order mark at the
+ * start of the input is skipped.
+ *
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ */
+public class GedcomCharLineScanner extends GedcomLineScanner {
+
+  private static final int BUFFER_SIZE = 16384;
+
+  private Reader input = null;
+
+  private char[] buffer = null;
+  private int bufferPos = 0;
+  private int bufferEnd = 0;
+  private boolean skipLF = false;
+  private boolean start = true;
+
+  private char[] line = null;
+  private int lineLength = 0;
+
+  private char[] valueBuffer = null;
+
+
+  /**
+   *
+   *
+   * @param input
+   */
+  public GedcomCharLineScanner(Reader input) {
+    this.input = input;
+
+    buffer = new char[BUFFER_SIZE];
+    line = new char[256];
+    valueBuffer = new char[256];
+  }
+
+  @Override
+  protected boolean readLine() throws IOException {
+    lineLength = 0;
+
+    while (true) {
+      if (bufferPos >= bufferEnd) {
+        bufferPos = 0;
+        bufferEnd = input.read(buffer, 0, buffer.length);
+
+        if (bufferEnd <= 0) {
+          bufferEnd = 0;
+          //A last line without line terminator
+          return lineLength > 0;
+        }
+
+        if (start) {
+          start = false;
+
+          if (buffer[0] == '\uFEFF') {
+            bufferPos++;
+            continue;
+          }
+        }
+      }
+
+      if (skipLF) {
+        //The previous line ended with \r. Skip the \n of a \r\n
+        skipLF = false;
+
+        if (buffer[bufferPos] == '\n') {
+          bufferPos++;
+          continue;
+        }
+      }
+
+      int start = bufferPos;
+      while (bufferPos < bufferEnd) {
+        char c = buffer[bufferPos];
+        if (c == '\n' || c == '\r') {
+          break;
+        }
+        bufferPos++;
+      }
+
+      appendToLine(start, bufferPos - start);
+
+      if (bufferPos < bufferEnd) {
+        //Line terminator found
+        skipLF = buffer[bufferPos] == '\r';
+        bufferPos++;
+        return true;
+      }
+    }
+  }
+
+  /**
+   *
+   *
+   * @param start
+   * @param length
+   */
+  private void appendToLine(int start, int length) {
+    if (lineLength + length > line.length) {
+      char[] newLine = new char[Math.max(line.length * 2, lineLength + length)];
+      System.arraycopy(line, 0, newLine, 0, lineLength);
+      line = newLine;
+    }
+
+    System.arraycopy(buffer, start, line, lineLength, length);
+    lineLength += length;
+  }
+
+  @Override
+  protected int getLineLength() {
+    return lineLength;
+  }
+
+  @Override
+  protected int charAt(int index) {
+    return line[index];
+  }
+
+  @Override
+  protected String createString(int start, int end, boolean collapseSpaces) {
+    if (!collapseSpaces || !hasMultipleSpaces(start, end)) {
+      //No multiple spaces. The usual case
+      return new String(line, start, end - start);
+    }
+
+    if (valueBuffer.length < end - start) {
+      valueBuffer = new char[end - start];
+    }
+
+    int length = 0;
+    for (int i = start; i < end; i++) {
+      char c = line[i];
+      if (c != ' ' || line[i - 1] != ' ') {
+        valueBuffer[length++] = c;
+      }
+    }
+
+    return new String(valueBuffer, 0, length);
+  }
+
+  /**
+   *
+   *
+   * @param start
+   * @param end
+   * @return
+   */
+  private boolean hasMultipleSpaces(int start, int end) {
+    for (int i = start + 1; i < end; i++) {
+      if (line[i] == ' ' && line[i - 1] == ' ') {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public void close() throws IOException {
+    input.close();
+  }
+
+}
@@ -0,0 +1,248 @@
+/**
+ *    Copyright 2014 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ch.thn.gedcom.reader.ged;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+import com.google.common.base.Charsets;
+
+import ch.thn.gedcom.reader.ged.GedcomLineScanner.LineStatus;
+
+/**
+ * Detects the character set of GEDCOM data from the first bytes of the data.
+ * A byte order mark decides first. Without one, UTF-16 is recognized by the
+ * zero bytes of the first characters. Otherwise the CHAR line of the HEAD
+ * record is looked up:<br>
+ * <br>
+ * <ul>
+ * <li>UTF-8 and ASCII: UTF-8</li>
+ * <li>UNICODE: UTF-16 (only if the data actually is UTF-16)</li>
+ * <li>ANSEL: {@link GedcomAnselCharset}</li>
+ * <li>ANSI: windows-1252</li>
+ * </ul>
+ * UTF-8 is used if the HEAD record has no CHAR line or an unknown one.
+ *
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ */
+public class GedcomCharsetDetector {
+
+  /** The number of bytes which are looked at */
+  public static final int HEAD_SIZE = 16 * 1024;
+
+  /** The character set if none is given in the data */
+  public static final Charset DEFAULT_CHARSET = Charsets.UTF_8;
+
+
+  /**
+   *
+   *
+   */
+  private GedcomCharsetDetector() {
+
+  }
+
+  /**
+   * Detects the character set of the given file
+   *
+   * @param gedcomFile
+   * @return
+   * @throws IOException
+   */
+  public static Charset detect(String gedcomFile) throws IOException {
+    InputStream in = new FileInputStream(gedcomFile);
+
+    try {
+      byte[] head = new byte[HEAD_SIZE];
+      return detect(head, readHead(in, head));
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Reads the first bytes of the input into the given array
+   *
+   * @param in
+   * @param head
+   * @return The number of bytes read
+   * @throws IOException
+   */
+  static int readHead(InputStream in, byte[] head) throws IOException {
+    int length = 0;
+    int read = 0;
+
+    while (length < head.length && (read = in.read(head, length, head.length - length)) > 0) {
+      length += read;
+    }
+
+    return length;
+  }
+
+  /**
+   * Detects the character set from the given first bytes of the data
+   *
+   * @param head
+   * @param length The number of bytes in the array
+   * @return
+   */
+  public static Charset detect(byte[] head, int length) {
+    if (startsWith(head, length, 0xEF, 0xBB, 0xBF)) {
+      return Charsets.UTF_8;
+    } else if (startsWith(head, length, 0xFE, 0xFF)) {
+      return Charsets.UTF_16BE;
+    } else if (startsWith(head, length, 0xFF, 0xFE)) {
+      return Charsets.UTF_16LE;
+    }
+
+    //UTF-16 without byte order mark. The first character is usually the
+    //level of the HEAD line.
+    if (length >= 2 && head[0] != 0 && head[1] == 0) {
+      return Charsets.UTF_16LE;
+    } else if (length >= 2 && head[0] == 0 && head[1] != 0) {
+      return Charsets.UTF_16BE;
+    }
+
+    String charName = getHeaderCharName(head, length);
+
+    if (charName == null) {
+      return DEFAULT_CHARSET;
+    }
+
+    switch (charName.toUpperCase(Locale.ROOT)) {
+    case "ANSEL":
+      return GedcomAnselCharset.ANSEL;
+    case "ANSI":
+      return Charset.forName("windows-1252");
+    default:
+      //UTF-8, ASCII (a subset of UTF-8) and UNICODE without UTF-16 data
+      return DEFAULT_CHARSET;
+    }
+  }
+
+  /**
+   * Returns the character set with the given name, including ANSEL
+   *
+   * @param name
+   * @return
+   */
+  public static Charset forName(String name) {
+    if (GedcomAnselCharset.ANSEL.name().equals(name)) {
+      return GedcomAnselCharset.ANSEL;
+    }
+
+    return Charset.forName(name);
+  }
+
+  /**
+   * The length of the byte order mark at the start of the data
+   *
+   * @param head
+   * @param length The number of bytes in the array
+   * @return The length or 0 if there is no byte order mark
+   */
+  public static int getBomLength(byte[] head, int length) {
+    if (startsWith(head, length, 0xEF, 0xBB, 0xBF)) {
+      return 3;
+    } else if (startsWith(head, length, 0xFE, 0xFF) || startsWith(head, length, 0xFF, 0xFE)) {
+      return 2;
+    }
+
+    return 0;
+  }
+
+  /**
+   * Checks if the character set encodes the ASCII characters as single ASCII
+   * bytes, so that the data can be scanned with a {@link GedcomByteLineScanner}
+   *
+   * @param charset
+   * @return
+   */
+  public static boolean isAsciiCompatible(Charset charset) {
+    return charset == GedcomAnselCharset.ANSEL || charset.contains(StandardCharsets.US_ASCII)
+        && !charset.name().startsWith("UTF-16") && !charset.name().startsWith("UTF-32");
+  }
+
+  /**
+   * Looks up the value of the CHAR line of the HEAD record
+   *
+   * @param head
+   * @param length
+   * @return The value or <code>null</code> if there is no CHAR line
+   */
+  private static String getHeaderCharName(byte[] head, int length) {
+    GedcomByteLineScanner scanner = new GedcomByteLineScanner(ByteBuffer.wrap(head, 0, length),
+        0, StandardCharsets.ISO_8859_1);
+    boolean headerFound = false;
+
+    try {
+      while (scanner.next()) {
+        if (scanner.getStatus() != LineStatus.VALID) {
+          continue;
+        }
+
+        if (!headerFound) {
+          headerFound = scanner.isHeaderLine();
+          continue;
+        }
+
+        if (scanner.getLevel() == 0) {
+          //The end of the HEAD record
+          return null;
+        }
+
+        if (scanner.getLevel() == 1 && scanner.tagEquals("CHAR")) {
+          return scanner.getValue();
+        }
+      }
+    } catch (IOException e) {
+      //Does not happen with a buffer
+    }
+
+    return null;
+  }
+
+  /**
+   *
+   *
+   * @param head
+   * @param length
+   * @param bytes
+   * @return
+   */
+  private static boolean startsWith(byte[] head, int length, int... bytes) {
+    if (length < bytes.length) {
+      return false;
+    }
+
+    for (int i = 0; i < bytes.length; i++) {
+      if ((head[i] & 0xFF) != bytes[i]) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+}
@@ -0,0 +1,233 @@
+/**
+ *    Copyright 2014 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ch.thn.gedcom.reader.ged;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import ch.thn.gedcom.data.GedcomTree;
+import ch.thn.gedcom.reader.GedcomReaderError;
+
+/**
+ * Parses one chunk of a GEDCOM file into the {@link GedcomTree}s of its records.
+ * A chunk always starts at the beginning of a level-0 line and ends right before
+ * the next level-0 line (or at the end of the file), so the chunks of a file
+ * can be parsed independently of each other.
+ *
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ */
+class GedcomChunkParser implements Callable<List<GedcomTree>> {
+
+  /** How many bytes are mapped at once when searching for the start of a record */
+  private static final int SEARCH_WINDOW_SIZE = 1024 * 1024;
+
+  /**
+   * Chunks up to this size are read into a heap buffer instead of being mapped.
+   * Each mapping is only released when its buffer is collected, and reading many
+   * single records would otherwise run into the limit of mappings per process.
+   */
+  private static final int READ_THRESHOLD = 64 * 1024;
+
+  private GedcomRecordBuilder builder = null;
+  private FileChannel channel = null;
+  private Charset charset = null;
+  private GedcomSymbolTable symbolTable = null;
+  private GedcomValuePool valuePool = null;
+
+  private long start = 0;
+  private long end = 0;
+
+
+  /**
+   *
+   *
+   * @param builder The builder for the records of this chunk
+   * @param channel
+   * @param start The file offset of the first byte of the chunk
+   * @param end The file offset after the last byte of the chunk
+   * @param charset
+   * @param symbolTable The symbol table for this chunk or <code>null</code>
+   * @param valuePool The value pool for this chunk or <code>null</code>
+   */
+  public GedcomChunkParser(GedcomRecordBuilder builder, FileChannel channel, long start,
+      long end, Charset charset, GedcomSymbolTable symbolTable, GedcomValuePool valuePool) {
+    this.builder = builder;
+    this.channel = channel;
+    this.start = start;
+    this.end = end;
+    this.charset = charset;
+    this.symbolTable = symbolTable;
+    this.valuePool = valuePool;
+  }
+
+  @Override
+  public List<GedcomTree> call() throws IOException {
+    List<GedcomTree> trees = new ArrayList<GedcomTree>();
+
+    //The scanner is not closed since the channel is shared with the other chunks
+    GedcomLineScanner scanner = null;
+
+    if (end - start <= READ_THRESHOLD) {
+      scanner = new GedcomByteLineScanner(read(channel, start, end), start, charset);
+    } else {
+      scanner = new GedcomByteLineScanner(channel, start, end, charset,
+          (int)Math.min(end - start, GedcomByteLineScanner.DEFAULT_WINDOW_SIZE));
+    }
+    scanner.setSymbolTable(symbolTable);
+    scanner.setValuePool(valuePool);
+
+    try {
+      while (scanner.next()) {
+        switch (scanner.getStatus()) {
+        case EMPTY:
+          continue;
+        case INCOMPLETE:
+          throw new GedcomReaderError("Line '" + scanner.getLine() + "' can not be parsed. Line needs at least a level number and a tag name.");
+        case INVALID_LEVEL:
+          System.out.println("Failed to parse line " + scanner.getLineNumber() + " of the " +
+              "chunk starting at byte " + start + ". Level number not found (" +
+              scanner.getLevelPart() + ")");
+          continue;
+        default:
+          break;
+        }
+
+        if (builder.isSkipped(scanner.getLevel())) {
+          continue;
+        }
+
+        GedcomTree tree = builder.processLine(scanner.getLevel(), scanner.getTag(),
+            scanner.getXRef(), scanner.getValue(), scanner.getLineNumber());
+
+        if (tree != null) {
+          trees.add(tree);
+        }
+      }
+    } catch (GedcomReaderError e) {
+      //The line numbers are only known relative to the chunk
+      throw new GedcomReaderError(e.getMessage() + " (line numbers relative to the chunk " +
+          "starting at byte " + start + ")");
+    }
+
+    GedcomTree tree = builder.finish();
+    if (tree != null) {
+      trees.add(tree);
+    }
+
+    return trees;
+  }
+
+  /**
+   * Reads the given part of the file into a heap buffer
+   *
+   * @param channel
+   * @param start
+   * @param end
+   * @return
+   * @throws IOException
+   */
+  static ByteBuffer read(FileChannel channel, long start, long end) throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate((int)(end - start));
+
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, start + buffer.position()) < 0) {
+        throw new EOFException("Unexpected end of file in the part starting at byte " +
+            start);
+      }
+    }
+
+    buffer.flip();
+    return buffer;
+  }
+
+  /**
+   * Splits the given part of the file into chunks of about the given size. Each
+   * chunk starts with a level-0 line.
+   *
+   * @param channel
+   * @param start The file offset of the first level-0 line
+   * @param end
+   * @param chunkSize
+   * @return The start offsets of all chunks, followed by the end offset
+   * @throws IOException
+   */
+  public static List<Long> split(FileChannel channel, long start, long end, long chunkSize)
+      throws IOException {
+    List<Long> boundaries = new ArrayList<Long>();
+    boundaries.add(start);
+
+    long chunkStart = start;
+
+    while (chunkStart + chunkSize < end) {
+      chunkStart = findRecordStart(channel, chunkStart + chunkSize, end);
+
+      if (chunkStart >= end) {
+        break;
+      }
+
+      boundaries.add(chunkStart);
+    }
+
+    boundaries.add(end);
+
+    return boundaries;
+  }
+
+  /**
+   * Finds the next level-0 line, a line terminator followed by "0 ", which
+   * starts after the given offset
+   *
+   * @param channel
+   * @param from
+   * @param end
+   * @return The offset of the "0" of the level-0 line or <code>end</code>
+   * if there is no more level-0 line
+   * @throws IOException
+   */
+  private static long findRecordStart(FileChannel channel, long from, long end)
+      throws IOException {
+    //Start one byte earlier so that the line terminator can be found
+    long windowStart = from - 1;
+
+    while (windowStart + 2 < end) {
+      int size = (int)Math.min(SEARCH_WINDOW_SIZE, end - windowStart);
+      ByteBuffer window = channel.map(MapMode.READ_ONLY, windowStart, size);
+
+      for (int i = 0; i + 2 < size; i++) {
+        byte b = window.get(i);
+        if ((b == '\n' || b == '\r') && window.get(i + 1) == '0' && window.get(i + 2) == ' ') {
+          return windowStart + i + 1;
+        }
+      }
+
+      //Overlap so that a match across two windows is not missed
+      windowStart += size - 2;
+    }
+
+    return end;
+  }
+
+}
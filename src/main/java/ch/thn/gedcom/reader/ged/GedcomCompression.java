@@ -0,0 +1,226 @@
+/**
+ *    Copyright 2014 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ch.thn.gedcom.reader.ged;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Enumeration;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+import ch.thn.gedcom.reader.GedcomReaderError;
+
+/**
+ * Reads GEDCOM data from gzip files (*.ged.gz) and zip archives like GEDZIP
+ * (*.gdz). The data is decompressed while it is read, nothing is unpacked to
+ * the disk. The container is recognized by the first bytes of the input, so
+ * input which is not compressed is read as it is.<br>
+ * <br>
+ * In a zip archive file, the entry gedcom.ged of a GEDZIP archive is read. If
+ * there is no such entry, the first entry with the ged extension is read. The
+ * entry is found in the central directory of the archive and read directly.<br>
+ * <br>
+ * A zip archive which is only available as a stream can not be searched for
+ * gedcom.ged. The first entry with the ged extension is read instead, which is
+ * gedcom.ged in a GEDZIP archive unless another GEDCOM file has been added to
+ * the archive before it.
+ *
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ */
+public class GedcomCompression {
+
+  /** The size of the buffers for the compressed and the decompressed data */
+  public static final int BUFFER_SIZE = 64 * 1024;
+
+  /** The extensions of the compressed files which can be read */
+  public static final String[] EXTENSIONS = {".gz", ".gdz", ".zip"};
+
+  /** The name of the GEDCOM file in a GEDZIP archive */
+  public static final String GEDZIP_ENTRY = "gedcom.ged";
+
+
+  /**
+   *
+   *
+   */
+  private GedcomCompression() {
+
+  }
+
+  /**
+   * Checks if the given file is compressed, by its extension
+   *
+   * @param file
+   * @return
+   */
+  public static boolean isCompressed(String file) {
+    String name = file.toLowerCase();
+
+    for (String extension : EXTENSIONS) {
+      if (name.endsWith(extension)) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Opens the given file and returns its decompressed data. The returned
+   * stream supports {@link InputStream#mark(int)}.
+   *
+   * @param file
+   * @return The decompressed data or the buffered file itself if it is not
+   * compressed
+   * @throws IOException
+   * @throws GedcomReaderError If a zip archive does not contain a GEDCOM file
+   */
+  public static InputStream open(String file) throws IOException {
+    InputStream in = new FileInputStream(file);
+    boolean zip = false;
+
+    try {
+      zip = in.read() == 'P' && in.read() == 'K' && in.read() == 3 && in.read() == 4;
+    } finally {
+      in.close();
+    }
+
+    if (zip) {
+      return openZipFile(file);
+    }
+
+    return decompress(new FileInputStream(file));
+  }
+
+  /**
+   * Returns the decompressed data of the given input. The returned stream
+   * supports {@link InputStream#mark(int)}.
+   *
+   * @param input
+   * @return The decompressed data or the buffered input itself if it is not
+   * compressed
+   * @throws IOException
+   * @throws GedcomReaderError If a zip archive does not contain a GEDCOM file
+   * @see #open(String)
+   */
+  public static InputStream decompress(InputStream input) throws IOException {
+    BufferedInputStream in = new BufferedInputStream(input, BUFFER_SIZE);
+
+    in.mark(4);
+    int b1 = in.read();
+    int b2 = in.read();
+    int b3 = in.read();
+    int b4 = in.read();
+    in.reset();
+
+    if (b1 == 0x1F && b2 == 0x8B) {
+      return new BufferedInputStream(new GZIPInputStream(in, BUFFER_SIZE), BUFFER_SIZE);
+    }
+
+    if (b1 == 'P' && b2 == 'K' && b3 == 3 && b4 == 4) {
+      return new BufferedInputStream(openZipEntry(new ZipInputStream(in)), BUFFER_SIZE);
+    }
+
+    return in;
+  }
+
+  /**
+   * Opens the GEDCOM file of the given zip archive. This is the entry
+   * {@link #GEDZIP_ENTRY} or, if there is none, the first entry with the ged
+   * extension. The archive is closed when the returned input is closed.
+   *
+   * @param file
+   * @return
+   * @throws IOException
+   */
+  private static InputStream openZipFile(String file) throws IOException {
+    final ZipFile zip = new ZipFile(file);
+    boolean done = false;
+
+    try {
+      ZipEntry entry = zip.getEntry(GEDZIP_ENTRY);
+
+      if (entry == null || entry.isDirectory()) {
+        entry = null;
+
+        Enumeration<? extends ZipEntry> entries = zip.entries();
+        while (entries.hasMoreElements()) {
+          ZipEntry next = entries.nextElement();
+
+          if (!next.isDirectory() && next.getName().toLowerCase().endsWith(".ged")) {
+            entry = next;
+            break;
+          }
+        }
+      }
+
+      if (entry == null) {
+        throw new GedcomReaderError("The archive " + file + " does not contain a GEDCOM " +
+            "file (" + GEDZIP_ENTRY + " or any *.ged file).");
+      }
+
+      InputStream in = new FilterInputStream(zip.getInputStream(entry)) {
+        @Override
+        public void close() throws IOException {
+          try {
+            super.close();
+          } finally {
+            zip.close();
+          }
+        }
+      };
+
+      done = true;
+      return new BufferedInputStream(in, BUFFER_SIZE);
+    } finally {
+      if (!done) {
+        zip.close();
+      }
+    }
+  }
+
+  /**
+   * Moves the zip input to the first entry with the ged extension, which is
+   * {@link #GEDZIP_ENTRY} in a GEDZIP archive
+   *
+   * @param zip
+   * @return
+   * @throws IOException
+   */
+  private static InputStream openZipEntry(ZipInputStream zip) throws IOException {
+    ZipEntry entry = null;
+
+    while ((entry = zip.getNextEntry()) != null) {
+      if (!entry.isDirectory() && entry.getName().toLowerCase().endsWith(".ged")) {
+        return zip;
+      }
+    }
+
+    zip.close();
+
+    throw new GedcomReaderError("The archive does not contain a GEDCOM file (" +
+        GEDZIP_ENTRY + " or any *.ged file).");
+  }
+
+}
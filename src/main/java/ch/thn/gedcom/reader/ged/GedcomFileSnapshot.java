@@ -0,0 +1,728 @@
+/**
+ *    Copyright 2014 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ch.thn.gedcom.reader.ged;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+import com.google.common.base.Charsets;
+
+import ch.thn.gedcom.data.GedcomTree;
+import ch.thn.gedcom.reader.GedcomReaderError;
+import ch.thn.gedcom.store.GedcomStore;
+
+/**
+ * A binary snapshot of a parsed GEDCOM file which is stored next to the file.
+ * The snapshot contains the lines of the file already split into their parts
+ * and resolved to the states of a {@link GedcomGrammarTable}, together with the
+ * states themselves. Reading a snapshot builds the records directly with the
+ * paths of the states, without scanning the lines and without looking up the
+ * grammar in the gedcom store.<br>
+ * <br>
+ * The snapshot starts with the format version, the size, the modification
+ * time and a CRC32 checksum of the GEDCOM file, a fingerprint of the grammar
+ * states and the name of the character set the file has been read with. A
+ * snapshot is only read if the size of the GEDCOM file still matches and
+ * either the modification time or the checksum, so the whole file only has to
+ * be read for the checksum if it might have been changed. The character set
+ * has to be the one the file is read with now, and the grammar states have to
+ * match their fingerprint and the record structures of the gedcom store.<br>
+ * <br>
+ * File layout: header, lines (level + 1, state, xref, value, terminated by a
+ * level of 0), grammar states and the offset of the grammar states as the last
+ * eight bytes.
+ *
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ */
+public class GedcomFileSnapshot {
+
+  /** The extension which is added to the name of the GEDCOM file */
+  public static final String FILE_EXTENSION = ".snapshot";
+
+  private static final int MAGIC = 0x47454453;
+
+  /** Increase when the file format changes */
+  private static final int VERSION = 2;
+
+  private static final int HEADER_SIZE = 96;
+
+  private static final int FINGERPRINT_OFFSET = 32;
+
+  private static final int MAX_CHARSET_LENGTH = HEADER_SIZE - FINGERPRINT_OFFSET - 9;
+
+  private static final int BUFFER_SIZE = 1024 * 1024;
+
+  private File snapshotFile = null;
+  private File tempFile = null;
+
+  private FileChannel channel = null;
+  private ByteBuffer buffer = null;
+
+  private ByteBuffer header = null;
+
+
+  /**
+   * Starts writing a new snapshot for the given GEDCOM file. The snapshot only
+   * replaces an existing snapshot with {@link #commit(GedcomGrammarTable)}.
+   *
+   * @param gedcomFile
+   * @param charset The character set the file is read with
+   * @throws IOException
+   */
+  GedcomFileSnapshot(String gedcomFile, Charset charset) throws IOException {
+    File source = new File(gedcomFile);
+    snapshotFile = new File(getSnapshotFile(gedcomFile));
+
+    //Taken before the file is read, so that changes while reading are noticed
+    header = ByteBuffer.allocate(HEADER_SIZE);
+    header.putInt(MAGIC);
+    header.putInt(VERSION);
+    header.putLong(source.length());
+    header.putLong(source.lastModified());
+    header.putLong(getChecksum(source));
+    //The fingerprint is set when the states are known
+    header.putLong(0);
+    putCharsetName(header, charset);
+    header.rewind();
+
+    tempFile = File.createTempFile(snapshotFile.getName(), ".tmp",
+        snapshotFile.getAbsoluteFile().getParentFile());
+    channel = FileChannel.open(tempFile.toPath(), StandardOpenOption.WRITE);
+    buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    //The header is written last
+    buffer.position(HEADER_SIZE);
+  }
+
+  /**
+   * The file name of the snapshot of the given GEDCOM file
+   *
+   * @param gedcomFile
+   * @return
+   */
+  public static String getSnapshotFile(String gedcomFile) {
+    return gedcomFile + FILE_EXTENSION;
+  }
+
+  /**
+   * Checks if there is a snapshot of the given GEDCOM file which still matches
+   * the file. The character set and the grammar states are only checked when
+   * the snapshot is read.
+   *
+   * @param gedcomFile
+   * @return
+   * @throws IOException
+   */
+  public static boolean isValid(String gedcomFile) throws IOException {
+    File snapshot = new File(getSnapshotFile(gedcomFile));
+
+    if (!snapshot.isFile()) {
+      return false;
+    }
+
+    FileChannel channel = FileChannel.open(snapshot.toPath(), StandardOpenOption.READ);
+
+    try {
+      return readHeader(channel, new File(gedcomFile), null) != null;
+    } finally {
+      channel.close();
+    }
+  }
+
+  /**
+   * Adds a line which has been resolved to the given state
+   *
+   * @param level
+   * @param state
+   * @param xref
+   * @param value
+   * @throws IOException
+   */
+  void addLine(int level, int state, String xref, String value) throws IOException {
+    putVarInt(level + 1);
+    putVarInt(state);
+    putString(xref);
+    putString(value);
+  }
+
+  /**
+   * Writes the states of the grammar table and replaces the snapshot file with
+   * the new snapshot
+   *
+   * @param table The table the lines have been resolved with
+   * @throws IOException
+   */
+  void commit(GedcomGrammarTable table) throws IOException {
+    //End of the lines
+    putVarInt(0);
+
+    long tableOffset = channel.position() + buffer.position();
+
+    //The tags are read after the states, so all tags of the states are included
+    int stateCount = table.getStateCount();
+    String[] tags = table.getTags();
+    CRC32 fingerprint = new CRC32();
+
+    putVarInt(tags.length);
+    for (String tag : tags) {
+      putString(tag);
+      update(fingerprint, tag);
+    }
+
+    putVarInt(stateCount);
+    for (int state = 1; state < stateCount; state++) {
+      putVarInt(table.getParentState(state));
+      putVarInt(table.getKey(state));
+      putString(table.getStructureName(state));
+      update(fingerprint, table.getParentState(state));
+      update(fingerprint, table.getKey(state));
+      update(fingerprint, table.getStructureName(state));
+
+      String[] path = table.getPath(state);
+      if (path == null) {
+        putVarInt(0);
+        update(fingerprint, 0);
+      } else {
+        putVarInt(path.length + 1);
+        update(fingerprint, path.length + 1);
+        for (String step : path) {
+          putString(step);
+          update(fingerprint, step);
+        }
+      }
+    }
+
+    ensure(8);
+    buffer.putLong(tableOffset);
+    flush();
+
+    header.putLong(FINGERPRINT_OFFSET, fingerprint.getValue());
+    channel.write(header, 0);
+    channel.close();
+
+    Files.move(tempFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Drops the snapshot which has been written so far
+   *
+   * @throws IOException
+   */
+  void discard() throws IOException {
+    try {
+      channel.close();
+    } finally {
+      tempFile.delete();
+    }
+  }
+
+  /**
+   * Reads the snapshot of the given GEDCOM file and passes each record to the
+   * consumer
+   *
+   * @param store
+   * @param gedcomFile
+   * @param charset The character set the file is read with
+   * @param symbolTable The symbol table for the xrefs or <code>null</code>
+   * @param valuePool The pool for the values or <code>null</code>
+   * @param recordFilter The filter for the records or <code>null</code>
+   * @param projection The tag paths to read or <code>null</code>
+   * @param consumer
+   * @return <code>false</code> if there is no snapshot or if the snapshot does
+   * not match the GEDCOM file, the character set or the gedcom store. Nothing
+   * has been passed to the consumer in this case.
+   * @throws IOException
+   */
+  static boolean read(GedcomStore store, String gedcomFile, Charset charset,
+      GedcomSymbolTable symbolTable,
+      GedcomValuePool valuePool, GedcomRecordFilter recordFilter,
+      GedcomTagProjection projection, Consumer<GedcomTree> consumer) throws IOException {
+    File snapshot = new File(getSnapshotFile(gedcomFile));
+
+    if (!snapshot.isFile()) {
+      return false;
+    }
+
+    FileChannel channel = FileChannel.open(snapshot.toPath(), StandardOpenOption.READ);
+
+    try {
+      ByteBuffer header = readHeader(channel, new File(gedcomFile), charset);
+
+      if (header == null) {
+        return false;
+      }
+
+      ByteBuffer trailer = ByteBuffer.allocate(8);
+      readFully(channel, trailer, channel.size() - 8);
+      trailer.flip();
+
+      //The states are needed first to build the records
+      channel.position(trailer.getLong());
+      SnapshotInput in = new SnapshotInput(channel);
+
+      CRC32 fingerprint = new CRC32();
+
+      String[] tags = new String[in.getVarInt()];
+      for (int i = 0; i < tags.length; i++) {
+        tags[i] = in.getString();
+        update(fingerprint, tags[i]);
+      }
+
+      int stateCount = in.getVarInt();
+      int[] parents = new int[stateCount];
+      int[] keys = new int[stateCount];
+      String[] structureNames = new String[stateCount];
+      String[][] paths = new String[stateCount][];
+
+      for (int state = 1; state < stateCount; state++) {
+        parents[state] = in.getVarInt();
+        keys[state] = in.getVarInt();
+        structureNames[state] = in.getString();
+        update(fingerprint, parents[state]);
+        update(fingerprint, keys[state]);
+        update(fingerprint, structureNames[state]);
+
+        int pathLength = in.getVarInt() - 1;
+        update(fingerprint, pathLength + 1);
+        if (pathLength >= 0) {
+          paths[state] = new String[pathLength];
+          for (int i = 0; i < pathLength; i++) {
+            paths[state][i] = in.getString();
+            update(fingerprint, paths[state][i]);
+          }
+        }
+      }
+
+      if (header.getLong(FINGERPRINT_OFFSET) != fingerprint.getValue()) {
+        return false;
+      }
+
+      GedcomGrammarTable table = new GedcomGrammarTable(store, tags, parents, keys,
+          structureNames, paths, stateCount);
+
+      //The record states have to resolve to the same structures with this store
+      for (int state = 1; state < stateCount; state++) {
+        if (parents[state] == GedcomGrammarTable.FILE_STATE
+            && !structureNames[state].equals(store.getStructureNameForTag(table.getTag(state)))) {
+          return false;
+        }
+      }
+      GedcomRecordBuilder builder = new GedcomRecordBuilder(store, null, table);
+      builder.setRecordFilter(recordFilter);
+      builder.setProjection(projection);
+
+      channel.position(HEADER_SIZE);
+      in = new SnapshotInput(channel);
+
+      int lineCount = 0;
+      int level = 0;
+
+      while ((level = in.getVarInt() - 1) >= 0) {
+        int state = in.getVarInt();
+        String xref = in.getString();
+        String value = in.getString();
+        lineCount++;
+
+        if (builder.isSkipped(level)) {
+          continue;
+        }
+
+        if (xref != null && symbolTable != null) {
+          xref = symbolTable.intern(xref);
+        }
+
+        if (value != null && valuePool != null) {
+          value = valuePool.intern(value);
+        }
+
+        GedcomTree tree = builder.processState(level, state, xref, value, lineCount);
+
+        if (tree != null) {
+          consumer.accept(tree);
+        }
+      }
+
+      GedcomTree tree = builder.finish();
+      if (tree != null) {
+        consumer.accept(tree);
+      }
+    } catch (EOFException e) {
+      throw new GedcomReaderError("The snapshot " + snapshot + " is incomplete");
+    } finally {
+      channel.close();
+    }
+
+    return true;
+  }
+
+  /**
+   * Reads the header of the snapshot and compares it with the GEDCOM file
+   *
+   * @param channel
+   * @param source
+   * @param charset The character set the file is read with or <code>null</code>
+   * to not check it
+   * @return The header or <code>null</code> if the snapshot does not match
+   * @throws IOException
+   */
+  private static ByteBuffer readHeader(FileChannel channel, File source, Charset charset)
+      throws IOException {
+    if (channel.size() < HEADER_SIZE + 8) {
+      return null;
+    }
+
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+    readFully(channel, header, 0);
+    header.flip();
+
+    if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+      return null;
+    }
+
+    long size = header.getLong();
+    long lastModified = header.getLong();
+    long checksum = header.getLong();
+    header.getLong();
+
+    if (charset != null && !charset.name().equals(getCharsetName(header))) {
+      return null;
+    }
+
+    if (size != source.length()) {
+      return null;
+    }
+
+    //Only calculate the checksum if the file might have been changed
+    if (lastModified != source.lastModified() && checksum != getChecksum(source)) {
+      return null;
+    }
+
+    return header;
+  }
+
+  /**
+   * Writes the length and the bytes of the name of the character set
+   *
+   * @param header
+   * @param charset
+   */
+  private static void putCharsetName(ByteBuffer header, Charset charset) {
+    byte[] name = charset.name().getBytes(Charsets.US_ASCII);
+
+    if (name.length > MAX_CHARSET_LENGTH) {
+      throw new GedcomReaderError("The name of the character set " + charset.name() +
+          " is too long for the snapshot");
+    }
+
+    header.put((byte)name.length);
+    header.put(name);
+  }
+
+  /**
+   *
+   *
+   * @param header
+   * @return
+   */
+  private static String getCharsetName(ByteBuffer header) {
+    int length = header.get() & 0xFF;
+
+    if (length > MAX_CHARSET_LENGTH) {
+      return null;
+    }
+
+    byte[] name = new byte[length];
+    header.get(name);
+
+    return new String(name, Charsets.US_ASCII);
+  }
+
+  /**
+   *
+   *
+   * @param crc
+   * @param value
+   */
+  private static void update(CRC32 crc, int value) {
+    crc.update(value >>> 24);
+    crc.update(value >>> 16);
+    crc.update(value >>> 8);
+    crc.update(value);
+  }
+
+  /**
+   *
+   *
+   * @param crc
+   * @param string
+   */
+  private static void update(CRC32 crc, String string) {
+    if (string == null) {
+      update(crc, 0);
+      return;
+    }
+
+    byte[] bytes = string.getBytes(Charsets.UTF_8);
+    update(crc, bytes.length + 1);
+    crc.update(bytes, 0, bytes.length);
+  }
+
+  /**
+   *
+   *
+   * @param channel
+   * @param buffer
+   * @param position
+   * @throws IOException
+   */
+  private static void readFully(FileChannel channel, ByteBuffer buffer, long position)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, position);
+
+      if (read < 0) {
+        throw new EOFException();
+      }
+
+      position += read;
+    }
+  }
+
+  /**
+   * The CRC32 checksum of the file content
+   *
+   * @param file
+   * @return
+   * @throws IOException
+   */
+  private static long getChecksum(File file) throws IOException {
+    CRC32 crc = new CRC32();
+    FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+
+    try {
+      long size = channel.size();
+      long position = 0;
+
+      while (position < size) {
+        long length = Math.min(size - position, GedcomByteLineScanner.DEFAULT_WINDOW_SIZE);
+        crc.update(channel.map(MapMode.READ_ONLY, position, length));
+        position += length;
+      }
+    } finally {
+      channel.close();
+    }
+
+    return crc.getValue();
+  }
+
+  /**
+   *
+   *
+   * @param value
+   * @throws IOException
+   */
+  private void putVarInt(int value) throws IOException {
+    ensure(5);
+
+    while ((value & ~0x7F) != 0) {
+      buffer.put((byte)((value & 0x7F) | 0x80));
+      value >>>= 7;
+    }
+
+    buffer.put((byte)value);
+  }
+
+  /**
+   * Writes the length + 1 and the UTF-8 bytes of the string. A length of 0
+   * stands for <code>null</code>.
+   *
+   * @param string
+   * @throws IOException
+   */
+  private void putString(String string) throws IOException {
+    if (string == null) {
+      putVarInt(0);
+      return;
+    }
+
+    byte[] bytes = string.getBytes(Charsets.UTF_8);
+    putVarInt(bytes.length + 1);
+
+    if (bytes.length > buffer.capacity()) {
+      flush();
+      ByteBuffer large = ByteBuffer.wrap(bytes);
+      while (large.hasRemaining()) {
+        channel.write(large);
+      }
+      return;
+    }
+
+    ensure(bytes.length);
+    buffer.put(bytes);
+  }
+
+  /**
+   * Makes sure that the buffer has space for the given number of bytes
+   *
+   * @param length
+   * @throws IOException
+   */
+  private void ensure(int length) throws IOException {
+    if (buffer.remaining() < length) {
+      flush();
+    }
+  }
+
+  /**
+   *
+   *
+   * @throws IOException
+   */
+  private void flush() throws IOException {
+    buffer.flip();
+
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+
+    buffer.clear();
+  }
+
+
+  /**
+   * Reads the parts of a snapshot sequentially through a buffer
+   *
+   *
+   * @author Thomas Naeff (github.com/thnaeff)
+   *
+   */
+  private static class SnapshotInput {
+
+    private FileChannel channel = null;
+    private ByteBuffer buffer = null;
+
+    /**
+     *
+     *
+     * @param channel The channel, positioned at the first byte to read
+     */
+    public SnapshotInput(FileChannel channel) {
+      this.channel = channel;
+
+      buffer = ByteBuffer.allocate(BUFFER_SIZE);
+      buffer.limit(0);
+    }
+
+    /**
+     * Makes sure that the buffer contains at least the given number of bytes
+     *
+     * @param length
+     * @throws IOException
+     */
+    private void fill(int length) throws IOException {
+      if (buffer.remaining() >= length) {
+        return;
+      }
+
+      buffer.compact();
+
+      while (buffer.position() < length) {
+        if (channel.read(buffer) < 0) {
+          throw new EOFException();
+        }
+      }
+
+      buffer.flip();
+    }
+
+    /**
+     *
+     *
+     * @return
+     * @throws IOException
+     */
+    public int getVarInt() throws IOException {
+      int value = 0;
+      int shift = 0;
+
+      while (true) {
+        fill(1);
+        byte b = buffer.get();
+        value |= (b & 0x7F) << shift;
+
+        if (b >= 0) {
+          return value;
+        }
+
+        shift += 7;
+      }
+    }
+
+    /**
+     *
+     *
+     * @return
+     * @throws IOException
+     */
+    public String getString() throws IOException {
+      int length = getVarInt() - 1;
+
+      if (length < 0) {
+        return null;
+      }
+
+      if (length > buffer.capacity()) {
+        byte[] bytes = new byte[length];
+        int pos = buffer.remaining();
+        buffer.get(bytes, 0, pos);
+
+        ByteBuffer large = ByteBuffer.wrap(bytes);
+        large.position(pos);
+        while (large.hasRemaining()) {
+          if (channel.read(large) < 0) {
+            throw new EOFException();
+          }
+        }
+
+        return new String(bytes, Charsets.UTF_8);
+      }
+
+      fill(length);
+
+      String string = new String(buffer.array(), buffer.arrayOffset() + buffer.position(),
+          length, Charsets.UTF_8);
+      buffer.position(buffer.position() + length);
+
+      return string;
+    }
+
+  }
+
+}
@@ -16,25 +16,41 @@
  */
 package ch.thn.gedcom.reader.ged;
 
-import java.io.BufferedReader;
+import java.io.BufferedInputStream;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.util.LinkedList;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import com.google.common.base.Charsets;
 
-import ch.thn.gedcom.GedcomHelper;
 import ch.thn.gedcom.creator.GedcomCreatorUtil;
-import ch.thn.gedcom.data.GedcomLine;
-import ch.thn.gedcom.data.GedcomNode;
+import ch.thn.gedcom.creator.structures.AbstractGedcomStructure;
 import ch.thn.gedcom.data.GedcomTree;
 import ch.thn.gedcom.reader.GedcomReader;
 import ch.thn.gedcom.reader.GedcomReaderError;
 import ch.thn.gedcom.reader.GedcomReaderUtil;
+import ch.thn.gedcom.reader.ged.GedcomLineScanner.LineStatus;
 import ch.thn.gedcom.store.GedcomStore;
-import ch.thn.stringutil.StringUtil;
 
 /**
  * Reads an existing GEDCOM (*.ged) file and creates the gedcom structure according
@@ -46,96 +62,1039 @@ import ch.thn.stringutil.StringUtil;
  */
 public class GedcomGEDReader extends GedcomReader {
 
-  private GedcomTree currentTree = null;
-  private GedcomNode currentNode = null;
+  /** The smallest chunk size for the parallel parsing */
+  private static final long MIN_CHUNK_SIZE = 4 * 1024 * 1024;
 
-  private LinkedList<GedcomNode> path = null;
+  /** The default number of bytes between two checkpoints */
+  public static final long DEFAULT_CHECKPOINT_INTERVAL = 64 * 1024 * 1024;
 
+  private GedcomRecordBuilder builder = null;
+  private GedcomPathCache pathCache = null;
+  private GedcomGrammarTable grammarTable = null;
+  private GedcomSymbolTable symbolTable = null;
+  private GedcomValuePool valuePool = null;
+
+  private Charset charset = null;
+
+  private boolean memoryMapped = false;
+
+  private int parallelism = 1;
+
+  private boolean pipelined = false;
+
+  private GedcomRecordListener recordListener = null;
+  private GedcomRecordFilter recordFilter = null;
+  private GedcomTagProjection projection = null;
+
+  private boolean snapshotCache = false;
+  private GedcomFileSnapshot snapshot = null;
+
+  private String checkpointFile = null;
+  private long checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+  private Map<String, Long> recordCounts = null;
+
+
+  /**
+   *
+   *
+   * @param store
+   */
+  public GedcomGEDReader(GedcomStore store) {
+    super(store, "ged");
+
+    pathCache = new GedcomPathCache();
+    builder = createBuilder(null);
+  }
+
+  /**
+   * Sets the cache for the paths from a store block to the store line of a tag.
+   * The paths only depend on the gedcom store, so readers with the same store
+   * can share one cache. Each reader has its own cache by default.
+   *
+   * @param pathCache The cache or <code>null</code> to always search the paths
+   * in the gedcom store
+   */
+  public void setPathCache(GedcomPathCache pathCache) {
+    this.pathCache = pathCache;
+
+    builder = createBuilder(grammarTable);
+  }
+
+  /**
+   * The cache for the paths to the store lines. The hit and miss counters of
+   * the cache show how often a path had to be searched in the gedcom store.
+   *
+   * @return The cache or <code>null</code> if paths are not cached
+   */
+  public GedcomPathCache getPathCache() {
+    return pathCache;
+  }
+
+  /**
+   * Sets a grammar table which is used instead of the gedcom store and the path
+   * cache to resolve the lines. The table resolves a line with a few array
+   * lookups once a tag path has been seen. A table can be shared by all readers
+   * with the same gedcom store, also by readers in different threads.
+   *
+   * @param grammarTable The table or <code>null</code> to resolve the lines with
+   * the gedcom store
+   * @throws IllegalArgumentException If the table is for a different gedcom store
+   */
+  public void setGrammarTable(GedcomGrammarTable grammarTable) {
+    if (grammarTable != null && grammarTable.getStore() != getStore()) {
+      throw new IllegalArgumentException("The grammar table is not for the gedcom store " +
+          "of this reader");
+    }
+
+    this.grammarTable = grammarTable;
+
+    builder = createBuilder(grammarTable);
+  }
+
+  /**
+   *
+   *
+   * @return The grammar table or <code>null</code> if none is used
+   */
+  public GedcomGrammarTable getGrammarTable() {
+    return grammarTable;
+  }
+
+  /**
+   * Sets the character set of the data which is read. By default, the
+   * character set is detected from the byte order mark and the CHAR line of
+   * the HEAD record (see {@link GedcomCharsetDetector}).
+   *
+   * @param charset The character set or <code>null</code> to detect it
+   */
+  public void setCharset(Charset charset) {
+    this.charset = charset;
+  }
+
+  /**
+   *
+   *
+   * @return The character set or <code>null</code> if it is detected
+   */
+  public Charset getCharset() {
+    return charset;
+  }
+
+  /**
+   * Enables or disables reading files through memory mapped windows with
+   * {@link #read(String)}. The lines are scanned on the raw bytes and only the
+   * parts which are needed are decoded, which is faster for large files.
+   * Disabled by default.
+   *
+   * @param memoryMapped
+   */
+  public void setMemoryMapped(boolean memoryMapped) {
+    this.memoryMapped = memoryMapped;
+  }
+
+  /**
+   *
+   *
+   * @return
+   */
+  public boolean isMemoryMapped() {
+    return memoryMapped;
+  }
+
+  /**
+   * Sets the number of threads which are used to parse a file with
+   * {@link #read(String)}. With more than one thread, the file is split into
+   * chunks at level-0 records which are parsed in parallel. The parsed records
+   * are then added to the structure storage in the order of the file. The
+   * parallel parsing always reads the file through memory mapped windows.<br>
+   * <br>
+   * Since the chunks are parsed at the same time, the gedcom store is accessed
+   * by multiple threads. The store is only read while parsing.<br>
+   * <br>
+   * Default is 1 (no parallel parsing).
+   *
+   * @param parallelism
+   */
+  public void setParallelism(int parallelism) {
+    this.parallelism = Math.max(1, parallelism);
+  }
+
+  /**
+   *
+   *
+   * @return
+   */
+  public int getParallelism() {
+    return parallelism;
+  }
+
+  /**
+   * Enables or disables the pipelined reading of {@link #read(String)} and
+   * {@link #read(InputStream)}. When enabled, one thread reads the input ahead
+   * into a few large buffers, a second thread decodes and scans the lines
+   * into batches and the calling thread builds the records. The buffers and
+   * batches are reused and each thread waits when the next one falls behind.
+   * This overlaps the I/O with the parsing, which helps most with slow file
+   * systems. Memory mapped files are not read ahead, the operating system
+   * already does that. The parallel reading of files takes precedence.
+   * Disabled by default.
+   *
+   * @param pipelined
+   */
+  public void setPipelined(boolean pipelined) {
+    this.pipelined = pipelined;
+  }
+
+  /**
+   *
+   *
+   * @return
+   */
+  public boolean isPipelined() {
+    return pipelined;
+  }
+
+  /**
+   * Sets the symbol table which returns the tags and xrefs of all lines as
+   * canonical strings, so that the parsed records do not keep a copy of the
+   * same tag or xref for each line. The chunks of the parallel parsing and the
+   * streams of {@link #records(InputStream)} use their own symbol tables.
+   * Disabled by default.<br>
+   * <br>
+   * The symbol table keeps every tag and xref it has seen until it is
+   * cleared with {@link GedcomSymbolTable#clear()}. It is meant for records
+   * which are kept in memory anyway, where each xref is referenced by several
+   * lines. When the records are streamed to a {@link GedcomRecordListener},
+   * or when the reader reads many files, it only grows with the number of
+   * different xrefs.
+   *
+   * @param symbolTable The symbol table or <code>null</code> to create new
+   * strings for each line
+   */
+  public void setSymbolTable(GedcomSymbolTable symbolTable) {
+    this.symbolTable = symbolTable;
+  }
+
+  /**
+   *
+   *
+   * @return The symbol table or <code>null</code> if none is used
+   */
+  public GedcomSymbolTable getSymbolTable() {
+    return symbolTable;
+  }
+
+  /**
+   * Sets a pool which shares the strings of short, often repeated values like
+   * place names and dates. The chunks of the parallel parsing and the streams
+   * of {@link #records(InputStream)} use their own pools of the same size.
+   * Disabled by default.
+   *
+   * @param valuePool The pool or <code>null</code> to create new strings for
+   * each value
+   */
+  public void setValuePool(GedcomValuePool valuePool) {
+    this.valuePool = valuePool;
+  }
+
+  /**
+   *
+   *
+   * @return The pool or <code>null</code> if none is used
+   */
+  public GedcomValuePool getValuePool() {
+    return valuePool;
+  }
+
+  /**
+   * Enables or disables the snapshot cache of {@link #read(String)}. When
+   * enabled, a file is read from its snapshot if the snapshot still matches
+   * the file. Otherwise the file is parsed and a new snapshot is written next
+   * to it (see {@link GedcomFileSnapshot}). Reading a snapshot skips scanning
+   * the lines and resolving them with the grammar. Files are always parsed
+   * with one thread when a snapshot is written. Disabled by default.
+   *
+   * @param snapshotCache
+   */
+  public void setSnapshotCache(boolean snapshotCache) {
+    this.snapshotCache = snapshotCache;
+  }
+
+  /**
+   *
+   *
+   * @return
+   */
+  public boolean isSnapshotCache() {
+    return snapshotCache;
+  }
+
+  /**
+   * Enables checkpoints while reading a file. Each time another
+   * {@link #getCheckpointInterval()} bytes have been read, the position after
+   * the last complete record is written into the checkpoint file (see
+   * {@link GedcomReadCheckpoint}), and also when the reading fails. If the
+   * reading is interrupted, {@link #resume(String)} continues at the last
+   * checkpoint. The checkpoint file is deleted once the whole file has been
+   * read.<br>
+   * <br>
+   * The structure storage is not part of the checkpoint, a resumed read only
+   * adds the records after the checkpoint. Save the records with a
+   * {@link GedcomRecordListener} to be able to resume an import.<br>
+   * <br>
+   * A file is read with one thread, memory mapped and without the snapshot
+   * cache when checkpoints are enabled. Compressed files and files in a
+   * character set which is not ASCII compatible can not be read with
+   * checkpoints.
+   *
+   * @param checkpointFile The checkpoint file or <code>null</code> to disable
+   * the checkpoints
+   */
+  public void setCheckpointFile(String checkpointFile) {
+    this.checkpointFile = checkpointFile;
+  }
+
+  /**
+   *
+   *
+   * @return
+   */
+  public String getCheckpointFile() {
+    return checkpointFile;
+  }
+
+  /**
+   * Sets the minimum number of bytes which are read between two checkpoints
+   *
+   * @param checkpointInterval
+   */
+  public void setCheckpointInterval(long checkpointInterval) {
+    if (checkpointInterval < 1) {
+      throw new IllegalArgumentException("The checkpoint interval has to be at least 1");
+    }
+
+    this.checkpointInterval = checkpointInterval;
+  }
+
+  /**
+   *
+   *
+   * @return
+   */
+  public long getCheckpointInterval() {
+    return checkpointInterval;
+  }
+
+  /**
+   * Sets a listener which receives each record as soon as it has been read.
+   * The listener decides if the record is added to the structure storage, which
+   * makes it possible to read large files with constant memory by passing the
+   * records on and dropping them.
+   *
+   * @param recordListener The listener or <code>null</code> to add all records
+   * to the structure storage
+   */
+  public void setRecordListener(GedcomRecordListener recordListener) {
+    this.recordListener = recordListener;
+  }
+
+  /**
+   *
+   *
+   * @return
+   */
+  public GedcomRecordListener getRecordListener() {
+    return recordListener;
+  }
+
+  /**
+   * Sets a filter which decides with the first line of a record if the record
+   * is read at all. The lines of a record which is not accepted are skipped
+   * right after their level has been scanned, no nodes are created for them.
+   * Unlike the record listener, which only sees records which have already
+   * been built, the filter therefore also saves the parsing time of the
+   * skipped records. The filter is also applied when reading from a snapshot
+   * and when reading single records.<br>
+   * <br>
+   * No snapshot is written while a filter is set, since a snapshot always
+   * contains all records of a file.
+   *
+   * @param recordFilter The filter or <code>null</code> to read all records
+   * @see GedcomRecordTypeFilter
+   */
+  public void setRecordFilter(GedcomRecordFilter recordFilter) {
+    this.recordFilter = recordFilter;
+
+    builder.setRecordFilter(recordFilter);
+  }
+
+  /**
+   *
+   *
+   * @return
+   */
+  public GedcomRecordFilter getRecordFilter() {
+    return recordFilter;
+  }
+
+  /**
+   * Sets the tag paths which are read. A line which is not part of the
+   * projection is skipped together with all its sub-lines, no store paths are
+   * resolved and no nodes are created for them. This saves most of the
+   * parsing time if only a few fields of each record are needed. The
+   * projection is combined with the record filter, a record is only read if
+   * both accept it.<br>
+   * <br>
+   * No snapshot is written while a projection is set, since a snapshot always
+   * contains all lines of a file.
+   *
+   * @param projection The projection or <code>null</code> to read all lines
+   */
+  public void setTagProjection(GedcomTagProjection projection) {
+    this.projection = projection;
+
+    builder.setProjection(projection);
+  }
+
+  /**
+   *
+   *
+   * @return
+   */
+  public GedcomTagProjection getTagProjection() {
+    return projection;
+  }
+
+  /**
+   * Reads the file given with the path parameter and adds all parsed structures
+   * to the list of parsed structures. Compressed files (see
+   * {@link GedcomCompression}) are decompressed while they are read, always
+   * with one thread and without memory mapping.
+   *
+   * @param gedcomFile
+   * @return
+   * @throws IOException
+   * @throws GedcomReaderError
+   * @see #setMemoryMapped(boolean)
+   * @see #setParallelism(int)
+   * @see #setSnapshotCache(boolean)
+   */
+  public boolean read(String gedcomFile) throws IOException {
+    boolean compressed = GedcomCompression.isCompressed(gedcomFile);
+
+    if (!gedcomFile.endsWith(getInputFileExtension()) && !compressed) {
+      throw new GedcomReaderError("Invalid file format. A GEDCOM file (" +
+          getInputFileExtension() + ") or a compressed GEDCOM file (" +
+          String.join(", ", GedcomCompression.EXTENSIONS) + ") is needed.");
+    }
+
+    if (checkpointFile != null) {
+      return readWithCheckpoints(gedcomFile, null);
+    }
+
+    if (snapshotCache) {
+      if (readSnapshot(gedcomFile)) {
+        return true;
+      }
+
+      if (recordFilter == null && projection == null) {
+        return readWithSnapshot(gedcomFile);
+      }
+    }
+
+    if (parallelism > 1 && !compressed) {
+      return readParallel(gedcomFile);
+    }
+
+    return read(openScanner(gedcomFile));
+  }
+
+  /**
+   * Continues reading the given file at the last checkpoint of the checkpoint
+   * file. The file is read from the beginning if there is no checkpoint or
+   * if the checkpoint does not match the file.
+   *
+   * @param gedcomFile
+   * @return
+   * @throws IOException
+   * @throws GedcomReaderError If no checkpoint file has been set
+   * @see #setCheckpointFile(String)
+   */
+  public boolean resume(String gedcomFile) throws IOException {
+    if (checkpointFile == null) {
+      throw new GedcomReaderError("No checkpoint file set to resume from.");
+    }
+
+    GedcomReadCheckpoint checkpoint = GedcomReadCheckpoint.read(checkpointFile, gedcomFile);
+
+    if (checkpoint != null) {
+      System.out.println(getClass().getSimpleName() + ": Resume at " + checkpoint);
+    }
+
+    return readWithCheckpoints(gedcomFile, checkpoint);
+  }
+
+  /**
+   * Reads a single record of the given file. The record is read directly from
+   * its offset in the file, which is taken from the index. The record is not
+   * added to the structure storage and the record listener is not called.
+   *
+   * @param gedcomFile
+   * @param index The index of the file, see {@link GedcomRecordIndex#build(String)}
+   * @param xref The xref of the record, without the enclosing @
+   * @return The record or <code>null</code> if the index does not contain a
+   * record with the xref
+   * @throws IOException
+   * @throws GedcomReaderError If the file has changed since the index has been
+   * built
+   */
+  public GedcomTree readRecord(String gedcomFile, GedcomRecordIndex index, String xref)
+      throws IOException {
+    int position = index.find(xref);
+
+    if (position < 0) {
+      return null;
+    }
+
+    if (!index.isValid(gedcomFile)) {
+      throw new GedcomReaderError("The GEDCOM file " + gedcomFile + " has changed since " +
+          "the record index has been built");
+    }
+
+    FileChannel channel = new RandomAccessFile(gedcomFile, "r").getChannel();
+
+    try {
+      return readRecord(channel, index, position);
+    } finally {
+      channel.close();
+    }
+  }
+
+  /**
+   * Reads the record at the given position of the index from the channel
+   *
+   * @param channel
+   * @param index
+   * @param position
+   * @return
+   * @throws IOException
+   */
+  GedcomTree readRecord(FileChannel channel, GedcomRecordIndex index, int position)
+      throws IOException {
+    return readRecord(channel, index, position, newSymbolTable(), newValuePool());
+  }
+
+  /**
+   * Reads the record at the given position of the index from the channel with
+   * the given symbol table and value pool
+   *
+   * @param channel
+   * @param index
+   * @param position
+   * @param symbolTable
+   * @param valuePool
+   * @return
+   * @throws IOException
+   */
+  private GedcomTree readRecord(FileChannel channel, GedcomRecordIndex index, int position,
+      GedcomSymbolTable symbolTable, GedcomValuePool valuePool) throws IOException {
+    long offset = index.getOffset(position);
+    List<GedcomTree> trees = new GedcomChunkParser(builder.newBuilder(), channel, offset,
+        offset + index.getLength(position), index.getCharset(), symbolTable,
+        valuePool).call();
+
+    return trees.isEmpty() ? null : trees.get(0);
+  }
+
+  /**
+   * Opens the given file as a lazy record store. Only the index of the records
+   * is built (see {@link GedcomRecordIndex#build(String)}), the records are
+   * parsed when they are accessed for the first time. The records are not
+   * added to the structure storage of this reader.
+   *
+   * @param gedcomFile
+   * @param maxCachedRecords The number of parsed records which are kept
+   * @return
+   * @throws IOException
+   */
+  public GedcomLazyRecordStore readLazy(String gedcomFile, int maxCachedRecords)
+      throws IOException {
+    return new GedcomLazyRecordStore(this, gedcomFile, GedcomRecordIndex.build(gedcomFile),
+        maxCachedRecords);
+  }
+
+  /**
+   * Reads only the records of the given file which have been added or changed
+   * since the previous import. The fingerprints of the records (see
+   * {@link GedcomRecordFingerprints}) are compared with the ones of the given
+   * fingerprint file, then the added and changed records are read directly
+   * from their offsets and added to the structure storage of this reader, in
+   * the order of the file. The record listener is called for each of them as
+   * usual. Afterwards, the fingerprint file is replaced with the fingerprints
+   * of the file for the next import.<br>
+   * <br>
+   * Only records with an xref are compared, the header and the trailer are
+   * not read.<br>
+   * <br>
+   * The structure storage can not remove or replace a structure, so the
+   * records have to be reimported with a new reader whose structure storage
+   * is still empty. The storage then only contains the new version of the
+   * added and changed records. It is up to the caller to replace the old
+   * versions of the changed records and to remove the deleted records in the
+   * data which has been imported before.<br>
+   * <br>
+   * The fingerprints cover the whole records, so a reader with a record filter
+   * or a tag projection can not reimport. The records or lines it skips would
+   * count as unchanged at the next import and their changes would be lost.
+   *
+   * @param gedcomFile
+   * @param fingerprintFile The fingerprints of the previous import. All records
+   * are read if the file does not exist.
+   * @return The added, changed and deleted records
+   * @throws IOException
+   * @throws GedcomReaderError If the structure storage of this reader already
+   * contains structures or if a record filter or a tag projection is set
+   */
+  public GedcomReimportResult reimport(String gedcomFile, String fingerprintFile)
+      throws IOException {
+    if (recordFilter != null || projection != null) {
+      throw new GedcomReaderError("Records can not be reimported with a record filter or a " +
+          "tag projection, the skipped records and lines would be taken as unchanged at " +
+          "the next reimport.");
+    }
+
+    if (getStructureStorage().getTotalStructureCount() > 0) {
+      throw new GedcomReaderError("Records can only be reimported into an empty structure " +
+          "storage, the old versions of the changed records can not be replaced. Use a new " +
+          "reader for the reimport.");
+    }
+
+    System.out.println(getClass().getSimpleName() + ": Load changed family data from a " +
+        "GEDCOM file.");
+
+    GedcomRecordFingerprints fingerprints = GedcomRecordFingerprints.build(gedcomFile);
+    GedcomReimportResult result = fingerprints.compare(
+        GedcomRecordFingerprints.read(fingerprintFile));
+
+    final GedcomRecordIndex index = fingerprints.getIndex();
+    List<Integer> positions = new ArrayList<Integer>();
+
+    for (String xref : result.getAdded()) {
+      positions.add(index.find(xref));
+    }
+
+    for (String xref : result.getChanged()) {
+      positions.add(index.find(xref));
+    }
+
+    //In the order of the file
+    Collections.sort(positions, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer o1, Integer o2) {
+        return Long.compare(index.getOffset(o1), index.getOffset(o2));
+      }
+    });
+
+    FileChannel channel = new RandomAccessFile(gedcomFile, "r").getChannel();
+
+    try {
+      for (int position : positions) {
+        addTree(readRecord(channel, index, position, symbolTable, valuePool));
+      }
+    } finally {
+      channel.close();
+    }
+
+    fingerprints.write(fingerprintFile);
+
+    System.out.println(getClass().getSimpleName() + ": " + result);
+
+    return result;
+  }
+
+  /**
+   * Compares the records of two GEDCOM files. The fingerprints of the records
+   * of both files (see {@link GedcomRecordFingerprints}) are built with one
+   * pass over each file. Then only the records whose fingerprints differ are
+   * scanned, in the order of the new file, and compared line by line to find
+   * the changed tag paths. The records are not built and not added to the
+   * structure storage of this reader, only their changed paths are kept.<br>
+   * <br>
+   * Only records with an xref are compared, the header and the trailer are
+   * not.
+   *
+   * @param oldGedcomFile
+   * @param newGedcomFile
+   * @return The added, changed and deleted records of the new file
+   * @throws IOException
+   */
+  public GedcomDiffResult diff(String oldGedcomFile, String newGedcomFile)
+      throws IOException {
+    System.out.println(getClass().getSimpleName() + ": Compare the records of two " +
+        "GEDCOM files.");
+
+    GedcomRecordFingerprints oldFingerprints = GedcomRecordFingerprints.build(oldGedcomFile);
+    GedcomRecordFingerprints newFingerprints = GedcomRecordFingerprints.build(newGedcomFile);
+    GedcomReimportResult result = newFingerprints.compare(oldFingerprints);
+
+    GedcomRecordIndex oldIndex = oldFingerprints.getIndex();
+    final GedcomRecordIndex newIndex = newFingerprints.getIndex();
+    List<Integer> positions = new ArrayList<Integer>();
+
+    for (String xref : result.getChanged()) {
+      positions.add(newIndex.find(xref));
+    }
+
+    //In the order of the new file
+    Collections.sort(positions, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer o1, Integer o2) {
+        return Long.compare(newIndex.getOffset(o1), newIndex.getOffset(o2));
+      }
+    });
+
+    List<GedcomRecordDiff> changed = new ArrayList<GedcomRecordDiff>(positions.size());
+
+    FileChannel oldChannel = new RandomAccessFile(oldGedcomFile, "r").getChannel();
+    FileChannel newChannel = null;
+
+    try {
+      newChannel = new RandomAccessFile(newGedcomFile, "r").getChannel();
+
+      for (int newPosition : positions) {
+        String xref = newIndex.getXRef(newPosition);
+
+        List<String> changedPaths = GedcomRecordDiff.changedPaths(
+            openRecord(oldChannel, oldIndex, oldIndex.find(xref)),
+            openRecord(newChannel, newIndex, newPosition));
+
+        changed.add(new GedcomRecordDiff(xref, newIndex.getTag(newPosition), changedPaths));
+      }
+    } finally {
+      oldChannel.close();
+
+      if (newChannel != null) {
+        newChannel.close();
+      }
+    }
+
+    GedcomDiffResult diff = new GedcomDiffResult(result.getAdded(), changed,
+        result.getDeleted(), result.getUnchangedCount());
+
+    System.out.println(getClass().getSimpleName() + ": " + diff);
+
+    return diff;
+  }
+
+  /**
+   * Opens a scanner for the lines of the record at the given position of the
+   * index
+   *
+   * @param channel
+   * @param index
+   * @param position
+   * @return
+   * @throws IOException
+   */
+  private GedcomLineScanner openRecord(FileChannel channel, GedcomRecordIndex index,
+      int position) throws IOException {
+    long offset = index.getOffset(position);
+    return new GedcomByteLineScanner(GedcomChunkParser.read(channel, offset,
+        offset + index.getLength(position)), offset, index.getCharset());
+  }
+
+  /**
+   * Creates a builder with the path cache, the record filter and the projection
+   * of this reader
+   *
+   * @param table The grammar table or <code>null</code>
+   * @return
+   */
+  private GedcomRecordBuilder createBuilder(GedcomGrammarTable table) {
+    GedcomRecordBuilder builder = new GedcomRecordBuilder(getStore(), pathCache, table);
+    builder.setRecordFilter(recordFilter);
+    builder.setProjection(projection);
+    return builder;
+  }
 
   /**
+   * Opens a scanner for the given file, depending on {@link #isMemoryMapped()}
    *
+   * @param gedcomFile
+   * @return
+   * @throws IOException
+   */
+  private GedcomLineScanner openScanner(String gedcomFile) throws IOException {
+    if (GedcomCompression.isCompressed(gedcomFile)) {
+      //Decompressed while it is read, also ahead if the reading is pipelined
+      InputStream in = GedcomCompression.open(gedcomFile);
+
+      if (pipelined) {
+        in = new BufferedInputStream(new GedcomReadAheadInputStream(in),
+            GedcomCompression.BUFFER_SIZE);
+      }
+
+      return new GedcomCharLineScanner(createReader(in));
+    }
+
+    Charset charset = getCharset(gedcomFile);
+
+    //Only data with ASCII line breaks and delimiters can be scanned as bytes
+    if (memoryMapped && GedcomCharsetDetector.isAsciiCompatible(charset)) {
+      FileChannel channel = new RandomAccessFile(gedcomFile, "r").getChannel();
+
+      try {
+        return new GedcomByteLineScanner(channel, 0, channel.size(), charset);
+      } catch (IOException e) {
+        channel.close();
+        throw e;
+      }
+    }
+
+    return new GedcomCharLineScanner(new InputStreamReader(openInput(gedcomFile), charset));
+  }
+
+  /**
+   * Opens the given file, read ahead if the reading is pipelined
    *
-   * @param store
+   * @param gedcomFile
+   * @return
+   * @throws IOException
    */
-  public GedcomGEDReader(GedcomStore store) {
-    super(store, "ged");
+  private InputStream openInput(String gedcomFile) throws IOException {
+    InputStream in = new FileInputStream(gedcomFile);
+    return pipelined ? new GedcomReadAheadInputStream(in) : in;
+  }
 
-    path = new LinkedList<GedcomNode>();
+  /**
+   * The character set of the given file, either the one which has been set or
+   * the detected one
+   *
+   * @param gedcomFile
+   * @return
+   * @throws IOException
+   */
+  private Charset getCharset(String gedcomFile) throws IOException {
+    return charset != null ? charset : GedcomCharsetDetector.detect(gedcomFile);
   }
 
   /**
-   * Reads the file given with the path parameter and adds all parsed structures
-   * to the list of parsed structures
+   * Creates a reader for the given input with the character set which has
+   * been set or the one which is detected from the first bytes of the input.
+   * Compressed input is decompressed.
+   *
+   * @param inputStream
+   * @return
+   * @throws IOException
+   */
+  private Reader openReader(InputStream inputStream) throws IOException {
+    return createReader(GedcomCompression.decompress(inputStream));
+  }
+
+  /**
+   * Creates a reader for the given decompressed input with the character set
+   * which has been set or the one which is detected from the first bytes of
+   * the input
+   *
+   * @param in An input which supports {@link InputStream#mark(int)}
+   * @return
+   * @throws IOException
+   */
+  private Reader createReader(InputStream in) throws IOException {
+    if (charset != null) {
+      return new InputStreamReader(in, charset);
+    }
+
+    byte[] head = new byte[GedcomCharsetDetector.HEAD_SIZE];
+
+    in.mark(head.length);
+    int length = GedcomCharsetDetector.readHead(in, head);
+    in.reset();
+
+    return new InputStreamReader(in, GedcomCharsetDetector.detect(head, length));
+  }
+
+  /**
+   * Reads the records from the snapshot of the given file
+   *
+   * @param gedcomFile
+   * @return <code>false</code> if there is no snapshot which matches the file
+   * @throws IOException
+   */
+  private boolean readSnapshot(String gedcomFile) throws IOException {
+    boolean read = GedcomFileSnapshot.read(getStore(), gedcomFile, getCharset(gedcomFile),
+        symbolTable, valuePool, recordFilter, projection, new Consumer<GedcomTree>() {
+      @Override
+      public void accept(GedcomTree tree) {
+        addTree(tree);
+      }
+    });
+
+    if (read) {
+      System.out.println(getClass().getSimpleName() + ": Loaded family data from the " +
+          "snapshot of the GEDCOM file.");
+      System.out.println(GedcomReaderUtil.printStorageStatistics(getStructureStorage()));
+    }
+
+    return read;
+  }
+
+  /**
+   * Parses the given file and writes a new snapshot of it. The lines are
+   * resolved with the grammar table of this reader, or with a new one if this
+   * reader does not have one, since the snapshot stores the states of the
+   * grammar table.
    *
    * @param gedcomFile
    * @return
    * @throws IOException
-   * @throws GedcomReaderError
    */
-  public boolean read(String gedcomFile) throws IOException {
-    if (!gedcomFile.endsWith(getInputFileExtension())) {
-      throw new GedcomReaderError("Invalid file format. A GEDCOM file (" +
-          getInputFileExtension() + ") is needed.");
+  private boolean readWithSnapshot(String gedcomFile) throws IOException {
+    GedcomGrammarTable table = grammarTable;
+
+    if (table == null) {
+      table = new GedcomGrammarTable(getStore());
     }
 
-    return read(new FileInputStream(gedcomFile));
+    GedcomRecordBuilder readerBuilder = builder;
+    builder = createBuilder(table);
+    snapshot = new GedcomFileSnapshot(gedcomFile, getCharset(gedcomFile));
+
+    boolean done = false;
+
+    try {
+      read(openScanner(gedcomFile));
+      snapshot.commit(table);
+      done = true;
+    } finally {
+      if (!done) {
+        snapshot.discard();
+      }
+
+      snapshot = null;
+      builder = readerBuilder;
+    }
+
+    return true;
   }
 
   /**
-   * Reads the file given and adds all parsed structures to the list of parsed structures
+   * Reads the given file and writes checkpoints into the checkpoint file
    *
-   * @param inputStream The input stream to read from. It reads from it with an
-   * {@link InputStreamReader} as UTF-8 charset.
+   * @param gedcomFile
+   * @param checkpoint The checkpoint to start at or <code>null</code> to read
+   * the whole file
    * @return
    * @throws IOException
    */
-  public boolean read(InputStream inputStream) throws IOException {
+  private boolean readWithCheckpoints(String gedcomFile, GedcomReadCheckpoint checkpoint)
+      throws IOException {
+    if (GedcomCompression.isCompressed(gedcomFile)) {
+      throw new GedcomReaderError("The compressed GEDCOM file " + gedcomFile +
+          " can not be read with checkpoints.");
+    }
+
+    Charset charset = checkpoint != null ? checkpoint.getCharset() : getCharset(gedcomFile);
+
+    if (!GedcomCharsetDetector.isAsciiCompatible(charset)) {
+      throw new GedcomReaderError("The GEDCOM file " + gedcomFile + " in " + charset.name() +
+          " can not be read with checkpoints. Only ASCII compatible character sets " +
+          "are supported.");
+    }
+
     System.out.println(getClass().getSimpleName() + ": Load family data from a " +
-        "GEDCOM file.");
+        "GEDCOM file with checkpoints.");
 
-    BufferedReader input = new BufferedReader(new InputStreamReader(inputStream, Charsets.UTF_8));
+    //A partly read record which has been left over by a failed read is dropped
+    builder.finish();
 
-    String line = null;
-    boolean headerFound = false;
-    int lineCount = 0;
+    long start = 0;
+    recordCounts = new HashMap<String, Long>();
 
-    while((line = input.readLine()) != null) {
+    if (checkpoint != null) {
+      start = checkpoint.getOffset();
+      recordCounts.putAll(checkpoint.getRecordCounts());
+    }
 
-      //Remove all leading and trailing extra stuff (spaces, tags, newlines, linefeeds)
-      line = StringUtil.removeAll(GedcomHelper.leadingTrailingPatternWhole, line);
-      //Remove any excessive spaces
-      line = StringUtil.replaceAll(GedcomHelper.spacesPattern, line, " ");
+    FileChannel channel = new RandomAccessFile(gedcomFile, "r").getChannel();
 
-      //Also count empty lines because the error output shows the line number
-      lineCount++;
+    //The start of the last record which has been reached and the last checkpoint
+    long recordOffset = start;
+    int recordLineNumber = checkpoint != null ? checkpoint.getLineNumber() : 0;
+    long checkpointOffset = start;
 
-      //Skip empty lines
-      if (line.length() == 0) {
-        continue;
-      }
+    //The header has already been read before the checkpoint
+    boolean headerFound = checkpoint != null;
+    boolean done = false;
 
-      if (!headerFound) {
-        if (line.equals("0 HEAD")) {
-          headerFound = true;
-        } else {
-          //Don't do anything until the header record is found
+    try {
+      GedcomByteLineScanner scanner = new GedcomByteLineScanner(channel, start,
+          channel.size(), charset);
+      scanner.setSymbolTable(symbolTable);
+      scanner.setValuePool(valuePool);
+      scanner.setLineNumber(recordLineNumber);
+
+      while (scanner.next()) {
+
+        //Skip empty lines
+        if (scanner.getStatus() == LineStatus.EMPTY) {
           continue;
         }
+
+        if (!headerFound) {
+          if (scanner.isHeaderLine()) {
+            headerFound = true;
+          } else {
+            //Don't do anything until the header record is found
+            continue;
+          }
+        }
+
+        parseLine(scanner);
+
+        if (scanner.getStatus() == LineStatus.VALID && scanner.getLevel() == 0) {
+          //All the records before this line have been added
+          recordOffset = scanner.getLineOffset();
+          recordLineNumber = scanner.getLineNumber() - 1;
+
+          if (recordOffset - checkpointOffset >= checkpointInterval) {
+            writeCheckpoint(channel, recordOffset, recordLineNumber, charset);
+            checkpointOffset = recordOffset;
+          }
+        }
+
       }
 
-      parseLine(line, lineCount);
+      if (!headerFound) {
+        throw new GedcomReaderError("Failed to read GEDCOM data. " +
+            "HEADER structure (HEAD tag) not found.");
+      }
 
-    }
+      //Add the last tree to the list
+      addCurrentTree();
 
-    input.close();
+      done = true;
+    } finally {
+      if (!done) {
+        //The record which has been read when the failure happened is read
+        //again when the reading is resumed
+        builder.finish();
+      }
 
-    if (!headerFound) {
-      throw new GedcomReaderError("Failed to read GEDCOM data. " +
-          "HEADER structure (HEAD tag) not found.");
+      try {
+        if (!done && recordOffset > checkpointOffset) {
+          //Keep the records which have been read before the failure
+          writeCheckpoint(channel, recordOffset, recordLineNumber, charset);
+        }
+      } catch (IOException e) {
+        //The original failure is reported
+      } finally {
+        channel.close();
+        recordCounts = null;
+      }
     }
 
-    //Add the last tree to the list
-    addCurrentTree();
+    new File(checkpointFile).delete();
 
     System.out.println(GedcomReaderUtil.printStorageStatistics(getStructureStorage()));
 
@@ -143,209 +1102,411 @@ public class GedcomGEDReader extends GedcomReader {
   }
 
   /**
-   * Adds the current tree to the list of all parsed trees
+   * Writes a checkpoint at the given offset into the checkpoint file
+   *
+   * @param channel
+   * @param offset
+   * @param lineNumber
+   * @param charset
+   * @throws IOException
    */
-  private void addCurrentTree() {
-    if (currentTree != null) {
-      //Creates an abstract gedcom structure (from GedcomCreator) and adds it
-      //to the structure storage based on the structure type
-      GedcomCreatorUtil.addStructureBasedOnType(getStructureStorage(),
-          GedcomCreatorUtil.gedcomCreatorStructureFactory(getStore(), currentTree), null);
-      currentTree = null;
-    }
+  private void writeCheckpoint(FileChannel channel, long offset, int lineNumber,
+      Charset charset) throws IOException {
+    GedcomReadCheckpoint.create(channel, offset, lineNumber, charset, recordCounts)
+        .write(checkpointFile);
   }
 
   /**
-   * Parse one line of the gedcom data file
+   * Reads the file given and adds all parsed structures to the list of parsed structures
    *
-   * @param line
-   * @param lineCount
+   * @param inputStream The input stream to read from. The character set is
+   * detected from the first bytes if none has been set.
    * @return
+   * @throws IOException
+   * @see #setCharset(Charset)
+   * @see #setPipelined(boolean)
    */
-  private boolean parseLine(String line, int lineCount) {
-    int level = 0;
-    int valueIndex = 0;
-    String tag = null;
-    String xref = null;
-    boolean xrefBeforeTag = false;
+  public boolean read(InputStream inputStream) throws IOException {
+    if (pipelined) {
+      inputStream = new GedcomReadAheadInputStream(inputStream);
+    }
 
-    String[] lineParts = line.split(GedcomLine.DELIM);
+    return read(new GedcomCharLineScanner(openReader(inputStream)));
+  }
 
-    if (lineParts.length < 2) {
-      throw new GedcomReaderError("Line '" + line + "' can not be parsed. Line needs at least a level number and a tag name.");
-    }
+  /**
+   * Returns the records of the given input as a stream which parses the input
+   * lazily, one record at a time. The records are not added to the structure
+   * storage of this reader and the record listener is not called.<br>
+   * <br>
+   * A parallel stream builds the records of several parts of the input at the
+   * same time. The input itself is still read by one thread. Close the stream
+   * to close the input stream before all records have been read.
+   *
+   * @param inputStream The input stream to read from. The character set is
+   * detected from the first bytes if none has been set.
+   * @return
+   * @throws UncheckedIOException If the first bytes can not be read
+   * @see #setCharset(Charset)
+   */
+  public Stream<GedcomTree> records(InputStream inputStream) {
+    final GedcomLineScanner scanner;
 
-    //1. The first index is always the level number
     try {
-      level = Integer.parseInt(lineParts[0]);
-    } catch (NumberFormatException e) {
-      System.out.println("Failed to parse line " + lineCount + ". " +
-          "Level number not found (" + e.getMessage() + ")");
-      return false;
+      scanner = new GedcomCharLineScanner(openReader(inputStream));
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
     }
-    valueIndex++;
 
-    //2. XRef before tag?
-    if (isXRef(lineParts[1])) {
-      xrefBeforeTag = true;
-      xref = getXRef(lineParts[1]);
-    } else {
-      tag = lineParts[1];
+    //The stream might be read at the same time as other input of this reader
+    scanner.setSymbolTable(newSymbolTable());
+    scanner.setValuePool(newValuePool());
+
+    return StreamSupport.stream(new GedcomRecordSpliterator(builder.newBuilder(), scanner), false)
+        .onClose(new Runnable() {
+          @Override
+          public void run() {
+            try {
+              scanner.close();
+            } catch (IOException e) {
+              throw new UncheckedIOException(e);
+            }
+          }
+        });
+  }
+
+  /**
+   * Reads all the lines of the given scanner and adds all parsed structures
+   * to the list of parsed structures
+   *
+   * @param scanner
+   * @return
+   * @throws IOException
+   */
+  private boolean read(GedcomLineScanner scanner) throws IOException {
+    scanner.setSymbolTable(symbolTable);
+    scanner.setValuePool(valuePool);
+
+    if (pipelined) {
+      return readPipelined(scanner);
     }
-    valueIndex++;
 
-    if (lineParts.length == 2) {
-      //Nothing more to to
-      return processLine(level, tag, xref, null, xrefBeforeTag, lineCount);
+    System.out.println(getClass().getSimpleName() + ": Load family data from a " +
+        "GEDCOM file.");
+
+    boolean headerFound = false;
+
+    try {
+      while (scanner.next()) {
+
+        //Skip empty lines
+        if (scanner.getStatus() == LineStatus.EMPTY) {
+          continue;
+        }
+
+        if (!headerFound) {
+          if (scanner.isHeaderLine()) {
+            headerFound = true;
+          } else {
+            //Don't do anything until the header record is found
+            continue;
+          }
+        }
+
+        parseLine(scanner);
+
+      }
+    } finally {
+      scanner.close();
     }
 
-    //3. XRef after tag?
-    if (tag != null && isXRef(lineParts[2])) {
-      xref = getXRef(lineParts[2]);
-      valueIndex++;
-    } else if (tag == null) {
-      tag = lineParts[2];
-      valueIndex++;
+    if (!headerFound) {
+      throw new GedcomReaderError("Failed to read GEDCOM data. " +
+          "HEADER structure (HEAD tag) not found.");
     }
 
+    //Add the last tree to the list
+    addCurrentTree();
 
-    if (lineParts.length == valueIndex) {
-      //Nothing more to to
-      return processLine(level, tag, xref, null, xrefBeforeTag, lineCount);
-    }
+    System.out.println(GedcomReaderUtil.printStorageStatistics(getStructureStorage()));
 
-    //4. With value
-    return processLine(level, tag, xref, getValue(valueIndex, lineParts), xrefBeforeTag, lineCount);
+    return true;
   }
 
   /**
-   * Create the value by putting the line parts back together, starting at
-   * the given index
+   * Reads all the lines of the given scanner in a separate thread while the
+   * records are built in this thread
    *
-   * @param start
-   * @param lineParts
+   * @param scanner
    * @return
+   * @throws IOException
    */
-  private String getValue(int start, String[] lineParts) {
-    StringBuilder sb = new StringBuilder(lineParts.length);
+  private boolean readPipelined(GedcomLineScanner scanner) throws IOException {
+    System.out.println(getClass().getSimpleName() + ": Load family data from a " +
+        "GEDCOM file (pipelined).");
 
-    for (int i = start; i < lineParts.length; i++) {
-      if (sb.length() > 0) {
-        sb.append(" ");
-      }
+    GedcomLinePipeline pipeline = new GedcomLinePipeline(scanner, builder);
+    pipeline.start();
 
-      sb.append(lineParts[i]);
+    try {
+      GedcomLineBatch batch = null;
+
+      while ((batch = pipeline.take()) != null) {
+        for (int i = 0; i < batch.size(); i++) {
+          int level = batch.getLevel(i);
+
+          if (builder.isSkipped(level)) {
+            continue;
+          }
+
+          processLine(level, batch.getTag(i), batch.getXRef(i), batch.getValue(i),
+              batch.getLineNumber(i));
+        }
+
+        pipeline.release(batch);
+      }
+    } finally {
+      pipeline.close();
     }
 
-    return sb.toString();
+    //Add the last tree to the list
+    addCurrentTree();
+
+    System.out.println(GedcomReaderUtil.printStorageStatistics(getStructureStorage()));
+
+    return true;
   }
 
   /**
-   * Process the parsed line parts
+   * Reads the file in chunks which are parsed in parallel
    *
-   * @param level
-   * @param tag
-   * @param xref
-   * @param value
-   * @param xrefBeforeTag
-   * @param lineCount
+   * @param gedcomFile
    * @return
+   * @throws IOException
    */
-  private boolean processLine(int level, String tag, String xref, String value,
-      boolean xrefBeforeTag, int lineCount) {
-
-    boolean hasXRef = false;
-    boolean hasValue = false;
+  private boolean readParallel(String gedcomFile) throws IOException {
+    Charset charset = getCharset(gedcomFile);
 
-    if (xref != null && xref.length() > 0) {
-      hasXRef = true;
+    if (!GedcomCharsetDetector.isAsciiCompatible(charset)) {
+      //The chunk boundaries can only be found in ASCII compatible data
+      return read(openScanner(gedcomFile));
     }
 
-    if (value != null && value.length() > 0) {
-      hasValue = true;
-    }
+    System.out.println(getClass().getSimpleName() + ": Load family data from a " +
+        "GEDCOM file with " + parallelism + " threads.");
 
-    if (level == 0) {
-      //A new tree
+    FileChannel channel = new RandomAccessFile(gedcomFile, "r").getChannel();
+    ForkJoinPool pool = new ForkJoinPool(parallelism);
 
-      //Add the previously parsed tree to the list
-      addCurrentTree();
+    try {
+      long headerOffset = findHeader(channel);
 
-      path.clear();
+      if (headerOffset < 0) {
+        throw new GedcomReaderError("Failed to read GEDCOM data. " +
+            "HEADER structure (HEAD tag) not found.");
+      }
 
-      String structureName = getStore().getStructureNameForTag(tag);
+      long end = channel.size();
+      //A few chunks per thread, so that the threads are busy until the end
+      long chunkSize = Math.max(MIN_CHUNK_SIZE, (end - headerOffset) / (parallelism * 4L));
+      List<Long> boundaries = GedcomChunkParser.split(channel, headerOffset, end, chunkSize);
 
-      if (structureName == null) {
-        throw new GedcomReaderError("Could not find structure name for tag " + tag +
-            " (source file line " + lineCount + ")");
+      List<Future<List<GedcomTree>>> chunks = new ArrayList<Future<List<GedcomTree>>>();
+      for (int i = 0; i + 1 < boundaries.size(); i++) {
+        chunks.add(pool.submit(new GedcomChunkParser(builder.newBuilder(), channel,
+            boundaries.get(i), boundaries.get(i + 1), charset, newSymbolTable(),
+            newValuePool())));
       }
 
-      currentTree = getStore().getGedcomTree(structureName, tag, hasXRef, hasValue);
-
-      currentNode = currentTree.addChildLine(tag);
-      //			System.out.println("New structure: " + structureName);
+      //Add the records in the order of the file. The first chunks are already
+      //added while the others are still parsed.
+      for (int i = 0; i < chunks.size(); i++) {
+        for (GedcomTree tree : getChunkResult(chunks.get(i))) {
+          addTree(tree);
+        }
 
-      if (currentNode == null) {
-        throw new GedcomReaderError("Failed to add child line " + tag + " to structure " +
-            structureName + " (source file line " + lineCount + ")");
+        chunks.set(i, null);
       }
-    } else {
-      //Continue on the current tree
+    } finally {
+      pool.shutdownNow();
+      channel.close();
+    }
 
-      if (level < path.size()) {
-        //Go back to a lower level
-        while (level < path.size()) {
-          path.removeLast();
-        }
+    System.out.println(GedcomReaderUtil.printStorageStatistics(getStructureStorage()));
+
+    return true;
+  }
+
+  /**
+   * Creates a new symbol table for input which is read at the same time as
+   * other input of this reader
+   *
+   * @return The symbol table or <code>null</code> if this reader does not use
+   * a symbol table
+   */
+  private GedcomSymbolTable newSymbolTable() {
+    return symbolTable == null ? null : new GedcomSymbolTable();
+  }
+
+  /**
+   * Creates a new value pool like the one of this reader
+   *
+   * @return The pool or <code>null</code> if this reader does not use a
+   * value pool
+   */
+  private GedcomValuePool newValuePool() {
+    return valuePool == null ? null :
+      new GedcomValuePool(valuePool.getSize(), valuePool.getMaxValueLength());
+  }
 
-        currentNode = path.getLast();
+  /**
+   * Finds the "0 HEAD" line
+   *
+   * @param channel
+   * @return The file offset of the header line or -1 if there is no header
+   * @throws IOException
+   */
+  private long findHeader(FileChannel channel) throws IOException {
+    //Not closed since that would close the channel
+    GedcomByteLineScanner scanner = new GedcomByteLineScanner(channel, 0, channel.size(),
+        Charsets.UTF_8);
+
+    while (scanner.next()) {
+      if (scanner.isHeaderLine()) {
+        return scanner.getLineOffset();
       }
+    }
 
-      LinkedList<String> path = currentNode.getStoreBlock().getPathToStoreLine(tag, hasXRef, hasValue);
+    return -1;
+  }
 
-      if (path == null || path.size() == 0) {
-        throw new GedcomReaderError("Failed to get path from " + currentNode.getStoreLine().getId() +
-            " to " + tag + " in structure " +
-            currentTree.getStructureName() + " (source file line " + lineCount + ")");
+  /**
+   * Waits for the parsed records of a chunk
+   *
+   * @param chunk
+   * @return
+   * @throws IOException
+   */
+  private List<GedcomTree> getChunkResult(Future<List<GedcomTree>> chunk) throws IOException {
+    try {
+      return chunk.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while parsing the GEDCOM file");
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+
+      if (cause instanceof IOException) {
+        throw (IOException)cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException)cause;
+      } else if (cause instanceof Error) {
+        throw (Error)cause;
       }
 
-      //Follow path and create if it does not exist
-      //Create new path if path already exists
-      currentNode = currentNode.createPathEnd(path.toArray(new String[path.size()]));
+      throw new GedcomReaderError("Failed to parse GEDCOM data. " + cause);
     }
+  }
 
+  /**
+   * Adds the current tree to the list of all parsed trees
+   */
+  private void addCurrentTree() {
+    addTree(builder.finish());
+  }
 
-    path.add(currentNode);
+  /**
+   * Adds the given tree to the list of all parsed trees, unless the record
+   * listener drops it
+   *
+   * @param tree
+   */
+  private void addTree(GedcomTree tree) {
+    if (tree != null) {
+      if (recordListener != null && !recordListener.recordRead(tree)) {
+        countRecord(tree);
+        return;
+      }
 
-    if (hasXRef) {
-      currentNode.setTagLineXRef(xref);
+      //Creates an abstract gedcom structure (from GedcomCreator) and adds it
+      //to the structure storage based on the structure type
+      GedcomCreatorUtil.addStructureBasedOnType(getStructureStorage(), createStructure(tree),
+          null);
+      countRecord(tree);
     }
+  }
 
-    if (hasValue) {
-      currentNode.setTagLineValue(value);
+  /**
+   * Counts the given record for the checkpoints, if the file is read with
+   * checkpoints
+   *
+   * @param tree
+   */
+  private void countRecord(GedcomTree tree) {
+    if (recordCounts != null) {
+      Long count = recordCounts.get(tree.getStructureName());
+      recordCounts.put(tree.getStructureName(), count == null ? 1 : count + 1);
     }
-
-    return true;
   }
 
   /**
+   * Creates the abstract gedcom structure (from GedcomCreator) of the given tree
    *
-   *
-   * @param linePart
+   * @param tree
    * @return
    */
-  private boolean isXRef(String linePart) {
-    return linePart.startsWith("@") && linePart.endsWith("@");
+  AbstractGedcomStructure createStructure(GedcomTree tree) {
+    return GedcomCreatorUtil.gedcomCreatorStructureFactory(getStore(), tree);
   }
 
   /**
+   * Parse one line of the gedcom data file
    *
-   *
-   * @param linePart
+   * @param scanner The scanner positioned on the line to parse
    * @return
+   * @throws IOException
+   */
+  private boolean parseLine(GedcomLineScanner scanner) throws IOException {
+    switch (scanner.getStatus()) {
+    case INCOMPLETE:
+      throw new GedcomReaderError("Line '" + scanner.getLine() + "' can not be parsed. Line needs at least a level number and a tag name.");
+    case INVALID_LEVEL:
+      System.out.println("Failed to parse line " + scanner.getLineNumber() + ". " +
+          "Level number not found (" + scanner.getLevelPart() + ")");
+      return false;
+    default:
+      break;
+    }
+
+    if (builder.isSkipped(scanner.getLevel())) {
+      //A line of a record which is filtered out
+      return true;
+    }
+
+    processLine(scanner.getLevel(), scanner.getTag(), scanner.getXRef(), scanner.getValue(),
+        scanner.getLineNumber());
+
+    return true;
+  }
+
+  /**
+   * Passes one line on to the builder
+   *
+   * @param level
+   * @param tag
+   * @param xref
+   * @param value
+   * @param lineNumber
+   * @throws IOException
    */
-  private String getXRef(String linePart) {
-    return linePart.substring(1, linePart.length() - 1);
+  private void processLine(int level, String tag, String xref, String value, int lineNumber)
+      throws IOException {
+    //Add the previously parsed tree to the list if this line starts a new one
+    addTree(builder.processLine(level, tag, xref, value, lineNumber));
+
+    if (snapshot != null) {
+      snapshot.addLine(level, builder.getState(), xref, value);
+    }
   }
 
 }
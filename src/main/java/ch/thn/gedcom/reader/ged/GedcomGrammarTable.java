@@ -0,0 +1,462 @@
+/**
+ *    Copyright 2014 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ch.thn.gedcom.reader.ged;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import ch.thn.gedcom.data.GedcomNode;
+import ch.thn.gedcom.store.GedcomStore;
+
+/**
+ * A transition table of the grammar of a {@link GedcomStore} with int ids.<br>
+ * <br>
+ * Each state stands for a line with a specific tag path from the record line
+ * down to the line, for example INDI &gt; BIRT &gt; DATE. Since the store
+ * always resolves the same tag path to the same store block, the child state
+ * for a tag only depends on the parent state, the tag and whether the line has
+ * an xref and a value. State 0 is the file itself, its child states are the
+ * records. Each record state knows its structure name and each other state the
+ * path from the parent store block to the store line of its tag.<br>
+ * <br>
+ * The store does not offer a way to go through its whole grammar, therefore
+ * a transition is compiled from the store the first time it is needed. After
+ * that it never changes again and it is resolved with array indexing only.
+ * A new state is appended behind the states of the published version of the
+ * table and only the row of its parent state is replaced, so a table can be
+ * used by multiple threads and readers with the same store without locking.
+ *
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ */
+public class GedcomGrammarTable {
+
+  /** The state of the file, the parent state of all the records */
+  public static final int FILE_STATE = 0;
+
+  /** The state which is returned if the grammar has no such transition */
+  public static final int NO_STATE = -1;
+
+  private GedcomStore store = null;
+
+  private ConcurrentHashMap<String, Integer> tagIds = null;
+
+  private volatile Tables tables = null;
+
+
+  /**
+   *
+   *
+   * @param store
+   */
+  public GedcomGrammarTable(GedcomStore store) {
+    this.store = store;
+
+    tagIds = new ConcurrentHashMap<String, Integer>();
+    tables = new Tables();
+  }
+
+  /**
+   * Restores a table with the given tags and states, for example from a
+   * {@link GedcomFileSnapshot}. The states have to be ordered so that each
+   * parent state comes before its child states.
+   *
+   * @param store
+   * @param tags The tags, ordered by their id
+   * @param parents The parent state of each state
+   * @param keys The tag id and flags of each state
+   * @param structureNames The structure name of each record state
+   * @param paths The path of each other state
+   * @param stateCount The number of states, including the file state
+   */
+  GedcomGrammarTable(GedcomStore store, String[] tags, int[] parents, int[] keys,
+      String[] structureNames, String[][] paths, int stateCount) {
+    this.store = store;
+
+    tagIds = new ConcurrentHashMap<String, Integer>();
+
+    for (int i = 0; i < tags.length; i++) {
+      tagIds.put(tags[i], i);
+    }
+
+    tables = new Tables(tags, parents, keys, structureNames, paths, stateCount);
+  }
+
+  /**
+   *
+   *
+   * @return
+   */
+  public GedcomStore getStore() {
+    return store;
+  }
+
+  /**
+   * Returns the state of a record line
+   *
+   * @param tag
+   * @param hasXRef
+   * @param hasValue
+   * @return The state or {@link #NO_STATE} if there is no structure for the tag
+   */
+  public int getRecordState(String tag, boolean hasXRef, boolean hasValue) {
+    return getChildState(FILE_STATE, null, tag, hasXRef, hasValue);
+  }
+
+  /**
+   * Returns the state of a line with the given tag below a line with the
+   * given state
+   *
+   * @param state The state of the parent line
+   * @param node The node of the parent line. Only used to compile the
+   * transition if it is not known yet.
+   * @param tag
+   * @param hasXRef
+   * @param hasValue
+   * @return The state or {@link #NO_STATE} if the tag is not allowed below
+   * the parent line
+   */
+  public int getChildState(int state, GedcomNode node, String tag, boolean hasXRef,
+      boolean hasValue) {
+    Integer tagId = tagIds.get(tag);
+
+    if (tagId != null) {
+      Tables current = tables;
+      int[] children = current.children[state];
+      int key = getKey(tagId, hasXRef, hasValue);
+
+      //A state which is not part of this version yet might not be written completely
+      if (children != null && key < children.length && children[key] != 0
+          && children[key] < current.stateCount) {
+        return children[key];
+      }
+    }
+
+    return compile(state, node, tag, hasXRef, hasValue);
+  }
+
+  /**
+   * The tag of the line of the given state
+   *
+   * @param state
+   * @return
+   */
+  public String getTag(int state) {
+    return tables.tags[state];
+  }
+
+  /**
+   * The structure name of a record state
+   *
+   * @param state
+   * @return
+   */
+  public String getStructureName(int state) {
+    return tables.structureNames[state];
+  }
+
+  /**
+   * The path from the store block of the parent line to the store line of
+   * the given state. The returned array must not be modified.
+   *
+   * @param state
+   * @return
+   */
+  public String[] getPath(int state) {
+    return tables.paths[state];
+  }
+
+  /**
+   * The number of compiled states, including the file state
+   *
+   * @return
+   */
+  public int getStateCount() {
+    return tables.stateCount;
+  }
+
+  /**
+   * The number of tags which have been given an id
+   *
+   * @return
+   */
+  public int getTagCount() {
+    return tagIds.size();
+  }
+
+  /**
+   * The tags which have been given an id, ordered by their id
+   *
+   * @return
+   */
+  synchronized String[] getTags() {
+    String[] tags = new String[tagIds.size()];
+
+    for (Map.Entry<String, Integer> entry : tagIds.entrySet()) {
+      tags[entry.getValue()] = entry.getKey();
+    }
+
+    return tags;
+  }
+
+  /**
+   * The parent state of the given state
+   *
+   * @param state
+   * @return
+   */
+  int getParentState(int state) {
+    return tables.parents[state];
+  }
+
+  /**
+   * The tag id and flags with which the given state is reached from its parent
+   *
+   * @param state
+   * @return
+   */
+  int getKey(int state) {
+    return tables.keys[state];
+  }
+
+  /**
+   * Resolves a transition with the store and adds it to the table
+   *
+   * @param state
+   * @param node
+   * @param tag
+   * @param hasXRef
+   * @param hasValue
+   * @return
+   */
+  private synchronized int compile(int state, GedcomNode node, String tag, boolean hasXRef,
+      boolean hasValue) {
+    Tables current = tables;
+    Integer tagId = tagIds.get(tag);
+
+    if (tagId != null) {
+      //Another thread might have compiled it in the meantime
+      int[] children = current.children[state];
+      int key = getKey(tagId, hasXRef, hasValue);
+
+      if (children != null && key < children.length && children[key] != 0) {
+        return children[key];
+      }
+    }
+
+    String structureName = null;
+    String[] path = null;
+
+    if (state == FILE_STATE) {
+      structureName = store.getStructureNameForTag(tag);
+
+      if (structureName == null) {
+        return NO_STATE;
+      }
+    } else {
+      LinkedList<String> pathList = node.getStoreBlock().getPathToStoreLine(tag, hasXRef, hasValue);
+
+      if (pathList == null || pathList.size() == 0) {
+        return NO_STATE;
+      }
+
+      path = pathList.toArray(new String[pathList.size()]);
+    }
+
+    if (tagId == null) {
+      //Only tags which are part of the grammar get an id
+      tagId = tagIds.size();
+      tagIds.put(tag, tagId);
+    }
+
+    Tables newTables = current.addState(state, getKey(tagId, hasXRef, hasValue), tag,
+        structureName, path);
+    tables = newTables;
+
+    return newTables.stateCount - 1;
+  }
+
+  /**
+   *
+   *
+   * @param tagId
+   * @param hasXRef
+   * @param hasValue
+   * @return
+   */
+  private static int getKey(int tagId, boolean hasXRef, boolean hasValue) {
+    return (tagId << 2) | (hasXRef ? 1 : 0) | (hasValue ? 2 : 0);
+  }
+
+
+  /**
+   * One version of the table. The arrays are shared with the following versions,
+   * which only write the states behind the state count of this version. The
+   * arrays are copied with twice the size when they are full. The child states
+   * of a state are replaced and not modified, since they are used by all the
+   * versions.
+   *
+   *
+   * @author Thomas Naeff (github.com/thnaeff)
+   *
+   */
+  private static class Tables {
+
+    /** The child states of each state, indexed by tag id and flags */
+    private final int[][] children;
+    private final int[] parents;
+    private final int[] keys;
+    private final String[] tags;
+    private final String[] structureNames;
+    private final String[][] paths;
+    private final int stateCount;
+
+    /**
+     * A table with only the file state
+     *
+     */
+    public Tables() {
+      children = new int[16][];
+      parents = new int[16];
+      keys = new int[16];
+      tags = new String[16];
+      structureNames = new String[16];
+      paths = new String[16][];
+      stateCount = 1;
+    }
+
+    /**
+     * A table with the given states, built in one pass
+     *
+     * @param tagNames The tags, ordered by their id
+     * @param parents
+     * @param keys
+     * @param structureNames
+     * @param paths
+     * @param stateCount
+     */
+    public Tables(String[] tagNames, int[] parents, int[] keys, String[] structureNames,
+        String[][] paths, int stateCount) {
+      int capacity = Math.max(16, stateCount);
+
+      this.parents = Arrays.copyOf(parents, capacity);
+      this.keys = Arrays.copyOf(keys, capacity);
+      this.structureNames = Arrays.copyOf(structureNames, capacity);
+      this.paths = Arrays.copyOf(paths, capacity);
+      this.stateCount = stateCount;
+
+      tags = new String[capacity];
+      children = new int[capacity][];
+
+      //The length of the child states of each state
+      int[] rowLengths = new int[stateCount];
+      for (int state = 1; state < stateCount; state++) {
+        rowLengths[parents[state]] = Math.max(rowLengths[parents[state]], keys[state] + 1);
+      }
+
+      for (int state = 1; state < stateCount; state++) {
+        int parent = parents[state];
+
+        if (children[parent] == null) {
+          children[parent] = new int[rowLengths[parent]];
+        }
+
+        children[parent][keys[state]] = state;
+        tags[state] = tagNames[keys[state] >> 2];
+      }
+    }
+
+    /**
+     *
+     *
+     * @param children
+     * @param parents
+     * @param keys
+     * @param tags
+     * @param structureNames
+     * @param paths
+     * @param stateCount
+     */
+    private Tables(int[][] children, int[] parents, int[] keys, String[] tags,
+        String[] structureNames, String[][] paths, int stateCount) {
+      this.children = children;
+      this.parents = parents;
+      this.keys = keys;
+      this.tags = tags;
+      this.structureNames = structureNames;
+      this.paths = paths;
+      this.stateCount = stateCount;
+    }
+
+    /**
+     * Creates a new version of the table with an additional child state. Must
+     * only be called on the latest version.
+     *
+     * @param parent
+     * @param key
+     * @param tag
+     * @param structureName
+     * @param path
+     * @return
+     */
+    public Tables addState(int parent, int key, String tag, String structureName,
+        String[] path) {
+      int state = stateCount;
+
+      int[][] newChildren = children;
+      int[] newParents = parents;
+      int[] newKeys = keys;
+      String[] newTags = tags;
+      String[] newStructureNames = structureNames;
+      String[][] newPaths = paths;
+
+      if (state >= children.length) {
+        int capacity = children.length * 2;
+        newChildren = Arrays.copyOf(children, capacity);
+        newParents = Arrays.copyOf(parents, capacity);
+        newKeys = Arrays.copyOf(keys, capacity);
+        newTags = Arrays.copyOf(tags, capacity);
+        newStructureNames = Arrays.copyOf(structureNames, capacity);
+        newPaths = Arrays.copyOf(paths, capacity);
+      }
+
+      int[] parentChildren = newChildren[parent];
+
+      if (parentChildren == null) {
+        parentChildren = new int[key + 1];
+      } else {
+        parentChildren = Arrays.copyOf(parentChildren, Math.max(parentChildren.length, key + 1));
+      }
+
+      parentChildren[key] = state;
+      newParents[state] = parent;
+      newKeys[state] = key;
+      newTags[state] = tag;
+      newStructureNames[state] = structureName;
+      newPaths[state] = path;
+      newChildren[parent] = parentChildren;
+
+      return new Tables(newChildren, newParents, newKeys, newTags, newStructureNames, newPaths,
+          stateCount + 1);
+    }
+
+  }
+
+}
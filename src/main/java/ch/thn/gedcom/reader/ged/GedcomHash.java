@@ -0,0 +1,141 @@
+/**
+ *    Copyright 2014 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ch.thn.gedcom.reader.ged;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The 64 bit xxHash (XXH64) of bytes. It is a fast non-cryptographic hash
+ * which is good enough to detect changes of records.
+ *
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ */
+final class GedcomHash {
+
+  private static final long PRIME1 = 0x9E3779B185EBCA87L;
+  private static final long PRIME2 = 0xC2B2AE3D27D4EB4FL;
+  private static final long PRIME3 = 0x165667B19E3779F9L;
+  private static final long PRIME4 = 0x85EBCA77C2B2AE63L;
+  private static final long PRIME5 = 0x27D4EB2F165667C5L;
+
+
+  /**
+   *
+   *
+   */
+  private GedcomHash() {
+
+  }
+
+  /**
+   * Hashes the given bytes of the buffer. The position and the byte order of
+   * the buffer are not changed.
+   *
+   * @param buffer
+   * @param offset
+   * @param length
+   * @param seed
+   * @return
+   */
+  public static long xxh64(ByteBuffer buffer, int offset, int length, long seed) {
+    ByteBuffer in = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+    int end = offset + length;
+    int pos = offset;
+    long hash = 0;
+
+    if (length >= 32) {
+      long v1 = seed + PRIME1 + PRIME2;
+      long v2 = seed + PRIME2;
+      long v3 = seed;
+      long v4 = seed - PRIME1;
+
+      while (pos <= end - 32) {
+        v1 = round(v1, in.getLong(pos));
+        v2 = round(v2, in.getLong(pos + 8));
+        v3 = round(v3, in.getLong(pos + 16));
+        v4 = round(v4, in.getLong(pos + 24));
+        pos += 32;
+      }
+
+      hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12)
+          + Long.rotateLeft(v4, 18);
+      hash = merge(hash, v1);
+      hash = merge(hash, v2);
+      hash = merge(hash, v3);
+      hash = merge(hash, v4);
+    } else {
+      hash = seed + PRIME5;
+    }
+
+    hash += length;
+
+    while (pos <= end - 8) {
+      hash ^= round(0, in.getLong(pos));
+      hash = Long.rotateLeft(hash, 27) * PRIME1 + PRIME4;
+      pos += 8;
+    }
+
+    if (pos <= end - 4) {
+      hash ^= (in.getInt(pos) & 0xFFFFFFFFL) * PRIME1;
+      hash = Long.rotateLeft(hash, 23) * PRIME2 + PRIME3;
+      pos += 4;
+    }
+
+    while (pos < end) {
+      hash ^= (in.get(pos) & 0xFF) * PRIME5;
+      hash = Long.rotateLeft(hash, 11) * PRIME1;
+      pos++;
+    }
+
+    hash ^= hash >>> 33;
+    hash *= PRIME2;
+    hash ^= hash >>> 29;
+    hash *= PRIME3;
+    hash ^= hash >>> 32;
+
+    return hash;
+  }
+
+  /**
+   *
+   *
+   * @param acc
+   * @param input
+   * @return
+   */
+  private static long round(long acc, long input) {
+    acc += input * PRIME2;
+    acc = Long.rotateLeft(acc, 31);
+    return acc * PRIME1;
+  }
+
+  /**
+   *
+   *
+   * @param hash
+   * @param v
+   * @return
+   */
+  private static long merge(long hash, long v) {
+    hash ^= round(0, v);
+    return hash * PRIME1 + PRIME4;
+  }
+
+}
@@ -0,0 +1,283 @@
+/**
+ *    Copyright 2014 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ch.thn.gedcom.reader.ged;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.nio.channels.FileChannel;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import ch.thn.gedcom.creator.structures.AbstractGedcomStructure;
+import ch.thn.gedcom.data.GedcomTree;
+import ch.thn.gedcom.reader.GedcomReaderError;
+
+/**
+ * Gives access to the records of a GEDCOM file without parsing the whole file.
+ * Only the {@link GedcomRecordIndex} of the file is kept in memory, a record is
+ * parsed from its offset in the file when it is accessed.<br>
+ * <br>
+ * The parsed records are kept in a cache with a maximum size which drops the
+ * least recently used record when it is full. The records in the cache are
+ * only softly referenced, so the garbage collector can also drop them when the
+ * memory gets low. A dropped record is simply parsed again on the next access.
+ * <br>
+ * <br>
+ * The store can be used by multiple threads. Close the store to close the
+ * file.
+ *
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ */
+public class GedcomLazyRecordStore implements Closeable {
+
+  private GedcomGEDReader reader = null;
+  private String gedcomFile = null;
+  private GedcomRecordIndex index = null;
+  private FileChannel channel = null;
+
+  private LinkedHashMap<String, RecordReference> cache = null;
+  private ReferenceQueue<GedcomTree> queue = null;
+
+  private long hits = 0;
+  private long misses = 0;
+
+
+  /**
+   *
+   *
+   * @param reader The reader which parses the records
+   * @param gedcomFile
+   * @param index The index of the file
+   * @param maxCachedRecords The number of parsed records which are kept
+   * @throws IOException
+   */
+  public GedcomLazyRecordStore(GedcomGEDReader reader, String gedcomFile,
+      GedcomRecordIndex index, final int maxCachedRecords) throws IOException {
+    this.reader = reader;
+    this.gedcomFile = gedcomFile;
+    this.index = index;
+
+    if (!index.isValid(gedcomFile)) {
+      throw new GedcomReaderError("The GEDCOM file " + gedcomFile + " has changed since " +
+          "the record index has been built");
+    }
+
+    channel = new RandomAccessFile(gedcomFile, "r").getChannel();
+    queue = new ReferenceQueue<GedcomTree>();
+
+    //Access order, the least recently used record comes first
+    cache = new LinkedHashMap<String, RecordReference>(16, 0.75f, true) {
+      private static final long serialVersionUID = 1L;
+
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, RecordReference> eldest) {
+        return size() > maxCachedRecords;
+      }
+    };
+  }
+
+  /**
+   * Returns the record with the given xref. The record is parsed if it is
+   * not in the cache.
+   *
+   * @param xref The xref of the record, without the enclosing @
+   * @return The record or <code>null</code> if there is no record with the xref
+   * @throws IOException
+   */
+  public GedcomTree getRecord(String xref) throws IOException {
+    synchronized (cache) {
+      removeCollected();
+
+      RecordReference reference = cache.get(xref);
+
+      if (reference != null) {
+        GedcomTree tree = reference.get();
+
+        if (tree != null) {
+          hits++;
+          return tree;
+        }
+      }
+
+      misses++;
+    }
+
+    int position = index.find(xref);
+
+    if (position < 0) {
+      return null;
+    }
+
+    //Parsed without holding the lock, so that other records can be read
+    //at the same time
+    GedcomTree tree = reader.readRecord(channel, index, position);
+
+    if (tree != null) {
+      synchronized (cache) {
+        cache.put(xref, new RecordReference(xref, tree, queue));
+      }
+    }
+
+    return tree;
+  }
+
+  /**
+   * Returns the record with the given xref as structure of the GEDCOM creator.
+   * A new structure is created with each call.
+   *
+   * @param xref The xref of the record, without the enclosing @
+   * @return The structure or <code>null</code> if there is no record with the xref
+   * @throws IOException
+   */
+  public AbstractGedcomStructure getStructure(String xref) throws IOException {
+    GedcomTree tree = getRecord(xref);
+
+    if (tree == null) {
+      return null;
+    }
+
+    return reader.createStructure(tree);
+  }
+
+  /**
+   * Checks if the file has a record with the given xref, without parsing it
+   *
+   * @param xref
+   * @return
+   */
+  public boolean contains(String xref) {
+    return index.find(xref) >= 0;
+  }
+
+  /**
+   * Returns the tag of the record with the given xref, without parsing it
+   *
+   * @param xref
+   * @return The tag or <code>null</code> if there is no record with the xref
+   */
+  public String getTag(String xref) {
+    int position = index.find(xref);
+    return position < 0 ? null : index.getTag(position);
+  }
+
+  /**
+   *
+   *
+   * @return
+   */
+  public GedcomRecordIndex getIndex() {
+    return index;
+  }
+
+  /**
+   *
+   *
+   * @return
+   */
+  public String getGedcomFile() {
+    return gedcomFile;
+  }
+
+  /**
+   * The number of records which are in the cache at the moment
+   *
+   * @return
+   */
+  public int getCachedRecordCount() {
+    synchronized (cache) {
+      removeCollected();
+      return cache.size();
+    }
+  }
+
+  /**
+   * The number of records which have been found in the cache
+   *
+   * @return
+   */
+  public long getHits() {
+    synchronized (cache) {
+      return hits;
+    }
+  }
+
+  /**
+   * The number of records which had to be parsed
+   *
+   * @return
+   */
+  public long getMisses() {
+    synchronized (cache) {
+      return misses;
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    synchronized (cache) {
+      cache.clear();
+    }
+
+    channel.close();
+  }
+
+  /**
+   * Removes the records from the cache which have been dropped by the
+   * garbage collector
+   */
+  private void removeCollected() {
+    RecordReference reference = null;
+
+    while ((reference = (RecordReference)queue.poll()) != null) {
+      //Only remove it if it has not been replaced in the meantime
+      cache.remove(reference.xref, reference);
+    }
+  }
+
+
+  /**
+   * A soft reference to a record which knows the xref of the record, so that
+   * it can be removed from the cache when the record has been collected
+   *
+   *
+   * @author Thomas Naeff (github.com/thnaeff)
+   *
+   */
+  private static class RecordReference extends SoftReference<GedcomTree> {
+
+    private String xref = null;
+
+    /**
+     *
+     *
+     * @param xref
+     * @param tree
+     * @param queue
+     */
+    public RecordReference(String xref, GedcomTree tree, ReferenceQueue<GedcomTree> queue) {
+      super(tree, queue);
+      this.xref = xref;
+    }
+
+  }
+
+}
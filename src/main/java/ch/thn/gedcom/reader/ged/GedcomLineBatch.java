@@ -0,0 +1,179 @@
+/**
+ *    Copyright 2014 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ch.thn.gedcom.reader.ged;
+
+import java.util.Arrays;
+
+import ch.thn.gedcom.data.GedcomTree;
+
+/**
+ * A list of scanned lines (level, tag, xref, value and line number) which can
+ * be handed over to another thread to build the records with a
+ * {@link GedcomRecordBuilder}. The lines are stored in arrays which grow as
+ * needed and are reused after {@link #clear()}.
+ *
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ */
+class GedcomLineBatch {
+
+  private int[] levels = null;
+  private String[] tags = null;
+  private String[] xrefs = null;
+  private String[] values = null;
+  private int[] lineNumbers = null;
+
+  private int size = 0;
+
+
+  /**
+   *
+   *
+   * @param capacity
+   */
+  public GedcomLineBatch(int capacity) {
+    capacity = Math.max(16, capacity);
+
+    levels = new int[capacity];
+    tags = new String[capacity];
+    xrefs = new String[capacity];
+    values = new String[capacity];
+    lineNumbers = new int[capacity];
+  }
+
+  /**
+   * Adds the current line of the scanner
+   *
+   * @param scanner
+   */
+  public void add(GedcomLineScanner scanner) {
+    add(scanner.getLevel(), scanner.getTag(), scanner.getXRef(), scanner.getValue(),
+        scanner.getLineNumber());
+  }
+
+  /**
+   *
+   *
+   * @param level
+   * @param tag
+   * @param xref
+   * @param value
+   * @param lineNumber
+   */
+  public void add(int level, String tag, String xref, String value, int lineNumber) {
+    if (size == levels.length) {
+      int capacity = size * 2;
+      levels = Arrays.copyOf(levels, capacity);
+      tags = Arrays.copyOf(tags, capacity);
+      xrefs = Arrays.copyOf(xrefs, capacity);
+      values = Arrays.copyOf(values, capacity);
+      lineNumbers = Arrays.copyOf(lineNumbers, capacity);
+    }
+
+    levels[size] = level;
+    tags[size] = tag;
+    xrefs[size] = xref;
+    values[size] = value;
+    lineNumbers[size] = lineNumber;
+    size++;
+  }
+
+  /**
+   * Passes the line at the given index on to the builder
+   *
+   * @param index
+   * @param builder
+   * @return The record which has been finished by this line, or <code>null</code>
+   * @see GedcomRecordBuilder#processLine(int, String, String, String, int)
+   */
+  public GedcomTree processLine(int index, GedcomRecordBuilder builder) {
+    return builder.processLine(levels[index], tags[index], xrefs[index], values[index],
+        lineNumbers[index]);
+  }
+
+  /**
+   *
+   *
+   * @param index
+   * @return
+   */
+  public int getLevel(int index) {
+    return levels[index];
+  }
+
+  /**
+   *
+   *
+   * @param index
+   * @return
+   */
+  public String getTag(int index) {
+    return tags[index];
+  }
+
+  /**
+   *
+   *
+   * @param index
+   * @return
+   */
+  public String getXRef(int index) {
+    return xrefs[index];
+  }
+
+  /**
+   *
+   *
+   * @param index
+   * @return
+   */
+  public String getValue(int index) {
+    return values[index];
+  }
+
+  /**
+   *
+   *
+   * @param index
+   * @return
+   */
+  public int getLineNumber(int index) {
+    return lineNumbers[index];
+  }
+
+  /**
+   *
+   *
+   * @return
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Removes all lines. The arrays are kept for the next lines.
+   */
+  public void clear() {
+    //Release the strings
+    Arrays.fill(tags, 0, size, null);
+    Arrays.fill(xrefs, 0, size, null);
+    Arrays.fill(values, 0, size, null);
+    size = 0;
+  }
+
+}
@@ -0,0 +1,274 @@
+/**
+ *    Copyright 2014 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ch.thn.gedcom.reader.ged;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import ch.thn.gedcom.reader.GedcomReaderError;
+import ch.thn.gedcom.reader.ged.GedcomLineScanner.LineStatus;
+
+/**
+ * Scans the lines of a {@link GedcomLineScanner} in a separate thread and
+ * hands them over in {@link GedcomLineBatch}es, so that the records can be
+ * built while the next lines are decoded. There is a fixed number of batches
+ * which go back to the scanning thread once their lines have been processed.
+ * The scanning thread therefore waits when all batches are full.<br>
+ * <br>
+ * Like {@link GedcomGEDReader}, the lines before the HEAD line are skipped,
+ * lines with an invalid level are reported and skipped and an incomplete line
+ * ends the input with an error. Records which are rejected by the record
+ * filter of the builder are already skipped while scanning.
+ *
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ */
+class GedcomLinePipeline implements Closeable {
+
+  /** The default number of lines in one batch */
+  public static final int DEFAULT_BATCH_SIZE = 4096;
+
+  /** The default number of batches */
+  public static final int DEFAULT_BATCH_COUNT = 4;
+
+  private GedcomLineScanner scanner = null;
+  private GedcomRecordBuilder builder = null;
+  private int batchSize = 0;
+
+  private BlockingQueue<GedcomLineBatch> filled = null;
+  private BlockingQueue<GedcomLineBatch> free = null;
+
+  /** Marks the end of the lines */
+  private GedcomLineBatch end = null;
+  private volatile Throwable error = null;
+
+  private Thread thread = null;
+  private volatile boolean closed = false;
+
+
+  /**
+   *
+   *
+   * @param scanner
+   * @param builder The builder whose record filter is applied. It is not
+   * used to build records.
+   */
+  public GedcomLinePipeline(GedcomLineScanner scanner, GedcomRecordBuilder builder) {
+    this(scanner, builder, DEFAULT_BATCH_SIZE, DEFAULT_BATCH_COUNT);
+  }
+
+  /**
+   *
+   *
+   * @param scanner
+   * @param builder The builder whose record filter is applied. It is not
+   * used to build records.
+   * @param batchSize The number of lines in one batch
+   * @param batchCount The number of batches
+   */
+  public GedcomLinePipeline(GedcomLineScanner scanner, GedcomRecordBuilder builder,
+      int batchSize, int batchCount) {
+    this.scanner = scanner;
+    this.builder = builder;
+    this.batchSize = batchSize;
+
+    //One more place for the end of the lines
+    filled = new ArrayBlockingQueue<GedcomLineBatch>(batchCount + 1);
+    free = new ArrayBlockingQueue<GedcomLineBatch>(batchCount);
+    end = new GedcomLineBatch(0);
+
+    for (int i = 0; i < batchCount; i++) {
+      free.add(new GedcomLineBatch(batchSize));
+    }
+  }
+
+  /**
+   * Starts scanning the lines
+   */
+  public void start() {
+    thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        scanLines();
+      }
+    }, getClass().getSimpleName());
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Scans all lines into batches
+   */
+  private void scanLines() {
+    boolean headerFound = false;
+    //The current record is rejected by the record filter
+    boolean skipping = false;
+    GedcomLineBatch batch = null;
+
+    try {
+      while (scanner.next()) {
+        //Skip empty lines
+        if (scanner.getStatus() == LineStatus.EMPTY) {
+          continue;
+        }
+
+        if (!headerFound) {
+          if (scanner.isHeaderLine()) {
+            headerFound = true;
+          } else {
+            //Don't do anything until the header record is found
+            continue;
+          }
+        }
+
+        switch (scanner.getStatus()) {
+        case INCOMPLETE:
+          throw new GedcomReaderError("Line '" + scanner.getLine() + "' can not be parsed. Line needs at least a level number and a tag name.");
+        case INVALID_LEVEL:
+          System.out.println("Failed to parse line " + scanner.getLineNumber() + ". " +
+              "Level number not found (" + scanner.getLevelPart() + ")");
+          continue;
+        default:
+          break;
+        }
+
+        if (scanner.getLevel() == 0) {
+          skipping = !builder.acceptRecord(scanner.getTag(), scanner.getXRef(),
+              scanner.getValue());
+        }
+
+        if (skipping) {
+          continue;
+        }
+
+        if (batch == null) {
+          batch = free.take();
+        }
+
+        batch.add(scanner);
+
+        if (batch.size() >= batchSize) {
+          filled.put(batch);
+          batch = null;
+        }
+      }
+
+      if (!headerFound) {
+        throw new GedcomReaderError("Failed to read GEDCOM data. " +
+            "HEADER structure (HEAD tag) not found.");
+      }
+    } catch (InterruptedException e) {
+      //Closed
+      return;
+    } catch (Throwable e) {
+      if (closed) {
+        return;
+      }
+
+      error = e;
+    } finally {
+      try {
+        scanner.close();
+      } catch (IOException e) {
+        if (error == null && !closed) {
+          error = e;
+        }
+      }
+    }
+
+    //The last lines and the end. There is always a place for them.
+    if (batch != null) {
+      filled.add(batch);
+    }
+
+    filled.add(end);
+  }
+
+  /**
+   * Waits for the next batch of lines
+   *
+   * @return The batch or <code>null</code> at the end of the lines
+   * @throws IOException
+   * @throws GedcomReaderError
+   */
+  public GedcomLineBatch take() throws IOException {
+    GedcomLineBatch batch = null;
+
+    try {
+      batch = filled.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for the lines");
+    }
+
+    if (batch != end) {
+      return batch;
+    }
+
+    //Keep the end for further calls
+    filled.add(end);
+
+    if (error instanceof IOException) {
+      throw (IOException)error;
+    } else if (error instanceof RuntimeException) {
+      throw (RuntimeException)error;
+    } else if (error instanceof Error) {
+      throw (Error)error;
+    }
+
+    return null;
+  }
+
+  /**
+   * Gives a batch whose lines have been processed back to the scanning thread
+   *
+   * @param batch
+   */
+  public void release(GedcomLineBatch batch) {
+    batch.clear();
+    free.add(batch);
+  }
+
+  /**
+   * Stops scanning. The scanner is closed.
+   */
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+
+    closed = true;
+
+    if (thread != null) {
+      thread.interrupt();
+
+      try {
+        thread.join();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    } else {
+      scanner.close();
+    }
+  }
+
+}
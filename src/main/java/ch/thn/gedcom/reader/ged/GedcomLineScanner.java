@@ -0,0 +1,547 @@
+/**
+ *    Copyright 2014 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ch.thn.gedcom.reader.ged;
+
+import java.io.IOException;
+
+/**
+ * Splits GEDCOM lines into level, xref, tag and value in a single pass over a
+ * reusable line buffer. No regular expressions and no intermediate strings
+ * are used, only the strings which are requested with {@link #getTag()},
+ * {@link #getXRef()} and {@link #getValue()} are created.<br>
+ * <br>
+ * The line normalization is the same as with the GEDCOM helper patterns: leading
+ * and trailing white space is ignored and multiple spaces count as one delimiter.
+ * Lines are terminated the same way as with {@link java.io.BufferedReader#readLine()}
+ * (line feed, carriage return or both).<br>
+ * <br>
+ * The implementations only have to provide the lines, either as characters
+ * ({@link GedcomCharLineScanner}) or as bytes ({@link GedcomByteLineScanner}).
+ *
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ */
+public abstract class GedcomLineScanner {
+
+  /**
+   * The result of scanning one line
+   */
+  public enum LineStatus {
+    /** The line is empty or only contains white space */
+    EMPTY,
+    /** The line has a level number and a tag */
+    VALID,
+    /** The first part of the line is not a level number */
+    INVALID_LEVEL,
+    /** The line does not have at least a level number and a tag */
+    INCOMPLETE
+  }
+
+  private GedcomSymbolTable symbolTable = null;
+  private GedcomValuePool valuePool = null;
+
+  private int lineNumber = 0;
+
+  private LineStatus status = LineStatus.EMPTY;
+
+  private int trimStart = 0;
+  private int trimEnd = 0;
+  private int levelEnd = 0;
+  private int level = 0;
+  private int tagStart = -1;
+  private int tagEnd = -1;
+  private int xrefStart = -1;
+  private int xrefEnd = -1;
+  private int valueStart = -1;
+  private boolean xrefBeforeTag = false;
+
+  private String tag = null;
+  private String xref = null;
+  private String value = null;
+
+
+  /**
+   * Loads the next line (without the line terminator) into the line buffer
+   *
+   * @return <code>false</code> if the end of the input has been reached
+   * @throws IOException
+   */
+  protected abstract boolean readLine() throws IOException;
+
+  /**
+   * The length of the line in the line buffer
+   *
+   * @return
+   */
+  protected abstract int getLineLength();
+
+  /**
+   * Returns the character (or the unsigned byte) at the given index of the
+   * line buffer
+   *
+   * @param index
+   * @return
+   */
+  protected abstract int charAt(int index);
+
+  /**
+   * Creates a string from the given part of the line buffer
+   *
+   * @param start
+   * @param end
+   * @param collapseSpaces Replace multiple spaces with a single space
+   * @return
+   */
+  protected abstract String createString(int start, int end, boolean collapseSpaces);
+
+  /**
+   *
+   *
+   * @throws IOException
+   */
+  public abstract void close() throws IOException;
+
+  /**
+   * Returns <code>true</code> if {@link #charAt(int)} returns the characters of
+   * the given part of the line buffer. Bytes of characters which are encoded
+   * with more than one byte are not characters.
+   *
+   * @param start
+   * @param end
+   * @return
+   */
+  protected boolean isDecoded(int start, int end) {
+    return true;
+  }
+
+  /**
+   * Sets the symbol table which returns the tags and xrefs as canonical
+   * strings
+   *
+   * @param symbolTable The symbol table or <code>null</code> to create new
+   * strings for each line
+   */
+  public void setSymbolTable(GedcomSymbolTable symbolTable) {
+    this.symbolTable = symbolTable;
+  }
+
+  /**
+   * Sets the pool which shares the strings of often repeated values
+   *
+   * @param valuePool The pool or <code>null</code> to create new strings for
+   * each value
+   */
+  public void setValuePool(GedcomValuePool valuePool) {
+    this.valuePool = valuePool;
+  }
+
+  /**
+   * Sets the number of lines before the first line of this scanner, when the
+   * scanner does not start at the beginning of the input
+   *
+   * @param lineNumber
+   */
+  void setLineNumber(int lineNumber) {
+    this.lineNumber = lineNumber;
+  }
+
+  /**
+   * Reads and scans the next line.
+   *
+   * @return <code>false</code> if the end of the input has been reached
+   * @throws IOException
+   */
+  public boolean next() throws IOException {
+    if (!readLine()) {
+      return false;
+    }
+
+    //Also count empty lines because the error output shows the line number
+    lineNumber++;
+
+    scan();
+
+    return true;
+  }
+
+  /**
+   * Finds the positions of level, xref, tag and value in the current line
+   */
+  private void scan() {
+    tag = null;
+    xref = null;
+    value = null;
+    level = 0;
+    tagStart = -1;
+    tagEnd = -1;
+    xrefStart = -1;
+    xrefEnd = -1;
+    valueStart = -1;
+    xrefBeforeTag = false;
+
+    int pos = 0;
+    int end = getLineLength();
+
+    //Ignore all leading and trailing white space
+    while (pos < end && isWhitespace(charAt(pos))) {
+      pos++;
+    }
+
+    while (end > pos && isWhitespace(charAt(end - 1))) {
+      end--;
+    }
+
+    trimStart = pos;
+    trimEnd = end;
+
+    if (pos == end) {
+      status = LineStatus.EMPTY;
+      return;
+    }
+
+    //1. The first part is always the level number
+    levelEnd = findDelimiter(pos, end);
+
+    if (levelEnd == end) {
+      status = LineStatus.INCOMPLETE;
+      return;
+    }
+
+    if (!parseLevel(pos, levelEnd)) {
+      status = LineStatus.INVALID_LEVEL;
+      return;
+    }
+
+    status = LineStatus.VALID;
+
+    //2. XRef before tag?
+    pos = skipDelimiters(levelEnd, end);
+    int partEnd = findDelimiter(pos, end);
+
+    if (isXRef(pos, partEnd)) {
+      xrefBeforeTag = true;
+      xrefStart = pos + 1;
+      xrefEnd = partEnd - 1;
+    } else {
+      tagStart = pos;
+      tagEnd = partEnd;
+    }
+
+    if (partEnd == end) {
+      return;
+    }
+
+    //3. XRef after tag?
+    pos = skipDelimiters(partEnd, end);
+    partEnd = findDelimiter(pos, end);
+
+    if (!xrefBeforeTag && isXRef(pos, partEnd)) {
+      xrefStart = pos + 1;
+      xrefEnd = partEnd - 1;
+      pos = skipDelimiters(partEnd, end);
+    } else if (xrefBeforeTag) {
+      tagStart = pos;
+      tagEnd = partEnd;
+      pos = skipDelimiters(partEnd, end);
+    }
+
+    //4. Everything else is the value
+    if (pos < end) {
+      valueStart = pos;
+    }
+  }
+
+  /**
+   * Parses the level number without creating a string
+   *
+   * @param start
+   * @param end
+   * @return
+   */
+  private boolean parseLevel(int start, int end) {
+    //More digits would not fit into an int
+    if (end - start > 9) {
+      return false;
+    }
+
+    int number = 0;
+    for (int i = start; i < end; i++) {
+      int c = charAt(i);
+      if (c < '0' || c > '9') {
+        return false;
+      }
+      number = number * 10 + (c - '0');
+    }
+
+    level = number;
+    return true;
+  }
+
+  /**
+   *
+   *
+   * @param start
+   * @param end
+   * @return
+   */
+  private boolean isXRef(int start, int end) {
+    return end - start >= 2 && charAt(start) == '@' && charAt(end - 1) == '@';
+  }
+
+  /**
+   * Returns the index of the next delimiter (space) or <code>end</code>
+   *
+   * @param pos
+   * @param end
+   * @return
+   */
+  private int findDelimiter(int pos, int end) {
+    while (pos < end && charAt(pos) != ' ') {
+      pos++;
+    }
+    return pos;
+  }
+
+  /**
+   * Returns the index of the first character which is not a delimiter
+   *
+   * @param pos
+   * @param end
+   * @return
+   */
+  private int skipDelimiters(int pos, int end) {
+    while (pos < end && charAt(pos) == ' ') {
+      pos++;
+    }
+    return pos;
+  }
+
+  /**
+   * The same characters as the regular expression <code>\s</code>
+   *
+   * @param c
+   * @return
+   */
+  private static boolean isWhitespace(int c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == 0x0B;
+  }
+
+  /**
+   *
+   *
+   * @return
+   */
+  public LineStatus getStatus() {
+    return status;
+  }
+
+  /**
+   * The number of the current line, including empty lines
+   *
+   * @return
+   */
+  public int getLineNumber() {
+    return lineNumber;
+  }
+
+  /**
+   *
+   *
+   * @return
+   */
+  public int getLevel() {
+    return level;
+  }
+
+  /**
+   *
+   *
+   * @return
+   */
+  public boolean isXRefBeforeTag() {
+    return xrefBeforeTag;
+  }
+
+  /**
+   * Returns <code>true</code> if the line has a non-empty xref
+   *
+   * @return
+   */
+  public boolean hasXRef() {
+    return xrefEnd > xrefStart;
+  }
+
+  /**
+   *
+   *
+   * @return
+   */
+  public boolean hasValue() {
+    return valueStart >= 0;
+  }
+
+  /**
+   * Compares the tag of the current line without creating a string
+   *
+   * @param tagName
+   * @return
+   */
+  public boolean tagEquals(String tagName) {
+    return tagStart >= 0 && regionEquals(tagStart, tagEnd, tagName);
+  }
+
+  /**
+   * Compares the given part of the line buffer with a string
+   *
+   * @param start
+   * @param end
+   * @param string
+   * @return
+   */
+  boolean regionEquals(int start, int end, String string) {
+    if (end - start != string.length()) {
+      return false;
+    }
+
+    for (int i = 0; i < string.length(); i++) {
+      if (charAt(start + i) != string.charAt(i)) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * The same hash code as {@link String#hashCode()} of the given part of the
+   * line buffer, if it is {@link #isDecoded(int, int)}
+   *
+   * @param start
+   * @param end
+   * @return
+   */
+  int regionHashCode(int start, int end) {
+    int hash = 0;
+
+    for (int i = start; i < end; i++) {
+      hash = 31 * hash + charAt(i);
+    }
+
+    return hash;
+  }
+
+  /**
+   *
+   *
+   * @param start
+   * @param end
+   * @return
+   */
+  boolean containsMultipleSpaces(int start, int end) {
+    for (int i = start + 1; i < end; i++) {
+      if (charAt(i) == ' ' && charAt(i - 1) == ' ') {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+  /**
+   * Checks if the current line is the "0 HEAD" line
+   *
+   * @return
+   */
+  public boolean isHeaderLine() {
+    return status == LineStatus.VALID && level == 0 && tagEquals("HEAD")
+        && !xrefBeforeTag && !hasXRef() && !hasValue();
+  }
+
+  /**
+   *
+   *
+   * @return The tag or <code>null</code> if the line has no tag
+   */
+  public String getTag() {
+    if (tag == null && tagStart >= 0) {
+      if (symbolTable != null) {
+        tag = symbolTable.get(this, tagStart, tagEnd);
+      } else {
+        tag = createString(tagStart, tagEnd, false);
+      }
+    }
+    return tag;
+  }
+
+  /**
+   *
+   *
+   * @return The xref without the enclosing @ or <code>null</code> if the line
+   * has no xref
+   */
+  public String getXRef() {
+    if (xref == null && xrefStart >= 0) {
+      if (symbolTable != null) {
+        xref = symbolTable.get(this, xrefStart, xrefEnd);
+      } else {
+        xref = createString(xrefStart, xrefEnd, false);
+      }
+    }
+    return xref;
+  }
+
+  /**
+   * Returns the value of the line. Multiple spaces within the value are
+   * replaced by a single space.
+   *
+   * @return The value or <code>null</code> if the line has no value
+   */
+  public String getValue() {
+    if (value == null && valueStart >= 0) {
+      if (valuePool != null) {
+        value = valuePool.get(this, valueStart, trimEnd);
+      }
+
+      if (value == null) {
+        value = createString(valueStart, trimEnd, true);
+      }
+    }
+    return value;
+  }
+
+  /**
+   * Returns the normalized content of the current line. Only meant for
+   * messages since it creates a new string.
+   *
+   * @return
+   */
+  public String getLine() {
+    return createString(trimStart, trimEnd, true);
+  }
+
+  /**
+   * Returns the first part of the line which should have been the level number.
+   * Only meant for messages since it creates a new string.
+   *
+   * @return
+   */
+  public String getLevelPart() {
+    return createString(trimStart, levelEnd, false);
+  }
+
+}
@@ -0,0 +1,201 @@
+/**
+ *    Copyright 2014 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ch.thn.gedcom.reader.ged;
+
+import java.util.LinkedList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import ch.thn.gedcom.data.GedcomNode;
+
+/**
+ * Caches the paths from a store block to the store line of a tag. The same
+ * combinations of store block, tag, xref and value appear over and over again
+ * in a GEDCOM file, so the grammar only has to be searched once for each of
+ * them.<br>
+ * <br>
+ * The cache can be used by multiple threads at the same time. Once the cache
+ * is full, new paths are still resolved but not cached any more.
+ *
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ */
+public class GedcomPathCache {
+
+  /** The default maximum number of cached paths */
+  public static final int DEFAULT_MAX_SIZE = 10000;
+
+  private ConcurrentHashMap<Key, String[]> cache = null;
+
+  private int maxSize = 0;
+
+  private LongAdder hits = null;
+  private LongAdder misses = null;
+
+
+  /**
+   *
+   *
+   */
+  public GedcomPathCache() {
+    this(DEFAULT_MAX_SIZE);
+  }
+
+  /**
+   *
+   *
+   * @param maxSize The maximum number of cached paths
+   */
+  public GedcomPathCache(int maxSize) {
+    this.maxSize = maxSize;
+
+    cache = new ConcurrentHashMap<Key, String[]>();
+    hits = new LongAdder();
+    misses = new LongAdder();
+  }
+
+  /**
+   * Returns the path from the store block of the given node to the store line
+   * of the given tag. The returned array must not be modified.
+   *
+   * @param node
+   * @param tag
+   * @param hasXRef
+   * @param hasValue
+   * @return The path or <code>null</code> if there is no path to the tag
+   */
+  public String[] getPathToStoreLine(GedcomNode node, String tag, boolean hasXRef,
+      boolean hasValue) {
+    Key key = new Key(node.getStoreBlock(), tag, hasXRef, hasValue);
+
+    String[] path = cache.get(key);
+
+    if (path != null) {
+      hits.increment();
+      return path;
+    }
+
+    misses.increment();
+
+    LinkedList<String> pathList = node.getStoreBlock().getPathToStoreLine(tag, hasXRef, hasValue);
+
+    if (pathList == null || pathList.size() == 0) {
+      return null;
+    }
+
+    path = pathList.toArray(new String[pathList.size()]);
+
+    if (cache.size() < maxSize) {
+      cache.putIfAbsent(key, path);
+    }
+
+    return path;
+  }
+
+  /**
+   * The number of paths which have been found in the cache
+   *
+   * @return
+   */
+  public long getHits() {
+    return hits.sum();
+  }
+
+  /**
+   * The number of paths which had to be resolved with the grammar
+   *
+   * @return
+   */
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  /**
+   * The number of cached paths
+   *
+   * @return
+   */
+  public int size() {
+    return cache.size();
+  }
+
+  /**
+   * Removes all cached paths and resets the counters
+   */
+  public void clear() {
+    cache.clear();
+    hits.reset();
+    misses.reset();
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + ": " + size() + " paths, " + getHits() + " hits, " +
+        getMisses() + " misses";
+  }
+
+
+  /**
+   * The cache key. The store blocks are compared by identity since they are
+   * part of the loaded grammar.
+   *
+   *
+   * @author Thomas Naeff (github.com/thnaeff)
+   *
+   */
+  private static class Key {
+
+    private Object storeBlock = null;
+    private String tag = null;
+    private int flags = 0;
+    private int hash = 0;
+
+    /**
+     *
+     *
+     * @param storeBlock
+     * @param tag
+     * @param hasXRef
+     * @param hasValue
+     */
+    public Key(Object storeBlock, String tag, boolean hasXRef, boolean hasValue) {
+      this.storeBlock = storeBlock;
+      this.tag = tag;
+
+      flags = (hasXRef ? 1 : 0) | (hasValue ? 2 : 0);
+      hash = (System.identityHashCode(storeBlock) * 31 + tag.hashCode()) * 4 + flags;
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+
+      Key other = (Key)obj;
+      return storeBlock == other.storeBlock && flags == other.flags && tag.equals(other.tag);
+    }
+
+  }
+
+}
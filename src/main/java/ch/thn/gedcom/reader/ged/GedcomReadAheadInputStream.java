@@ -0,0 +1,261 @@
+/**
+ *    Copyright 2014 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ch.thn.gedcom.reader.ged;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * An input stream which reads its source ahead in a separate thread. The
+ * source is read into a fixed number of buffers which go back to the reading
+ * thread once they have been consumed. The reading thread therefore waits
+ * when all buffers are full, and reading from a slow source (like a network
+ * file system) overlaps with the processing of the data which has already
+ * been read.<br>
+ * <br>
+ * The stream is meant to be read by one thread.
+ *
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ */
+class GedcomReadAheadInputStream extends InputStream {
+
+  /** The default size of one buffer */
+  public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+
+  /** The default number of buffers */
+  public static final int DEFAULT_BUFFER_COUNT = 4;
+
+  private InputStream source = null;
+
+  private BlockingQueue<Buffer> filled = null;
+  private BlockingQueue<Buffer> free = null;
+
+  private Thread thread = null;
+
+  /** The buffer which is currently read from */
+  private Buffer current = null;
+  private int pos = 0;
+
+  private volatile boolean closed = false;
+
+
+  /**
+   *
+   *
+   * @param source
+   */
+  public GedcomReadAheadInputStream(InputStream source) {
+    this(source, DEFAULT_BUFFER_SIZE, DEFAULT_BUFFER_COUNT);
+  }
+
+  /**
+   *
+   *
+   * @param source
+   * @param bufferSize The size of one buffer
+   * @param bufferCount The number of buffers
+   */
+  public GedcomReadAheadInputStream(InputStream source, int bufferSize, int bufferCount) {
+    this.source = source;
+
+    //One more place for the end of the input
+    filled = new ArrayBlockingQueue<Buffer>(bufferCount + 1);
+    free = new ArrayBlockingQueue<Buffer>(bufferCount);
+
+    for (int i = 0; i < bufferCount; i++) {
+      free.add(new Buffer(bufferSize));
+    }
+
+    thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        readSource();
+      }
+    }, getClass().getSimpleName());
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+  /**
+   * Reads the source into the free buffers until the end of the source
+   */
+  private void readSource() {
+    Buffer end = new Buffer(0);
+    Buffer buffer = null;
+
+    try {
+      while (true) {
+        buffer = free.take();
+        buffer.length = 0;
+
+        //Fill the buffer as far as possible
+        int read = 0;
+        while (buffer.length < buffer.bytes.length
+            && (read = source.read(buffer.bytes, buffer.length,
+                buffer.bytes.length - buffer.length)) > 0) {
+          buffer.length += read;
+        }
+
+        if (buffer.length > 0) {
+          filled.put(buffer);
+        }
+
+        buffer = null;
+
+        if (read < 0) {
+          break;
+        }
+      }
+    } catch (InterruptedException e) {
+      //Closed
+    } catch (IOException e) {
+      if (!closed) {
+        end.error = e;
+      }
+    } catch (Throwable e) {
+      //Also a runtime exception of the source has to reach the reader, which
+      //would otherwise wait for the end of the input forever
+      if (!closed) {
+        end.error = new IOException("Failed to read ahead", e);
+      }
+    } finally {
+      //The bytes which have been read before an error
+      if (buffer != null && buffer.length > 0) {
+        filled.add(buffer);
+      }
+
+      //The end of the input or an error. There is always a place for it.
+      filled.add(end);
+    }
+  }
+
+  /**
+   * Makes sure that there is a buffer with bytes to read
+   *
+   * @return <code>false</code> at the end of the input
+   * @throws IOException
+   */
+  private boolean fill() throws IOException {
+    if (current != null && pos < current.length) {
+      return true;
+    }
+
+    if (current != null) {
+      if (current.length == 0) {
+        //The end of the input
+        if (current.error != null) {
+          throw current.error;
+        }
+
+        return false;
+      }
+
+      free.add(current);
+      current = null;
+    }
+
+    if (closed) {
+      throw new IOException("Stream closed");
+    }
+
+    try {
+      current = filled.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for the input");
+    }
+
+    pos = 0;
+
+    return fill();
+  }
+
+  @Override
+  public int read() throws IOException {
+    if (!fill()) {
+      return -1;
+    }
+
+    return current.bytes[pos++] & 0xFF;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+    if (len == 0) {
+      return 0;
+    }
+
+    if (!fill()) {
+      return -1;
+    }
+
+    int count = Math.min(len, current.length - pos);
+    System.arraycopy(current.bytes, pos, b, off, count);
+    pos += count;
+
+    return count;
+  }
+
+  @Override
+  public int available() throws IOException {
+    return current == null ? 0 : current.length - pos;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+
+    closed = true;
+    thread.interrupt();
+    //Also unblocks a read of the source
+    source.close();
+  }
+
+
+  /**
+   * A buffer with the bytes which have been read. A buffer without bytes
+   * marks the end of the input.
+   *
+   *
+   * @author Thomas Naeff (github.com/thnaeff)
+   *
+   */
+  private static class Buffer {
+
+    private byte[] bytes = null;
+    private int length = 0;
+    private IOException error = null;
+
+    /**
+     *
+     *
+     * @param size
+     */
+    public Buffer(int size) {
+      bytes = new byte[size];
+    }
+
+  }
+
+}
@@ -0,0 +1,276 @@
+/**
+ *    Copyright 2014 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ch.thn.gedcom.reader.ged;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The state of a GEDCOM file which is read with checkpoints, see
+ * {@link GedcomGEDReader#setCheckpointFile(String)}. A checkpoint contains the
+ * byte offset of the level-0 line which follows the last record that has been
+ * read completely, together with the number of lines before that offset and
+ * the number of records which have been read so far, by structure name.
+ * <br>
+ * <br>
+ * To detect a GEDCOM file which has been replaced, the checkpoint also
+ * contains a hash of the first bytes of the file and of the bytes right before
+ * the offset. The part of the file after the offset may change, so a file with
+ * an error can be fixed and the reading resumed.
+ *
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ */
+public class GedcomReadCheckpoint {
+
+  private static final int MAGIC = 0x47454443;
+
+  /** Increase when the file format changes */
+  private static final int VERSION = 1;
+
+  /** The number of bytes at the start of the file and before the offset which are hashed */
+  private static final int CHECK_SIZE = 64 * 1024;
+
+  private long offset = 0;
+  private int lineNumber = 0;
+  private Charset charset = null;
+  private long checkHash = 0;
+  private Map<String, Long> recordCounts = null;
+
+
+  /**
+   *
+   *
+   * @param offset
+   * @param lineNumber
+   * @param charset
+   * @param checkHash
+   * @param recordCounts
+   */
+  private GedcomReadCheckpoint(long offset, int lineNumber, Charset charset, long checkHash,
+      Map<String, Long> recordCounts) {
+    this.offset = offset;
+    this.lineNumber = lineNumber;
+    this.charset = charset;
+    this.checkHash = checkHash;
+    this.recordCounts = Collections.unmodifiableMap(new TreeMap<String, Long>(recordCounts));
+  }
+
+  /**
+   * Creates a checkpoint at the given offset of the file of the channel
+   *
+   * @param channel
+   * @param offset The offset of a level-0 line
+   * @param lineNumber The number of lines before the offset
+   * @param charset
+   * @param recordCounts
+   * @return
+   * @throws IOException
+   */
+  static GedcomReadCheckpoint create(FileChannel channel, long offset, int lineNumber,
+      Charset charset, Map<String, Long> recordCounts) throws IOException {
+    return new GedcomReadCheckpoint(offset, lineNumber, charset, hash(channel, offset),
+        recordCounts);
+  }
+
+  /**
+   * Hashes the bytes at the start of the file and the bytes before the given
+   * offset
+   *
+   * @param channel
+   * @param offset
+   * @return
+   * @throws IOException
+   */
+  private static long hash(FileChannel channel, long offset) throws IOException {
+    int headLength = (int)Math.min(CHECK_SIZE, offset);
+    long head = GedcomHash.xxh64(GedcomChunkParser.read(channel, 0, headLength), 0,
+        headLength, 0);
+
+    long start = Math.max(0, offset - CHECK_SIZE);
+    return GedcomHash.xxh64(GedcomChunkParser.read(channel, start, offset), 0,
+        (int)(offset - start), head);
+  }
+
+  /**
+   * Reads a checkpoint from the given checkpoint file
+   *
+   * @param checkpointFile
+   * @param gedcomFile The GEDCOM file the checkpoint has been written for
+   * @return The checkpoint or <code>null</code> if there is no checkpoint file,
+   * if it has a different format or if it does not match the GEDCOM file
+   * @throws IOException
+   */
+  public static GedcomReadCheckpoint read(String checkpointFile, String gedcomFile)
+      throws IOException {
+    File file = new File(checkpointFile);
+
+    if (!file.isFile()) {
+      return null;
+    }
+
+    GedcomReadCheckpoint checkpoint = null;
+
+    DataInputStream in = new DataInputStream(new BufferedInputStream(
+        new FileInputStream(file)));
+
+    try {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        return null;
+      }
+
+      long offset = in.readLong();
+      int lineNumber = in.readInt();
+      Charset charset = GedcomCharsetDetector.forName(in.readUTF());
+      long checkHash = in.readLong();
+
+      int size = in.readInt();
+      Map<String, Long> recordCounts = new TreeMap<String, Long>();
+
+      for (int i = 0; i < size; i++) {
+        recordCounts.put(in.readUTF(), in.readLong());
+      }
+
+      checkpoint = new GedcomReadCheckpoint(offset, lineNumber, charset, checkHash,
+          recordCounts);
+    } finally {
+      in.close();
+    }
+
+    FileChannel channel = new RandomAccessFile(gedcomFile, "r").getChannel();
+
+    try {
+      if (channel.size() < checkpoint.offset ||
+          hash(channel, checkpoint.offset) != checkpoint.checkHash) {
+        return null;
+      }
+    } finally {
+      channel.close();
+    }
+
+    return checkpoint;
+  }
+
+  /**
+   * Writes the checkpoint into the given file. The file is only replaced once
+   * the whole checkpoint has been written.
+   *
+   * @param checkpointFile
+   * @throws IOException
+   */
+  public void write(String checkpointFile) throws IOException {
+    File file = new File(checkpointFile);
+    File temp = new File(checkpointFile + ".tmp");
+
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+        new FileOutputStream(temp)));
+
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeLong(offset);
+      out.writeInt(lineNumber);
+      out.writeUTF(charset.name());
+      out.writeLong(checkHash);
+
+      out.writeInt(recordCounts.size());
+      for (Map.Entry<String, Long> entry : recordCounts.entrySet()) {
+        out.writeUTF(entry.getKey());
+        out.writeLong(entry.getValue());
+      }
+    } finally {
+      out.close();
+    }
+
+    Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * The byte offset of the level-0 line where the reading continues
+   *
+   * @return
+   */
+  public long getOffset() {
+    return offset;
+  }
+
+  /**
+   * The number of lines before the offset
+   *
+   * @return
+   */
+  public int getLineNumber() {
+    return lineNumber;
+  }
+
+  /**
+   * The character set the file has been read with
+   *
+   * @return
+   */
+  public Charset getCharset() {
+    return charset;
+  }
+
+  /**
+   * The number of records which have been read before the offset, by the
+   * structure name of the records. Records which have been dropped by the
+   * record filter are not counted.
+   *
+   * @return
+   */
+  public Map<String, Long> getRecordCounts() {
+    return recordCounts;
+  }
+
+  /**
+   * The number of records which have been read before the offset
+   *
+   * @return
+   */
+  public long getRecordCount() {
+    long count = 0;
+
+    for (long recordCount : recordCounts.values()) {
+      count += recordCount;
+    }
+
+    return count;
+  }
+
+  @Override
+  public String toString() {
+    return "offset " + offset + ", line " + lineNumber + ", " + recordCounts;
+  }
+
+}
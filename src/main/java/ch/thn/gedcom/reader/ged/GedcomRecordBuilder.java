@@ -0,0 +1,458 @@
+/**
+ *    Copyright 2014 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ch.thn.gedcom.reader.ged;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+
+import ch.thn.gedcom.data.GedcomNode;
+import ch.thn.gedcom.data.GedcomTree;
+import ch.thn.gedcom.reader.GedcomReaderError;
+import ch.thn.gedcom.store.GedcomStore;
+
+/**
+ * Builds the {@link GedcomTree}s of the level-0 records from the parsed lines.
+ * A builder holds the state of the record which is currently built, therefore
+ * each thread which parses lines needs its own builder.
+ *
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ */
+class GedcomRecordBuilder {
+
+  /** The skip level if no lines are skipped */
+  private static final int NO_SKIP = Integer.MAX_VALUE;
+
+  private GedcomStore store = null;
+  private GedcomPathCache pathCache = null;
+  private GedcomGrammarTable grammarTable = null;
+  private GedcomRecordFilter recordFilter = null;
+  private GedcomTagProjection projection = null;
+
+  private GedcomTree currentTree = null;
+  private GedcomNode currentNode = null;
+
+  private LinkedList<GedcomNode> path = null;
+
+  /** The grammar table states of the nodes in the path */
+  private int[] states = null;
+
+  /** The projection nodes of the nodes in the path */
+  private GedcomTagProjection.Node[] projectionNodes = null;
+
+  /** The lines deeper than this level are skipped */
+  private int skipLevel = NO_SKIP;
+
+
+  /**
+   *
+   *
+   * @param store
+   * @param pathCache The cache for the paths to the store lines or
+   * <code>null</code> to always search the paths in the store
+   */
+  public GedcomRecordBuilder(GedcomStore store, GedcomPathCache pathCache) {
+    this.store = store;
+    this.pathCache = pathCache;
+
+    path = new LinkedList<GedcomNode>();
+  }
+
+  /**
+   *
+   *
+   * @param store
+   * @param pathCache
+   * @param grammarTable The grammar table to resolve the lines with or
+   * <code>null</code> to resolve them with the store and the path cache
+   */
+  public GedcomRecordBuilder(GedcomStore store, GedcomPathCache pathCache,
+      GedcomGrammarTable grammarTable) {
+    this(store, pathCache);
+    this.grammarTable = grammarTable;
+
+    if (grammarTable != null) {
+      states = new int[16];
+    }
+  }
+
+  /**
+   * Creates a new builder with the same store, cache and grammar table, for
+   * example for another thread
+   *
+   * @return
+   */
+  public GedcomRecordBuilder newBuilder() {
+    GedcomRecordBuilder builder = new GedcomRecordBuilder(store, pathCache, grammarTable);
+    builder.setRecordFilter(recordFilter);
+    builder.setProjection(projection);
+    return builder;
+  }
+
+  /**
+   * Sets the filter which decides which records are built
+   *
+   * @param recordFilter The filter or <code>null</code> to build all records
+   */
+  public void setRecordFilter(GedcomRecordFilter recordFilter) {
+    this.recordFilter = recordFilter;
+  }
+
+  /**
+   * Sets the tag paths which are built
+   *
+   * @param projection The projection or <code>null</code> to build all lines
+   */
+  public void setProjection(GedcomTagProjection projection) {
+    this.projection = projection;
+
+    if (projection != null && projectionNodes == null) {
+      projectionNodes = new GedcomTagProjection.Node[16];
+    }
+  }
+
+  /**
+   * Checks if a line with the given level is skipped because it belongs to a
+   * record which is not built or because it is below a line which is not
+   * built. The line does not have to be processed at all in this case.
+   *
+   * @param level
+   * @return
+   */
+  public boolean isSkipped(int level) {
+    return level > skipLevel;
+  }
+
+  /**
+   * Checks with the projection and the record filter if a record is built
+   *
+   * @param tag
+   * @param xref
+   * @param value
+   * @return
+   */
+  public boolean acceptRecord(String tag, String xref, String value) {
+    if (projection != null && projection.getRecord(tag) == null) {
+      return false;
+    }
+
+    return recordFilter == null || recordFilter.acceptRecord(tag, xref, value);
+  }
+
+  /**
+   * Process the parsed line parts
+   *
+   * @param level
+   * @param tag
+   * @param xref
+   * @param value
+   * @param lineCount
+   * @return The previous record if this line started a new record, otherwise
+   * <code>null</code>
+   */
+  public GedcomTree processLine(int level, String tag, String xref, String value,
+      int lineCount) {
+
+    boolean hasXRef = false;
+    boolean hasValue = false;
+    GedcomTree finishedTree = null;
+
+    if (xref != null && xref.length() > 0) {
+      hasXRef = true;
+    }
+
+    if (value != null && value.length() > 0) {
+      hasValue = true;
+    }
+
+    if (level == 0) {
+      //A new tree
+
+      //The previously parsed tree is done
+      finishedTree = finish();
+
+      if (!acceptRecord(tag, xref, value)) {
+        skipLevel = 0;
+        return finishedTree;
+      }
+
+      String structureName = null;
+      int state = 0;
+
+      if (grammarTable == null) {
+        structureName = store.getStructureNameForTag(tag);
+      } else {
+        state = grammarTable.getRecordState(tag, hasXRef, hasValue);
+
+        if (state != GedcomGrammarTable.NO_STATE) {
+          structureName = grammarTable.getStructureName(state);
+        }
+      }
+
+      if (structureName == null) {
+        throw new GedcomReaderError("Could not find structure name for tag " + tag +
+            " (source file line " + lineCount + ")");
+      }
+
+      currentTree = store.getGedcomTree(structureName, tag, hasXRef, hasValue);
+
+      currentNode = currentTree.addChildLine(tag);
+      //			System.out.println("New structure: " + structureName);
+
+      if (currentNode == null) {
+        throw new GedcomReaderError("Failed to add child line " + tag + " to structure " +
+            structureName + " (source file line " + lineCount + ")");
+      }
+
+      setState(0, state);
+      project(0, tag);
+    } else {
+      //Continue on the current tree
+
+      if (level > skipLevel) {
+        return null;
+      }
+
+      skipLevel = NO_SKIP;
+
+      if (level < path.size()) {
+        //Go back to a lower level
+        while (level < path.size()) {
+          path.removeLast();
+        }
+
+        currentNode = path.getLast();
+      }
+
+      if (!project(level, tag)) {
+        return null;
+      }
+
+      String[] path = null;
+      int state = 0;
+
+      if (grammarTable == null) {
+        path = getPathToStoreLine(tag, hasXRef, hasValue);
+      } else {
+        state = grammarTable.getChildState(states[this.path.size() - 1], currentNode, tag,
+            hasXRef, hasValue);
+
+        if (state != GedcomGrammarTable.NO_STATE) {
+          path = grammarTable.getPath(state);
+        }
+      }
+
+      if (path == null) {
+        throw new GedcomReaderError("Failed to get path from " + currentNode.getStoreLine().getId() +
+            " to " + tag + " in structure " +
+            currentTree.getStructureName() + " (source file line " + lineCount + ")");
+      }
+
+      //Follow path and create if it does not exist
+      //Create new path if path already exists
+      currentNode = currentNode.createPathEnd(path);
+
+      setState(this.path.size(), state);
+    }
+
+
+    path.add(currentNode);
+
+    if (hasXRef) {
+      currentNode.setTagLineXRef(xref);
+    }
+
+    if (hasValue) {
+      currentNode.setTagLineValue(value);
+    }
+
+    return finishedTree;
+  }
+
+  /**
+   * Process a line which has already been resolved to a state of the grammar
+   * table of this builder
+   *
+   * @param level
+   * @param state
+   * @param xref
+   * @param value
+   * @param lineCount
+   * @return The previous record if this line started a new record, otherwise
+   * <code>null</code>
+   */
+  public GedcomTree processState(int level, int state, String xref, String value,
+      int lineCount) {
+    boolean hasXRef = xref != null && xref.length() > 0;
+    boolean hasValue = value != null && value.length() > 0;
+    GedcomTree finishedTree = null;
+
+    if (level == 0) {
+      finishedTree = finish();
+
+      String tag = grammarTable.getTag(state);
+
+      if (!acceptRecord(tag, xref, value)) {
+        skipLevel = 0;
+        return finishedTree;
+      }
+
+      String structureName = grammarTable.getStructureName(state);
+
+      currentTree = store.getGedcomTree(structureName, tag, hasXRef, hasValue);
+      currentNode = currentTree.addChildLine(tag);
+
+      if (currentNode == null) {
+        throw new GedcomReaderError("Failed to add child line " + tag + " to structure " +
+            structureName + " (source file line " + lineCount + ")");
+      }
+      project(0, tag);
+    } else {
+      if (level > skipLevel) {
+        return null;
+      }
+
+      skipLevel = NO_SKIP;
+
+      while (level < path.size()) {
+        path.removeLast();
+      }
+
+      if (!project(level, grammarTable.getTag(state))) {
+        return null;
+      }
+
+      currentNode = path.getLast().createPathEnd(grammarTable.getPath(state));
+    }
+
+    setState(path.size(), state);
+    path.add(currentNode);
+
+    if (hasXRef) {
+      currentNode.setTagLineXRef(xref);
+    }
+
+    if (hasValue) {
+      currentNode.setTagLineValue(value);
+    }
+
+    return finishedTree;
+  }
+
+  /**
+   * The grammar table state of the line which has been processed last
+   *
+   * @return
+   */
+  public int getState() {
+    return states[path.size() - 1];
+  }
+
+  /**
+   * Remembers the grammar table state of the node at the given level
+   *
+   * @param level
+   * @param state
+   */
+  private void setState(int level, int state) {
+    if (grammarTable == null) {
+      return;
+    }
+
+    if (level >= states.length) {
+      states = Arrays.copyOf(states, states.length * 2);
+    }
+
+    states[level] = state;
+  }
+
+  /**
+   * Looks up the projection node of a line which comes next in the path. If
+   * the line is not part of the projection, the line and all its sub-lines
+   * are skipped.
+   *
+   * @param level
+   * @param tag
+   * @return <code>false</code> if the line is skipped
+   */
+  private boolean project(int level, String tag) {
+    if (projection == null) {
+      return true;
+    }
+
+    int index = path.size();
+    GedcomTagProjection.Node node = null;
+
+    if (index == 0) {
+      node = projection.getRecord(tag);
+    } else {
+      node = projectionNodes[index - 1].getChild(tag);
+    }
+
+    if (node == null) {
+      skipLevel = level;
+      return false;
+    }
+
+    if (index >= projectionNodes.length) {
+      projectionNodes = Arrays.copyOf(projectionNodes, projectionNodes.length * 2);
+    }
+
+    projectionNodes[index] = node;
+    return true;
+  }
+
+  /**
+   * Returns the path from the current node to the store line of the given tag
+   *
+   * @param tag
+   * @param hasXRef
+   * @param hasValue
+   * @return The path or <code>null</code> if there is no path to the tag
+   */
+  private String[] getPathToStoreLine(String tag, boolean hasXRef, boolean hasValue) {
+    if (pathCache != null) {
+      return pathCache.getPathToStoreLine(currentNode, tag, hasXRef, hasValue);
+    }
+
+    LinkedList<String> path = currentNode.getStoreBlock().getPathToStoreLine(tag, hasXRef, hasValue);
+
+    if (path == null || path.size() == 0) {
+      return null;
+    }
+
+    return path.toArray(new String[path.size()]);
+  }
+
+  /**
+   * Closes the record which is currently built
+   *
+   * @return The record or <code>null</code> if there is no open record
+   */
+  public GedcomTree finish() {
+    GedcomTree tree = currentTree;
+
+    currentTree = null;
+    currentNode = null;
+    path.clear();
+    skipLevel = NO_SKIP;
+
+    return tree;
+  }
+
+}
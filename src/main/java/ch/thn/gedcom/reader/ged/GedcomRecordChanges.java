@@ -0,0 +1,108 @@
+/**
+ *    Copyright 2014 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ch.thn.gedcom.reader.ged;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The records which have been added, changed or deleted between two versions
+ * of a GEDCOM file. The added and deleted records are given by their xref,
+ * without the enclosing @. How a changed record is given depends on the
+ * comparison, see {@link GedcomReimportResult} and {@link GedcomDiffResult}.
+ *
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ * @param <C> The type of the changed records
+ */
+public abstract class GedcomRecordChanges<C> {
+
+  private List<String> added = null;
+  private List<C> changed = null;
+  private List<String> deleted = null;
+  private int unchanged = 0;
+
+
+  /**
+   *
+   *
+   * @param added
+   * @param changed
+   * @param deleted
+   * @param unchanged
+   */
+  protected GedcomRecordChanges(List<String> added, List<C> changed, List<String> deleted,
+      int unchanged) {
+    this.added = Collections.unmodifiableList(added);
+    this.changed = Collections.unmodifiableList(changed);
+    this.deleted = Collections.unmodifiableList(deleted);
+    this.unchanged = unchanged;
+  }
+
+  /**
+   * The records which are only in the new version of the file
+   *
+   * @return
+   */
+  public List<String> getAdded() {
+    return added;
+  }
+
+  /**
+   * The records which are in both versions of the file but have changed
+   *
+   * @return
+   */
+  public List<C> getChanged() {
+    return changed;
+  }
+
+  /**
+   * The records which are only in the old version of the file
+   *
+   * @return
+   */
+  public List<String> getDeleted() {
+    return deleted;
+  }
+
+  /**
+   * The number of records which are the same in both versions of the file
+   *
+   * @return
+   */
+  public int getUnchangedCount() {
+    return unchanged;
+  }
+
+  /**
+   * Checks if any record has been added, changed or deleted
+   *
+   * @return
+   */
+  public boolean hasChanges() {
+    return !added.isEmpty() || !changed.isEmpty() || !deleted.isEmpty();
+  }
+
+  @Override
+  public String toString() {
+    return added.size() + " added, " + changed.size() + " changed, " + deleted.size() +
+        " deleted, " + unchanged + " unchanged";
+  }
+
+}
@@ -0,0 +1,180 @@
+/**
+ *    Copyright 2014 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ch.thn.gedcom.reader.ged;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import ch.thn.gedcom.reader.ged.GedcomLineScanner.LineStatus;
+
+/**
+ * A record which is in both GEDCOM files of a {@link GedcomDiffResult} but
+ * whose bytes differ. It only contains the tag paths of the lines which have
+ * changed (like "INDI.BIRT.DATE"), the records themselves are not kept.<br>
+ * <br>
+ * A tag path is changed if the xrefs and values of its lines are not the same,
+ * in the same order, in both records. The list of changed paths is empty if
+ * only the formatting of the lines has changed, like the white space or the
+ * line terminators.
+ *
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ */
+public class GedcomRecordDiff {
+
+  private String xref = null;
+  private String tag = null;
+  private List<String> changedPaths = null;
+
+
+  /**
+   *
+   *
+   * @param xref
+   * @param tag
+   * @param changedPaths
+   */
+  public GedcomRecordDiff(String xref, String tag, List<String> changedPaths) {
+    this.xref = xref;
+    this.tag = tag;
+    this.changedPaths = Collections.unmodifiableList(changedPaths);
+  }
+
+  /**
+   * Compares the lines of the two scanners, which each scan one record, and
+   * returns the tag paths whose lines differ. The paths of the new record come
+   * first, in the order of the record, followed by the paths which only exist
+   * in the old record.
+   *
+   * @param oldLines
+   * @param newLines
+   * @return
+   * @throws IOException
+   */
+  static List<String> changedPaths(GedcomLineScanner oldLines, GedcomLineScanner newLines)
+      throws IOException {
+    Map<String, List<String>> oldPaths = collectPaths(oldLines);
+    Map<String, List<String>> newPaths = collectPaths(newLines);
+
+    List<String> changed = new ArrayList<String>();
+
+    for (Map.Entry<String, List<String>> entry : newPaths.entrySet()) {
+      if (!entry.getValue().equals(oldPaths.remove(entry.getKey()))) {
+        changed.add(entry.getKey());
+      }
+    }
+
+    //The remaining paths do not exist anymore
+    changed.addAll(oldPaths.keySet());
+
+    return changed;
+  }
+
+  /**
+   * Collects the xrefs and values of the lines of the scanner by their tag path
+   *
+   * @param scanner
+   * @return
+   * @throws IOException
+   */
+  private static Map<String, List<String>> collectPaths(GedcomLineScanner scanner)
+      throws IOException {
+    Map<String, List<String>> paths = new LinkedHashMap<String, List<String>>();
+    List<String> tags = new ArrayList<String>();
+    StringBuilder path = new StringBuilder();
+
+    while (scanner.next()) {
+      if (scanner.getStatus() != LineStatus.VALID) {
+        continue;
+      }
+
+      int level = scanner.getLevel();
+
+      //Missing levels are kept empty
+      while (tags.size() > level) {
+        tags.remove(tags.size() - 1);
+      }
+
+      while (tags.size() < level) {
+        tags.add("");
+      }
+
+      tags.add(scanner.getTag());
+
+      path.setLength(0);
+      for (int i = 0; i < tags.size(); i++) {
+        if (i > 0) {
+          path.append(GedcomTagProjection.SEPARATOR);
+        }
+
+        path.append(tags.get(i));
+      }
+
+      String key = path.toString();
+      List<String> lines = paths.get(key);
+
+      if (lines == null) {
+        lines = new ArrayList<String>();
+        paths.put(key, lines);
+      }
+
+      //A line terminator can not be part of the xref or the value
+      lines.add(scanner.getXRef() + "\n" + scanner.getValue());
+    }
+
+    return paths;
+  }
+
+  /**
+   * The xref of the record, without the enclosing @
+   *
+   * @return
+   */
+  public String getXRef() {
+    return xref;
+  }
+
+  /**
+   * The tag of the record in the new file
+   *
+   * @return
+   */
+  public String getTag() {
+    return tag;
+  }
+
+  /**
+   * The tag paths of the lines which have been added, removed or changed,
+   * starting with the tag of the record
+   *
+   * @return
+   */
+  public List<String> getChangedPaths() {
+    return changedPaths;
+  }
+
+  @Override
+  public String toString() {
+    return xref + " " + tag + " " + changedPaths;
+  }
+
+}
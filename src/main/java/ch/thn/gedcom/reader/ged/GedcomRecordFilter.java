@@ -0,0 +1,40 @@
+/**
+ *    Copyright 2014 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ch.thn.gedcom.reader.ged;
+
+/**
+ * Decides with the level-0 line of a record if a {@link GedcomGEDReader} reads
+ * the record. The lines of a record which is not read are skipped without
+ * building anything. A filter may be called by multiple threads at the same
+ * time when the file is parsed in parallel.
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ */
+public interface GedcomRecordFilter {
+
+  /**
+   * Is called for the level-0 line of each record
+   *
+   * @param tag The tag of the record
+   * @param xref The xref of the record or <code>null</code>
+   * @param value The value of the record line or <code>null</code>
+   * @return <code>true</code> to read the record, <code>false</code> to skip it
+   */
+  public boolean acceptRecord(String tag, String xref, String value);
+
+}
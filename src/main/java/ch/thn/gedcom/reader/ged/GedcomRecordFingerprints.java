@@ -0,0 +1,313 @@
+/**
+ *    Copyright 2014 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ch.thn.gedcom.reader.ged;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import ch.thn.gedcom.reader.GedcomReaderError;
+
+/**
+ * The fingerprints of the level-0 records of a GEDCOM file which have an xref.
+ * The fingerprint of a record is the 64 bit xxHash of its raw bytes, so any
+ * change of a record changes its fingerprint. Comparing the fingerprints of a
+ * file with the fingerprints of a previous version of the file shows which
+ * records have been added, changed or deleted, see
+ * {@link GedcomGEDReader#reimport(String, String)}.<br>
+ * <br>
+ * The fingerprints are sorted by xref.
+ *
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ */
+public class GedcomRecordFingerprints {
+
+  private static final int MAGIC = 0x47454446;
+
+  /** Increase when the file format changes */
+  private static final int VERSION = 1;
+
+  /** The size of the memory mapped windows which are hashed */
+  private static final int WINDOW_SIZE = 64 * 1024 * 1024;
+
+  private String[] xrefs = null;
+  private long[] hashes = null;
+
+  /** The index the fingerprints have been built with, if built from a file */
+  private GedcomRecordIndex index = null;
+
+
+  /**
+   *
+   *
+   * @param xrefs Sorted
+   * @param hashes
+   * @param index
+   */
+  private GedcomRecordFingerprints(String[] xrefs, long[] hashes, GedcomRecordIndex index) {
+    this.xrefs = xrefs;
+    this.hashes = hashes;
+    this.index = index;
+  }
+
+  /**
+   * Builds the fingerprints of the records of the given GEDCOM file. The
+   * records are found with a {@link GedcomRecordIndex}, then their bytes are
+   * hashed in the order of the file.
+   *
+   * @param gedcomFile
+   * @return
+   * @throws IOException
+   * @throws GedcomReaderError If a record is larger than the mapped windows
+   */
+  public static GedcomRecordFingerprints build(String gedcomFile) throws IOException {
+    final GedcomRecordIndex index = GedcomRecordIndex.build(gedcomFile);
+    int size = index.size();
+
+    String[] xrefs = new String[size];
+    long[] hashes = new long[size];
+
+    //Hash in the order of the file, so that each window is mapped once
+    Integer[] order = new Integer[size];
+    for (int i = 0; i < size; i++) {
+      order[i] = i;
+      xrefs[i] = index.getXRef(i);
+    }
+
+    Arrays.sort(order, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer o1, Integer o2) {
+        return Long.compare(index.getOffset(o1), index.getOffset(o2));
+      }
+    });
+
+    FileChannel channel = new RandomAccessFile(gedcomFile, "r").getChannel();
+
+    try {
+      long fileSize = channel.size();
+      ByteBuffer window = null;
+      long windowStart = 0;
+
+      for (int position : order) {
+        long offset = index.getOffset(position);
+        long length = index.getLength(position);
+
+        if (window == null || offset + length > windowStart + window.limit()) {
+          window = channel.map(MapMode.READ_ONLY, offset, Math.min(WINDOW_SIZE, fileSize - offset));
+          windowStart = offset;
+
+          if (length > window.limit()) {
+            throw new GedcomReaderError("Record " + xrefs[position] + " is longer than " +
+                "the mapped window size of " + WINDOW_SIZE + " bytes");
+          }
+        }
+
+        hashes[position] = GedcomHash.xxh64(window, (int)(offset - windowStart), (int)length, 0);
+      }
+    } finally {
+      channel.close();
+    }
+
+    return new GedcomRecordFingerprints(xrefs, hashes, index);
+  }
+
+  /**
+   * Reads fingerprints from the given file
+   *
+   * @param fingerprintFile
+   * @return The fingerprints or <code>null</code> if there is no fingerprint file
+   * or if it has a different format
+   * @throws IOException
+   */
+  public static GedcomRecordFingerprints read(String fingerprintFile) throws IOException {
+    File file = new File(fingerprintFile);
+
+    if (!file.isFile()) {
+      return null;
+    }
+
+    DataInputStream in = new DataInputStream(new BufferedInputStream(
+        new FileInputStream(file)));
+
+    try {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        return null;
+      }
+
+      int size = in.readInt();
+      String[] xrefs = new String[size];
+      long[] hashes = new long[size];
+
+      for (int i = 0; i < size; i++) {
+        xrefs[i] = in.readUTF();
+        hashes[i] = in.readLong();
+      }
+
+      return new GedcomRecordFingerprints(xrefs, hashes, null);
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Writes the fingerprints into the given file. The file is only replaced
+   * once all fingerprints have been written.
+   *
+   * @param fingerprintFile
+   * @throws IOException
+   */
+  public void write(String fingerprintFile) throws IOException {
+    File file = new File(fingerprintFile);
+    File temp = new File(fingerprintFile + ".tmp");
+
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+        new FileOutputStream(temp)));
+
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+
+      out.writeInt(xrefs.length);
+      for (int i = 0; i < xrefs.length; i++) {
+        out.writeUTF(xrefs[i]);
+        out.writeLong(hashes[i]);
+      }
+    } finally {
+      out.close();
+    }
+
+    Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+        StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Compares these fingerprints with the fingerprints of a previous version of
+   * the file
+   *
+   * @param previous The previous fingerprints or <code>null</code> if there are
+   * none, in which case all records are added
+   * @return
+   */
+  public GedcomReimportResult compare(GedcomRecordFingerprints previous) {
+    List<String> added = new ArrayList<String>();
+    List<String> changed = new ArrayList<String>();
+    List<String> deleted = new ArrayList<String>();
+    int unchanged = 0;
+
+    String[] previousXRefs = previous == null ? new String[0] : previous.xrefs;
+    int i = 0;
+    int j = 0;
+
+    //Both are sorted by xref
+    while (i < xrefs.length || j < previousXRefs.length) {
+      int cmp = 0;
+
+      if (i == xrefs.length) {
+        cmp = 1;
+      } else if (j == previousXRefs.length) {
+        cmp = -1;
+      } else {
+        cmp = xrefs[i].compareTo(previousXRefs[j]);
+      }
+
+      if (cmp < 0) {
+        added.add(xrefs[i++]);
+      } else if (cmp > 0) {
+        deleted.add(previousXRefs[j++]);
+      } else {
+        if (hashes[i] == previous.hashes[j]) {
+          unchanged++;
+        } else {
+          changed.add(xrefs[i]);
+        }
+
+        i++;
+        j++;
+      }
+    }
+
+    return new GedcomReimportResult(added, changed, deleted, unchanged);
+  }
+
+  /**
+   * Searches the fingerprint of the record with the given xref
+   *
+   * @param xref The xref without the enclosing @
+   * @return The position of the record or -1 if there is no record with the xref
+   */
+  public int find(String xref) {
+    int position = Arrays.binarySearch(xrefs, xref);
+    return position < 0 ? -1 : position;
+  }
+
+  /**
+   * The number of records
+   *
+   * @return
+   */
+  public int size() {
+    return xrefs.length;
+  }
+
+  /**
+   *
+   *
+   * @param position
+   * @return
+   */
+  public String getXRef(int position) {
+    return xrefs[position];
+  }
+
+  /**
+   *
+   *
+   * @param position
+   * @return
+   */
+  public long getHash(int position) {
+    return hashes[position];
+  }
+
+  /**
+   * The index the fingerprints have been built with
+   *
+   * @return The index or <code>null</code> if the fingerprints have been read
+   * from a fingerprint file
+   */
+  public GedcomRecordIndex getIndex() {
+    return index;
+  }
+
+}
@@ -0,0 +1,388 @@
+/**
+ *    Copyright 2014 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ch.thn.gedcom.reader.ged;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import ch.thn.gedcom.reader.GedcomReaderError;
+import ch.thn.gedcom.reader.ged.GedcomLineScanner.LineStatus;
+
+/**
+ * An index of the level-0 records of a GEDCOM file which have an xref. For
+ * each record it contains the xref, the tag, the byte offset of the record
+ * line and the length of the record up to the next level-0 line. The records
+ * are sorted by their xref, so that a record is found with a binary search and
+ * can then be read directly from its offset with
+ * {@link GedcomGEDReader#readRecord(String, GedcomRecordIndex, String)}.<br>
+ * <br>
+ * An index file contains the size, the modification time and the character
+ * set of the GEDCOM file it has been built for. An index is only read from a file if the GEDCOM
+ * file has not changed.
+ *
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ */
+public class GedcomRecordIndex {
+
+  private static final int MAGIC = 0x47454449;
+
+  /** Increase when the file format changes */
+  private static final int VERSION = 2;
+
+  private String[] xrefs = null;
+  private String[] tags = null;
+  private long[] offsets = null;
+  private long[] lengths = null;
+
+  private Charset charset = null;
+  private long sourceSize = 0;
+  private long sourceLastModified = 0;
+
+
+  /**
+   *
+   *
+   * @param xrefs Sorted
+   * @param tags
+   * @param offsets
+   * @param lengths
+   * @param charset
+   * @param sourceSize
+   * @param sourceLastModified
+   */
+  private GedcomRecordIndex(String[] xrefs, String[] tags, long[] offsets, long[] lengths,
+      Charset charset, long sourceSize, long sourceLastModified) {
+    this.xrefs = xrefs;
+    this.tags = tags;
+    this.offsets = offsets;
+    this.lengths = lengths;
+    this.charset = charset;
+    this.sourceSize = sourceSize;
+    this.sourceLastModified = sourceLastModified;
+  }
+
+  /**
+   * Builds the index of the given GEDCOM file. Only the level-0 lines are
+   * decoded, all the other lines are only scanned for their level.
+   *
+   * @param gedcomFile
+   * @return
+   * @throws IOException
+   * @throws GedcomReaderError If the file is compressed or if the character set
+   * of the file is not ASCII compatible, like UTF-16
+   */
+  public static GedcomRecordIndex build(String gedcomFile) throws IOException {
+    if (GedcomCompression.isCompressed(gedcomFile)) {
+      throw new GedcomReaderError("The records of the compressed GEDCOM file " + gedcomFile +
+          " can not be indexed.");
+    }
+
+    Charset charset = GedcomCharsetDetector.detect(gedcomFile);
+
+    if (!GedcomCharsetDetector.isAsciiCompatible(charset)) {
+      throw new GedcomReaderError("The records of the GEDCOM file " + gedcomFile + " in " +
+          charset.name() + " can not be indexed. Only ASCII compatible character sets " +
+          "are supported.");
+    }
+
+    File source = new File(gedcomFile);
+    long sourceSize = source.length();
+    long sourceLastModified = source.lastModified();
+
+    final List<String> xrefs = new ArrayList<String>();
+    List<String> tags = new ArrayList<String>();
+    List<Long> offsets = new ArrayList<Long>();
+    List<Long> lengths = new ArrayList<Long>();
+
+    FileChannel channel = new RandomAccessFile(gedcomFile, "r").getChannel();
+
+    try {
+      GedcomByteLineScanner scanner = new GedcomByteLineScanner(channel, 0, channel.size(),
+          charset);
+      scanner.setSymbolTable(new GedcomSymbolTable());
+
+      boolean headerFound = false;
+      //The record which is currently open, -1 if it has no xref
+      int current = -1;
+
+      while (scanner.next()) {
+        if (scanner.getStatus() != LineStatus.VALID || scanner.getLevel() != 0) {
+          continue;
+        }
+
+        if (!headerFound) {
+          if (!scanner.isHeaderLine()) {
+            //Don't do anything until the header record is found
+            continue;
+          }
+
+          headerFound = true;
+        }
+
+        if (current >= 0) {
+          lengths.add(scanner.getLineOffset() - offsets.get(current));
+        }
+
+        current = -1;
+
+        if (scanner.isXRefBeforeTag() && scanner.hasXRef()) {
+          current = xrefs.size();
+          xrefs.add(scanner.getXRef());
+          tags.add(scanner.getTag());
+          offsets.add(scanner.getLineOffset());
+        }
+      }
+
+      if (!headerFound) {
+        throw new GedcomReaderError("Failed to read GEDCOM data. " +
+            "HEADER structure (HEAD tag) not found.");
+      }
+
+      if (current >= 0) {
+        lengths.add(scanner.getPosition() - offsets.get(current));
+      }
+    } finally {
+      channel.close();
+    }
+
+    //Sort by xref
+    Integer[] order = new Integer[xrefs.size()];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+
+    Arrays.sort(order, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer o1, Integer o2) {
+        return xrefs.get(o1).compareTo(xrefs.get(o2));
+      }
+    });
+
+    String[] sortedXRefs = new String[order.length];
+    String[] sortedTags = new String[order.length];
+    long[] sortedOffsets = new long[order.length];
+    long[] sortedLengths = new long[order.length];
+
+    for (int i = 0; i < order.length; i++) {
+      sortedXRefs[i] = xrefs.get(order[i]);
+      sortedTags[i] = tags.get(order[i]);
+      sortedOffsets[i] = offsets.get(order[i]);
+      sortedLengths[i] = lengths.get(order[i]);
+    }
+
+    return new GedcomRecordIndex(sortedXRefs, sortedTags, sortedOffsets, sortedLengths,
+        charset, sourceSize, sourceLastModified);
+  }
+
+  /**
+   * Reads an index from the given index file
+   *
+   * @param indexFile
+   * @param gedcomFile The GEDCOM file the index has been built for
+   * @return The index or <code>null</code> if there is no index file or if the
+   * GEDCOM file has changed since the index has been built
+   * @throws IOException
+   */
+  public static GedcomRecordIndex read(String indexFile, String gedcomFile) throws IOException {
+    File index = new File(indexFile);
+    File source = new File(gedcomFile);
+
+    if (!index.isFile()) {
+      return null;
+    }
+
+    DataInputStream in = new DataInputStream(new BufferedInputStream(
+        new FileInputStream(index)));
+
+    try {
+      if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+        return null;
+      }
+
+      long sourceSize = in.readLong();
+      long sourceLastModified = in.readLong();
+
+      if (sourceSize != source.length() || sourceLastModified != source.lastModified()) {
+        return null;
+      }
+
+      Charset charset = GedcomCharsetDetector.forName(in.readUTF());
+
+      int size = in.readInt();
+      String[] xrefs = new String[size];
+      String[] tags = new String[size];
+      long[] offsets = new long[size];
+      long[] lengths = new long[size];
+
+      GedcomSymbolTable symbolTable = new GedcomSymbolTable();
+
+      for (int i = 0; i < size; i++) {
+        xrefs[i] = in.readUTF();
+        tags[i] = symbolTable.intern(in.readUTF());
+        offsets[i] = in.readLong();
+        lengths[i] = in.readLong();
+      }
+
+      return new GedcomRecordIndex(xrefs, tags, offsets, lengths, charset, sourceSize,
+          sourceLastModified);
+    } finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Writes the index into the given file
+   *
+   * @param indexFile
+   * @throws IOException
+   */
+  public void write(String indexFile) throws IOException {
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+        new FileOutputStream(indexFile)));
+
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeLong(sourceSize);
+      out.writeLong(sourceLastModified);
+      out.writeUTF(charset.name());
+
+      out.writeInt(xrefs.length);
+      for (int i = 0; i < xrefs.length; i++) {
+        out.writeUTF(xrefs[i]);
+        out.writeUTF(tags[i]);
+        out.writeLong(offsets[i]);
+        out.writeLong(lengths[i]);
+      }
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Searches the record with the given xref
+   *
+   * @param xref The xref without the enclosing @
+   * @return The position of the record in the index or -1 if there is no
+   * record with the xref
+   */
+  public int find(String xref) {
+    int low = 0;
+    int high = xrefs.length - 1;
+
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int cmp = xrefs[mid].compareTo(xref);
+
+      if (cmp < 0) {
+        low = mid + 1;
+      } else if (cmp > 0) {
+        high = mid - 1;
+      } else {
+        return mid;
+      }
+    }
+
+    return -1;
+  }
+
+  /**
+   * The number of records in the index
+   *
+   * @return
+   */
+  public int size() {
+    return xrefs.length;
+  }
+
+  /**
+   *
+   *
+   * @param position
+   * @return
+   */
+  public String getXRef(int position) {
+    return xrefs[position];
+  }
+
+  /**
+   *
+   *
+   * @param position
+   * @return
+   */
+  public String getTag(int position) {
+    return tags[position];
+  }
+
+  /**
+   * The byte offset of the record line
+   *
+   * @param position
+   * @return
+   */
+  public long getOffset(int position) {
+    return offsets[position];
+  }
+
+  /**
+   * The number of bytes of the record, including all its lines
+   *
+   * @param position
+   * @return
+   */
+  public long getLength(int position) {
+    return lengths[position];
+  }
+
+  /**
+   * The character set of the GEDCOM file
+   *
+   * @return
+   */
+  public Charset getCharset() {
+    return charset;
+  }
+
+  /**
+   * Checks if the given GEDCOM file is still the same as when the index has
+   * been built
+   *
+   * @param gedcomFile
+   * @return
+   */
+  public boolean isValid(String gedcomFile) {
+    File source = new File(gedcomFile);
+    return source.length() == sourceSize && source.lastModified() == sourceLastModified;
+  }
+
+}
@@ -0,0 +1,39 @@
+/**
+ *    Copyright 2014 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ch.thn.gedcom.reader.ged;
+
+import ch.thn.gedcom.data.GedcomTree;
+
+/**
+ * Receives the records of a {@link GedcomGEDReader} while the file is read.
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ */
+public interface GedcomRecordListener {
+
+  /**
+   * Is called for each level-0 record as soon as it is complete, in the order
+   * of the file.
+   *
+   * @param record The record
+   * @return <code>true</code> to add the record to the structure storage of the
+   * reader, <code>false</code> to drop it
+   */
+  public boolean recordRead(GedcomTree record);
+
+}
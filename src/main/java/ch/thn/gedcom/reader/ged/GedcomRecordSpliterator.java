@@ -0,0 +1,336 @@
+/**
+ *    Copyright 2014 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ch.thn.gedcom.reader.ged;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+import ch.thn.gedcom.data.GedcomTree;
+import ch.thn.gedcom.reader.GedcomReaderError;
+
+/**
+ * Parses the records of a GEDCOM input lazily, one record for each
+ * {@link #tryAdvance(Consumer)}.<br>
+ * <br>
+ * When split, the lines of the next few records are read ahead and handed over
+ * to a new spliterator which builds the records on its own. Since building the
+ * records takes most of the time, a parallel stream can build the records of
+ * the split parts at the same time while the input is still read sequentially.
+ *
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ */
+class GedcomRecordSpliterator implements Spliterator<GedcomTree> {
+
+  /** The number of lines the batch size grows with each split */
+  private static final int BATCH_UNIT = 1024;
+  private static final int MAX_BATCH = 1 << 20;
+
+  private GedcomLineScanner scanner = null;
+  private GedcomRecordBuilder builder = null;
+
+  private boolean headerFound = false;
+  private boolean finished = false;
+  private int batchSize = 0;
+
+
+  /**
+   *
+   *
+   * @param builder The builder for the records. The split parts use new
+   * builders with the same configuration.
+   * @param scanner
+   */
+  public GedcomRecordSpliterator(GedcomRecordBuilder builder, GedcomLineScanner scanner) {
+    this.builder = builder;
+    this.scanner = scanner;
+  }
+
+  /**
+   * Moves the scanner to the next line which can be processed
+   *
+   * @return <code>false</code> if the end of the input has been reached
+   */
+  private boolean nextLine() {
+    try {
+      while (scanner.next()) {
+        switch (scanner.getStatus()) {
+        case EMPTY:
+          continue;
+        case INCOMPLETE:
+          if (headerFound) {
+            throw new GedcomReaderError("Line '" + scanner.getLine() + "' can not be parsed. Line needs at least a level number and a tag name.");
+          }
+          continue;
+        case INVALID_LEVEL:
+          if (headerFound) {
+            System.out.println("Failed to parse line " + scanner.getLineNumber() + ". " +
+                "Level number not found (" + scanner.getLevelPart() + ")");
+          }
+          continue;
+        default:
+          break;
+        }
+
+        if (!headerFound) {
+          if (scanner.isHeaderLine()) {
+            headerFound = true;
+          } else {
+            //Don't do anything until the header record is found
+            continue;
+          }
+        }
+
+        return true;
+      }
+
+      finished = true;
+      scanner.close();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+
+    if (!headerFound) {
+      throw new GedcomReaderError("Failed to read GEDCOM data. " +
+          "HEADER structure (HEAD tag) not found.");
+    }
+
+    return false;
+  }
+
+  @Override
+  public boolean tryAdvance(Consumer<? super GedcomTree> action) {
+    if (finished) {
+      return false;
+    }
+
+    GedcomTree tree = null;
+
+    while (tree == null) {
+      if (!nextLine()) {
+        //The last record
+        tree = builder.finish();
+
+        if (tree == null) {
+          return false;
+        }
+
+        break;
+      }
+
+      if (builder.isSkipped(scanner.getLevel())) {
+        continue;
+      }
+
+      tree = builder.processLine(scanner.getLevel(), scanner.getTag(), scanner.getXRef(),
+          scanner.getValue(), scanner.getLineNumber());
+    }
+
+    action.accept(tree);
+    return true;
+  }
+
+  @Override
+  public Spliterator<GedcomTree> trySplit() {
+    if (finished) {
+      return null;
+    }
+
+    batchSize = Math.min(batchSize + BATCH_UNIT, MAX_BATCH);
+
+    GedcomLineBatch batch = new GedcomLineBatch(batchSize);
+    GedcomTree openTree = null;
+    boolean openTreeDone = false;
+    //The record of the current batch line is filtered out
+    boolean skipping = false;
+
+    while (nextLine()) {
+      if (!openTreeDone) {
+        if (scanner.getLevel() != 0) {
+          if (builder.isSkipped(scanner.getLevel())) {
+            continue;
+          }
+
+          //Still belongs to the record which is currently built
+          builder.processLine(scanner.getLevel(), scanner.getTag(), scanner.getXRef(),
+              scanner.getValue(), scanner.getLineNumber());
+          continue;
+        }
+
+        openTree = builder.finish();
+        openTreeDone = true;
+      } else if (scanner.getLevel() == 0 && batch.size() >= batchSize) {
+        //This record stays with this spliterator
+        builder.processLine(scanner.getLevel(), scanner.getTag(), scanner.getXRef(),
+            scanner.getValue(), scanner.getLineNumber());
+        break;
+      }
+
+      if (scanner.getLevel() == 0) {
+        skipping = !builder.acceptRecord(scanner.getTag(), scanner.getXRef(),
+            scanner.getValue());
+      }
+
+      if (!skipping) {
+        batch.add(scanner);
+      }
+    }
+
+    if (!openTreeDone) {
+      openTree = builder.finish();
+    }
+
+    if (openTree == null && batch.size() == 0) {
+      return null;
+    }
+
+    return new BatchSpliterator(builder.newBuilder(), openTree, batch, 0, batch.size());
+  }
+
+  @Override
+  public long estimateSize() {
+    return Long.MAX_VALUE;
+  }
+
+  @Override
+  public int characteristics() {
+    return ORDERED | NONNULL;
+  }
+
+
+  /**
+   * Builds the records of lines which have already been read. The lines always
+   * start with a level-0 line.
+   *
+   *
+   * @author Thomas Naeff (github.com/thnaeff)
+   *
+   */
+  private static class BatchSpliterator implements Spliterator<GedcomTree> {
+
+    private GedcomRecordBuilder builder = null;
+    private boolean started = false;
+
+    private GedcomTree firstTree = null;
+    private GedcomLineBatch batch = null;
+    private int pos = 0;
+    private int end = 0;
+
+
+    /**
+     *
+     *
+     * @param builder
+     * @param firstTree An already built record which comes before the lines
+     * or <code>null</code>
+     * @param batch
+     * @param start
+     * @param end
+     */
+    public BatchSpliterator(GedcomRecordBuilder builder, GedcomTree firstTree,
+        GedcomLineBatch batch, int start, int end) {
+      this.builder = builder;
+      this.firstTree = firstTree;
+      this.batch = batch;
+      this.pos = start;
+      this.end = end;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super GedcomTree> action) {
+      if (firstTree != null) {
+        action.accept(firstTree);
+        firstTree = null;
+        return true;
+      }
+
+      if (!started) {
+        if (pos >= end) {
+          return false;
+        }
+
+        started = true;
+      }
+
+      while (pos < end) {
+        GedcomTree tree = batch.processLine(pos++, builder);
+
+        if (tree != null) {
+          action.accept(tree);
+          return true;
+        }
+      }
+
+      //The last record
+      GedcomTree tree = builder.finish();
+
+      if (tree != null) {
+        action.accept(tree);
+        return true;
+      }
+
+      return false;
+    }
+
+    @Override
+    public Spliterator<GedcomTree> trySplit() {
+      //Only split before the first record has been started
+      if (started || end - pos < 2 * BATCH_UNIT) {
+        return null;
+      }
+
+      //Split at the next record after the middle
+      int mid = pos + (end - pos) / 2;
+      while (mid < end && batch.getLevel(mid) != 0) {
+        mid++;
+      }
+
+      if (mid >= end) {
+        return null;
+      }
+
+      Spliterator<GedcomTree> prefix = new BatchSpliterator(builder.newBuilder(), firstTree, batch, pos, mid);
+      firstTree = null;
+      pos = mid;
+
+      return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+      long records = firstTree == null ? 0 : 1;
+
+      for (int i = pos; i < end; i++) {
+        if (batch.getLevel(i) == 0) {
+          records++;
+        }
+      }
+
+      return records;
+    }
+
+    @Override
+    public int characteristics() {
+      return ORDERED | NONNULL;
+    }
+
+  }
+
+}
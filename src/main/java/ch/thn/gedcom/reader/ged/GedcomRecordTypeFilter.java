@@ -0,0 +1,85 @@
+/**
+ *    Copyright 2014 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ch.thn.gedcom.reader.ged;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import ch.thn.gedcom.store.GedcomStore;
+
+/**
+ * A {@link GedcomRecordFilter} which only reads the records of the given
+ * types. A type is either the tag of a record (for example INDI or FAM) or the
+ * structure name of a record (for example INDIVIDUAL_RECORD). The decision is
+ * made once for each tag.
+ *
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ */
+public class GedcomRecordTypeFilter implements GedcomRecordFilter {
+
+  private GedcomStore store = null;
+
+  private Set<String> types = null;
+
+  private ConcurrentHashMap<String, Boolean> decisions = null;
+
+
+  /**
+   * A filter for record tags
+   *
+   * @param tags
+   */
+  public GedcomRecordTypeFilter(String... tags) {
+    this(null, tags);
+  }
+
+  /**
+   * A filter for record tags and structure names
+   *
+   * @param store The store to look up the structure names of the tags with
+   * @param types The tags and structure names of the records to read
+   */
+  public GedcomRecordTypeFilter(GedcomStore store, String... types) {
+    this.store = store;
+    this.types = new HashSet<String>(Arrays.asList(types));
+
+    decisions = new ConcurrentHashMap<String, Boolean>();
+  }
+
+  @Override
+  public boolean acceptRecord(String tag, String xref, String value) {
+    Boolean accept = decisions.get(tag);
+
+    if (accept == null) {
+      accept = types.contains(tag);
+
+      if (!accept && store != null) {
+        String structureName = store.getStructureNameForTag(tag);
+        accept = structureName != null && types.contains(structureName);
+      }
+
+      decisions.put(tag, accept);
+    }
+
+    return accept;
+  }
+
+}
@@ -0,0 +1,45 @@
+/**
+ *    Copyright 2014 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ch.thn.gedcom.reader.ged;
+
+import java.util.List;
+
+/**
+ * The records which have been added, changed or deleted since the previous
+ * import of a GEDCOM file. All records are given by their xref, without the
+ * enclosing @. A record is changed if its bytes have changed.
+ *
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ */
+public class GedcomReimportResult extends GedcomRecordChanges<String> {
+
+  /**
+   *
+   *
+   * @param added
+   * @param changed
+   * @param deleted
+   * @param unchanged
+   */
+  public GedcomReimportResult(List<String> added, List<String> changed, List<String> deleted,
+      int unchanged) {
+    super(added, changed, deleted, unchanged);
+  }
+
+}
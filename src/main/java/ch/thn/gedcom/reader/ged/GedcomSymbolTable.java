@@ -0,0 +1,184 @@
+/**
+ *    Copyright 2014 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ch.thn.gedcom.reader.ged;
+
+/**
+ * Returns one canonical string instance for each tag and xref. The symbols are
+ * looked up directly in the line buffer of a {@link GedcomLineScanner}, so a
+ * string is only created the first time a symbol is seen. All the lines with
+ * the same tag or the same xref then share one string instead of each line
+ * keeping its own copy.<br>
+ * <br>
+ * The symbols are kept in an open addressing hash table which grows as
+ * needed. A symbol table is not thread-safe, it is meant to be used by the
+ * scanners of one reader which read one after the other.
+ *
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ */
+public class GedcomSymbolTable {
+
+  private String[] symbols = null;
+  private int[] hashes = null;
+  private int size = 0;
+
+
+  /**
+   *
+   *
+   */
+  public GedcomSymbolTable() {
+    symbols = new String[1024];
+    hashes = new int[1024];
+  }
+
+  /**
+   * Returns the canonical string of the given part of the current line of
+   * the scanner
+   *
+   * @param scanner
+   * @param start
+   * @param end
+   * @return
+   */
+  String get(GedcomLineScanner scanner, int start, int end) {
+    if (!scanner.isDecoded(start, end)) {
+      //Compare the decoded string
+      return intern(scanner.createString(start, end, false));
+    }
+
+    int hash = scanner.regionHashCode(start, end);
+
+    int mask = symbols.length - 1;
+    int index = mix(hash) & mask;
+
+    while (symbols[index] != null) {
+      if (hashes[index] == hash && scanner.regionEquals(start, end, symbols[index])) {
+        return symbols[index];
+      }
+
+      index = (index + 1) & mask;
+    }
+
+    String symbol = scanner.createString(start, end, false);
+    add(index, hash, symbol);
+
+    return symbol;
+  }
+
+  /**
+   * Returns the canonical instance of the given string
+   *
+   * @param string
+   * @return
+   */
+  public String intern(String string) {
+    int hash = string.hashCode();
+    int mask = symbols.length - 1;
+    int index = mix(hash) & mask;
+
+    while (symbols[index] != null) {
+      if (hashes[index] == hash && symbols[index].equals(string)) {
+        return symbols[index];
+      }
+
+      index = (index + 1) & mask;
+    }
+
+    add(index, hash, string);
+
+    return string;
+  }
+
+  /**
+   * The number of symbols
+   *
+   * @return
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Removes all symbols
+   */
+  public void clear() {
+    symbols = new String[1024];
+    hashes = new int[1024];
+    size = 0;
+  }
+
+  /**
+   *
+   *
+   * @param index
+   * @param hash
+   * @param symbol
+   */
+  private void add(int index, int hash, String symbol) {
+    symbols[index] = symbol;
+    hashes[index] = hash;
+    size++;
+
+    //Keep the table at most half full
+    if (size * 2 > symbols.length) {
+      rehash(symbols.length * 2);
+    }
+  }
+
+  /**
+   *
+   *
+   * @param capacity
+   */
+  private void rehash(int capacity) {
+    String[] oldSymbols = symbols;
+    int[] oldHashes = hashes;
+
+    symbols = new String[capacity];
+    hashes = new int[capacity];
+
+    int mask = capacity - 1;
+
+    for (int i = 0; i < oldSymbols.length; i++) {
+      if (oldSymbols[i] != null) {
+        int index = mix(oldHashes[i]) & mask;
+
+        while (symbols[index] != null) {
+          index = (index + 1) & mask;
+        }
+
+        symbols[index] = oldSymbols[i];
+        hashes[index] = oldHashes[i];
+      }
+    }
+  }
+
+  /**
+   * Spreads the bits of a string hash code, since similar xrefs like I1, I2,
+   * ... only differ in the lowest bits
+   *
+   * @param hash
+   * @return
+   */
+  static int mix(int hash) {
+    hash *= 0x9E3779B9;
+    return hash ^ (hash >>> 16);
+  }
+
+}
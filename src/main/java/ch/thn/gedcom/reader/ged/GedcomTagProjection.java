@@ -0,0 +1,147 @@
+/**
+ *    Copyright 2014 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ch.thn.gedcom.reader.ged;
+
+import java.util.HashMap;
+
+/**
+ * A set of tag paths which are read from a GEDCOM file, for example
+ * <code>INDI.NAME</code>, <code>INDI.BIRT.DATE</code> or <code>FAM.CHIL</code>.
+ * A line is read if its tag path is part of one of the paths. The lines below
+ * the end of a path are all read, <code>INDI.NAME</code> therefore also reads
+ * the GIVN and SURN lines of the name. All other lines are skipped together
+ * with all their sub-lines, without resolving them in the gedcom store.
+ * Records whose tag is not the start of any path are skipped as a whole.<br>
+ * <br>
+ * The paths are kept in a tree of tags. A projection can not be changed once
+ * it has been created and can be shared by multiple readers.
+ *
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ */
+public class GedcomTagProjection {
+
+  /** The separator of the tags in a path */
+  public static final String SEPARATOR = ".";
+
+  private Node root = null;
+
+
+  /**
+   *
+   *
+   * @param paths The tag paths, separated by {@link #SEPARATOR}
+   * @throws IllegalArgumentException If a path contains an empty tag
+   */
+  public GedcomTagProjection(String... paths) {
+    root = new Node();
+
+    for (String path : paths) {
+      Node node = root;
+
+      for (String tag : path.split("\\.", -1)) {
+        if (tag.length() == 0) {
+          throw new IllegalArgumentException("The tag path '" + path + "' contains an empty tag");
+        }
+
+        node = node.addChild(tag);
+      }
+
+      node.complete = true;
+    }
+  }
+
+  /**
+   * Checks if a line with the given tag path is read
+   *
+   * @param path The tag path, separated by {@link #SEPARATOR}
+   * @return
+   */
+  public boolean contains(String path) {
+    Node node = root;
+
+    for (String tag : path.split("\\.", -1)) {
+      node = node.getChild(tag);
+
+      if (node == null) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+  /**
+   * Returns the node of the records with the given tag
+   *
+   * @param tag
+   * @return The node or <code>null</code> if the records are skipped
+   */
+  Node getRecord(String tag) {
+    return root.getChild(tag);
+  }
+
+
+  /**
+   * A tag in the tree of the paths
+   *
+   *
+   * @author Thomas Naeff (github.com/thnaeff)
+   *
+   */
+  static class Node {
+
+    private HashMap<String, Node> children = new HashMap<String, Node>();
+
+    /** A path ends here, all the lines below are read */
+    private boolean complete = false;
+
+    /**
+     *
+     *
+     * @param tag
+     * @return
+     */
+    private Node addChild(String tag) {
+      Node child = children.get(tag);
+
+      if (child == null) {
+        child = new Node();
+        children.put(tag, child);
+      }
+
+      return child;
+    }
+
+    /**
+     * Returns the node of the sub-line with the given tag
+     *
+     * @param tag
+     * @return The node or <code>null</code> if the sub-line is skipped
+     */
+    Node getChild(String tag) {
+      if (complete) {
+        return this;
+      }
+
+      return children.get(tag);
+    }
+
+  }
+
+}
@@ -0,0 +1,178 @@
+/**
+ *    Copyright 2014 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ch.thn.gedcom.reader.ged;
+
+/**
+ * A pool with a fixed number of slots which shares the strings of values which
+ * are repeated often, like place names, dates or the sex of an individual.<br>
+ * <br>
+ * Each value goes into the slot given by its hash code and replaces the value
+ * in the slot if it is a different one. Values which are repeated often
+ * therefore stay in the pool while values which are seen only once are
+ * replaced again soon. Only short values are pooled, long values like notes
+ * are rarely repeated.<br>
+ * <br>
+ * A value pool is not thread-safe, it is meant to be used by the scanners of
+ * one reader which read one after the other.
+ *
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ */
+public class GedcomValuePool {
+
+  /** The default number of slots */
+  public static final int DEFAULT_SIZE = 16384;
+
+  /** The default length of the longest value which is pooled */
+  public static final int DEFAULT_MAX_VALUE_LENGTH = 64;
+
+  private String[] values = null;
+  private int[] hashes = null;
+
+  private int maxValueLength = 0;
+
+  private long hits = 0;
+  private long misses = 0;
+
+
+  /**
+   *
+   *
+   */
+  public GedcomValuePool() {
+    this(DEFAULT_SIZE, DEFAULT_MAX_VALUE_LENGTH);
+  }
+
+  /**
+   *
+   *
+   * @param size The number of slots. Rounded up to a power of two.
+   * @param maxValueLength The length of the longest value which is pooled
+   */
+  public GedcomValuePool(int size, int maxValueLength) {
+    this.maxValueLength = maxValueLength;
+
+    int capacity = Integer.highestOneBit(Math.max(size - 1, 1)) << 1;
+    values = new String[capacity];
+    hashes = new int[capacity];
+  }
+
+  /**
+   * Returns the pooled string of the given part of the current line of the
+   * scanner
+   *
+   * @param scanner
+   * @param start
+   * @param end
+   * @return The string or <code>null</code> if the value is not pooled
+   * because it is too long or contains multiple spaces
+   */
+  String get(GedcomLineScanner scanner, int start, int end) {
+    if (end - start > maxValueLength || scanner.containsMultipleSpaces(start, end)) {
+      return null;
+    }
+
+    if (!scanner.isDecoded(start, end)) {
+      //Compare the decoded string
+      return intern(scanner.createString(start, end, false));
+    }
+
+    int hash = scanner.regionHashCode(start, end);
+
+    int index = GedcomSymbolTable.mix(hash) & (values.length - 1);
+    String value = values[index];
+
+    if (value != null && hashes[index] == hash && scanner.regionEquals(start, end, value)) {
+      hits++;
+      return value;
+    }
+
+    misses++;
+
+    value = scanner.createString(start, end, false);
+    values[index] = value;
+    hashes[index] = hash;
+
+    return value;
+  }
+
+  /**
+   * Returns the pooled instance of the given string
+   *
+   * @param string
+   * @return
+   */
+  public String intern(String string) {
+    if (string.length() > maxValueLength) {
+      return string;
+    }
+
+    int hash = string.hashCode();
+    int index = GedcomSymbolTable.mix(hash) & (values.length - 1);
+    String value = values[index];
+
+    if (value != null && hashes[index] == hash && value.equals(string)) {
+      hits++;
+      return value;
+    }
+
+    misses++;
+
+    values[index] = string;
+    hashes[index] = hash;
+
+    return string;
+  }
+
+  /**
+   * The number of slots
+   *
+   * @return
+   */
+  public int getSize() {
+    return values.length;
+  }
+
+  /**
+   *
+   *
+   * @return
+   */
+  public int getMaxValueLength() {
+    return maxValueLength;
+  }
+
+  /**
+   * The number of values which have been found in the pool
+   *
+   * @return
+   */
+  public long getHits() {
+    return hits;
+  }
+
+  /**
+   * The number of values which have not been found in the pool
+   *
+   * @return
+   */
+  public long getMisses() {
+    return misses;
+  }
+
+}
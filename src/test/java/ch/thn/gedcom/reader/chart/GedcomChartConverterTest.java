@@ -0,0 +1,247 @@
+/**
+ *    Copyright 2014 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package ch.thn.gedcom.reader.chart;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ch.thn.gedcom.creator.GedcomCreatorStructureStorage;
+import ch.thn.gedcom.creator.structures.GedcomFamily;
+import ch.thn.gedcom.reader.GedcomReaderError;
+import ch.thn.gedcom.reader.GedcomReaderException;
+import ch.thn.gedcom.reader.chart.GedcomChartEnums.Columns;
+import ch.thn.gedcom.reader.chart.core.ChartLinePostProcessor;
+import ch.thn.gedcom.reader.chart.core.ColumnMapping;
+import ch.thn.gedcom.store.GedcomParseException;
+import ch.thn.gedcom.store.GedcomStore;
+
+/**
+ * Compares the families of the streaming conversion of a chart with the 
+ * families of the conversion of the whole chart
+ * 
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ */
+public class GedcomChartConverterTest {
+	
+	private static final String HEADER = "id;family_name;first_name;middle_name;former_name;gender;" + 
+			"birth_date;death_date;parent1_id;parent2_id;partner_id;marriage_date;civil_status";
+	
+	/** The columns which are not used by this test and are left empty */
+	private static final String UNUSED_COLUMNS = "email1;email2;street1;street2;town;" + 
+			"zip_code;country;phone1;phone2;occupation;education;last_modified";
+	
+	private static final List<String> LINES = Arrays.asList(
+			"1;Muster;Hans;;;m;;;;;2;5 MAY 1970;2", 
+			"2;Muster;Anna;;;f;;;;;1;5 MAY 1970;2", 
+			"3;Muster;Peter;;;m;;;1;2;4;1 JUN 1995;2", 
+			"4;Meier;Eva;;;f;;;;;3;1 JUN 1995;2", 
+			"5;Muster;Lisa;;;f;;;1;2;;;1", 
+			"6;Muster;Tim;;;m;;;3;4;;;1", 
+			"7;Muster;Lea;;;f;;;3;;;;1", 
+			"8;Keller;Max;;;m;;;;;9;;4", 
+			"9;Keller;Ida;;;f;;;;;8;;4", 
+			"10;Keller;Tom;;;m;;;8;9;;;0");
+	
+	private GedcomStore store = null;
+	
+	@Before
+	public void setUp() throws GedcomParseException {
+		store = new GedcomStore();
+		store.showParsingOutput(false);
+		store.parse(store.getClass().getResource("/gedcomobjects_5.5.1.gedg").getPath());
+	}
+	
+	@Test
+	public void streamingCreatesSameFamilies() throws GedcomReaderException, IOException {
+		assertSameFamilies(LINES, read(LINES, false, false), read(LINES, true, false));
+	}
+	
+	@Test
+	public void columnarCreatesSameFamilies() throws GedcomReaderException, IOException {
+		assertSameFamilies(LINES, read(LINES, false, false), read(LINES, false, true));
+	}
+	
+	@Test
+	public void streamingKeepsFirstLineOfDuplicateId() throws GedcomReaderException, IOException {
+		List<String> lines = new ArrayList<>(LINES);
+		//The same individual again, now as child of 8 and 9
+		lines.add("5;Keller;Lisa;;;f;;;8;9;;;1");
+		
+		GedcomCreatorStructureStorage streamed = read(lines, true, false);
+		
+		assertEquals(LINES.size(), streamed.getIndividualCount());
+		assertSameFamilies(LINES, read(LINES, false, false), streamed);
+	}
+	
+	@Test
+	public void columnarKeepsLastLineOfDuplicateId() throws GedcomReaderException, IOException {
+		List<String> lines = new ArrayList<>(LINES);
+		//The same individual again, now as child of 8 and 9
+		lines.add("5;Keller;Lisa;;;f;;;8;9;;;1");
+		
+		GedcomCreatorStructureStorage columnar = read(lines, false, true);
+		
+		assertEquals(LINES.size(), columnar.getIndividualCount());
+		assertSameFamilies(lines, read(lines, false, false), columnar);
+	}
+	
+	@Test
+	public void missingColumnNamedByMapping() throws GedcomReaderException, IOException {
+		//The header of the schema is checked
+		assertMissingColumn(null, false, false);
+		assertMissingColumn(null, true, false);
+		assertMissingColumn(null, false, true);
+	}
+	
+	@Test
+	public void missingColumnOfLineNamedByMapping() throws GedcomReaderException, IOException {
+		//Each line is checked, since the post processor could add the column
+		ChartLinePostProcessor linePostProcessor = new ChartLinePostProcessor() {
+			@Override
+			public void process(Map<Columns, Object> line) {
+				//Only the first line gets the column
+				if ("1".equals(line.get(Columns.ID))) {
+					line.put(Columns.GENDER, "m");
+				}
+			}
+		};
+		
+		assertMissingColumn(linePostProcessor, false, false);
+		assertMissingColumn(linePostProcessor, true, false);
+		assertMissingColumn(linePostProcessor, false, true);
+	}
+	
+	/**
+	 * Reads a chart without the gender column, which is named "sex" by the 
+	 * column mapping of the reader
+	 * 
+	 * @param linePostProcessor
+	 * @param streaming
+	 * @param columnar
+	 * @throws GedcomReaderException
+	 * @throws IOException
+	 */
+	private void assertMissingColumn(ChartLinePostProcessor linePostProcessor, 
+			boolean streaming, boolean columnar) throws GedcomReaderException, IOException {
+		Map<Columns, String> columnNames = new EnumMap<>(Columns.class);
+		columnNames.put(Columns.GENDER, "sex");
+		
+		GedcomCSVReader reader = new GedcomCSVReader(store);
+		reader.setColumnMapping(new ColumnMapping(columnNames));
+		reader.setStreaming(streaming);
+		reader.setColumnar(columnar);
+		
+		try {
+			read(reader, HEADER.replace("gender;", ""), 
+					Arrays.asList("1;Muster;Hans;;;;;;;;;0", "2;Muster;Anna;;;;;;;;;0"), 
+					linePostProcessor);
+			fail("The missing column has not been found");
+		} catch (GedcomReaderError e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith("Mandatory column sex "));
+		}
+	}
+	
+	/**
+	 * Compares the individuals and families of both storages by the IDs of the 
+	 * lines
+	 * 
+	 * @param lines
+	 * @param expected
+	 * @param actual
+	 */
+	private static void assertSameFamilies(List<String> lines, 
+			GedcomCreatorStructureStorage expected, GedcomCreatorStructureStorage actual) {
+		assertEquals(expected.getIndividualCount(), actual.getIndividualCount());
+		assertEquals(expected.getFamilyCount(), actual.getFamilyCount());
+		
+		for (String line : lines) {
+			String[] values = line.split(";", -1);
+			String id = values[0];
+			String parent1 = values[8].isEmpty() ? null : values[8];
+			String parent2 = values[9].isEmpty() ? null : values[9];
+			
+			assertNotNull(actual.getIndividual(id));
+			assertEquals("Family of the parents of " + id, 
+					expected.getFamilyOfParents(parent1, parent2) == null, 
+					actual.getFamilyOfParents(parent1, parent2) == null);
+			assertEquals("Families of " + id, 
+					count(expected.getFamiliesOfParent(id)), count(actual.getFamiliesOfParent(id)));
+		}
+	}
+	
+	private static int count(Set<GedcomFamily> families) {
+		return families == null ? 0 : families.size();
+	}
+	
+	/**
+	 * 
+	 * 
+	 * @param lines
+	 * @param streaming
+	 * @param columnar
+	 * @return
+	 * @throws GedcomReaderException
+	 * @throws IOException
+	 */
+	private GedcomCreatorStructureStorage read(List<String> lines, boolean streaming, 
+			boolean columnar) throws GedcomReaderException, IOException {
+		GedcomCSVReader reader = new GedcomCSVReader(store);
+		reader.setStreaming(streaming);
+		reader.setColumnar(columnar);
+		read(reader, HEADER, lines, null);
+		
+		return reader.getStructureStorage();
+	}
+	
+	/**
+	 * Reads the lines with the given header and the unused columns
+	 * 
+	 * @param reader
+	 * @param header
+	 * @param lines
+	 * @param linePostProcessor
+	 * @throws GedcomReaderException
+	 * @throws IOException
+	 */
+	private static void read(GedcomCSVReader reader, String header, List<String> lines, 
+			ChartLinePostProcessor linePostProcessor) throws GedcomReaderException, IOException {
+		String empty = UNUSED_COLUMNS.replaceAll("[^;]", "");
+		StringBuilder csv = new StringBuilder(header).append(";").append(UNUSED_COLUMNS).append("\n");
+		for (String line : lines) {
+			csv.append(line).append(";").append(empty).append("\n");
+		}
+		
+		reader.read(new StringReader(csv.toString()), GedcomCSVReader.CSV_EXCEL_NORTH_EUROPE, 
+				null, linePostProcessor);
+	}
+	
+}
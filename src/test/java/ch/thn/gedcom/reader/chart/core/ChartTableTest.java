@@ -0,0 +1,143 @@
+/**
+ *    Copyright 2014 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * 
+ */
+package ch.thn.gedcom.reader.chart.core;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import ch.thn.gedcom.reader.chart.GedcomChartEnums.Columns;
+
+/**
+ * Tests the index and the related rows of a {@link ChartTable}
+ * 
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ */
+public class ChartTableTest {
+	
+	@Test
+	public void replaceRowWithSameId() {
+		ChartTable table = new ChartTable();
+		
+		assertTrue(table.addRow(row("1", "Hans", "2")));
+		assertTrue(table.addRow(row("2", "Anna", "1")));
+		
+		//The same ID, but without a partner
+		Map<Columns, Object> replacement = new EnumMap<>(Columns.class);
+		replacement.put(Columns.ID, "1");
+		replacement.put(Columns.FIRST_NAME, "Peter");
+		
+		assertFalse(table.addRow(replacement));
+		
+		assertEquals(2, table.size());
+		assertEquals(0, table.findRow("1"));
+		assertEquals("Peter", table.getString(0, Columns.FIRST_NAME));
+		assertNull(table.getValue(0, Columns.PARTNER_ID));
+		assertEquals(-1, table.getRelatedRow(0, Columns.PARTNER_ID));
+		assertEquals(0, table.getRelatedRow(1, Columns.PARTNER_ID));
+	}
+	
+	@Test
+	public void idColumnWithOtherValues() {
+		ChartTable table = new ChartTable();
+		
+		for (int i = 1; i <= 40; i++) {
+			table.addRow(row(String.valueOf(i), "Person " + i, null));
+		}
+		
+		//Not written like an integer, the IDs are kept as strings from now on
+		table.addRow(row("007", "Agent", "A6"));
+		table.addRow(row("A6", "Other", "007"));
+		
+		//Enough rows to grow the index with the string IDs
+		for (int i = 41; i <= 100; i++) {
+			table.addRow(row(String.valueOf(i), "Person " + i, null));
+		}
+		
+		assertEquals(102, table.size());
+		
+		for (int i = 1; i <= 40; i++) {
+			assertEquals(i - 1, table.findRow(String.valueOf(i)));
+		}
+		
+		for (int i = 41; i <= 100; i++) {
+			assertEquals(i + 1, table.findRow(String.valueOf(i)));
+		}
+		
+		assertEquals(40, table.findRow("007"));
+		assertEquals(41, table.findRow("A6"));
+		//Not the same IDs as 7
+		assertEquals(6, table.findRow("7"));
+		assertEquals(-1, table.findRow("07"));
+		assertEquals("1", table.getString(0, Columns.ID));
+		assertEquals("007", table.getString(40, Columns.ID));
+		
+		assertEquals(41, table.getRelatedRow(40, Columns.PARTNER_ID));
+		assertEquals(40, table.getRelatedRow(41, Columns.PARTNER_ID));
+	}
+	
+	@Test
+	public void relatedRowOfMissingAndEmptyIds() {
+		ChartTable table = new ChartTable();
+		
+		table.addRow(row("1", "Hans", "2"));
+		table.addRow(row("2", "Anna", "1"));
+		table.addRow(row("3", "Peter", "99"));
+		table.addRow(row("4", "Eva", null));
+		table.addRow(row("5", "Lisa", "0"));
+		table.addRow(row("6", "Tim", "7"));
+		
+		assertEquals(1, table.getRelatedRow(0, Columns.PARTNER_ID));
+		assertEquals(0, table.getRelatedRow(1, Columns.PARTNER_ID));
+		assertEquals(-1, table.getRelatedRow(2, Columns.PARTNER_ID));
+		assertEquals(-1, table.getRelatedRow(3, Columns.PARTNER_ID));
+		assertEquals(-1, table.getRelatedRow(4, Columns.PARTNER_ID));
+		assertEquals(-1, table.getRelatedRow(5, Columns.PARTNER_ID));
+		
+		//The related rows are resolved again when a row is added
+		table.addRow(row("7", "Lea", ""));
+		
+		assertEquals(6, table.getRelatedRow(5, Columns.PARTNER_ID));
+		assertEquals(-1, table.getRelatedRow(6, Columns.PARTNER_ID));
+		assertEquals(-1, table.findRow(""));
+		assertEquals(-1, table.findRow(null));
+	}
+	
+	/**
+	 * 
+	 * 
+	 * @param id
+	 * @param firstName
+	 * @param partnerId
+	 * @return
+	 */
+	private static Map<Columns, Object> row(String id, String firstName, String partnerId) {
+		Map<Columns, Object> row = new EnumMap<>(Columns.class);
+		row.put(Columns.ID, id);
+		row.put(Columns.FIRST_NAME, firstName);
+		row.put(Columns.PARTNER_ID, partnerId);
+		return row;
+	}
+
+}
@@ -0,0 +1,152 @@
+/**
+ *    Copyright 2014 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ch.thn.gedcom.reader.ged;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+
+import org.junit.Test;
+
+/**
+ * Tests the decoding of the combining diacritics of the {@link GedcomAnselCharset}
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ */
+public class GedcomAnselCharsetTest {
+
+  @Test
+  public void ascii() {
+    assertDecoded("0 @I1@ INDI", bytes("0 @I1@ INDI"));
+  }
+
+  @Test
+  public void singleDiacritics() {
+    //Acute, grave, umlaut, cedilla, circumflex, tilde, caron, ring
+    assertDecoded("\u00E9", bytes(0xE2, 'e'));
+    assertDecoded("\u00E0", bytes(0xE1, 'a'));
+    assertDecoded("\u00FC", bytes(0xE8, 'u'));
+    assertDecoded("\u00C7", bytes(0xF0, 'C'));
+    assertDecoded("\u00F4", bytes(0xE3, 'o'));
+    assertDecoded("\u00F1", bytes(0xE4, 'n'));
+    assertDecoded("\u0161", bytes(0xE9, 's'));
+    assertDecoded("\u00C5", bytes(0xEA, 'A'));
+  }
+
+  @Test
+  public void diacriticsInWords() {
+    assertDecoded("Jos\u00E9 M\u00FCller", bytes('J', 'o', 's', 0xE2, 'e', ' ', 'M', 0xE8, 'u',
+        'l', 'l', 'e', 'r'));
+  }
+
+  @Test
+  public void diacriticWithoutComposedCharacter() {
+    //There is no precomposed q with acute accent, the mark follows the character
+    assertDecoded("q\u0301", bytes(0xE2, 'q'));
+  }
+
+  @Test
+  public void multipleDiacritics() {
+    //Circumflex and dot below on a become one character
+    assertDecoded("\u1EAD", bytes(0xE3, 0xF2, 'a'));
+    //Hook above and tilde on x stay combining marks in their ANSEL order
+    assertDecoded("x\u0309\u0303", bytes(0xE0, 0xE4, 'x'));
+  }
+
+  @Test
+  public void diacriticOnSpecialCharacter() {
+    //Acute accent on o with stroke (0xB2)
+    assertDecoded("\u01FF", bytes(0xE2, 0xB2));
+  }
+
+  @Test
+  public void specialCharacters() {
+    assertDecoded("\u0141\u00D8\u00C6\u00DF\u00A9", bytes(0xA1, 0xA2, 0xA5, 0xCF, 0xC3));
+  }
+
+  @Test
+  public void undefinedBytes() {
+    assertDecoded("a\uFFFDb", bytes('a', 0x80, 'b'));
+  }
+
+  @Test
+  public void diacriticBeforeLineBreak() {
+    assertEquals("\u0301\nb", GedcomAnselCharset.decode(bytes(0xE2, '\n', 'b'), 0, 3));
+  }
+
+  @Test
+  public void diacriticAtTheEnd() {
+    assertEquals("a\u0308", GedcomAnselCharset.decode(bytes('a', 0xE8), 0, 2));
+  }
+
+  @Test
+  public void diacriticSplitFromItsCharacter() throws Exception {
+    //The decoder gets the diacritic and its character in separate buffers
+    byte[] bytes = bytes('J', 'o', 's', 0xE2, 'e', ' ', 0xE3, 0xF2, 'a');
+    CharsetDecoder decoder = GedcomAnselCharset.ANSEL.newDecoder();
+    ByteBuffer in = ByteBuffer.allocate(bytes.length);
+    CharBuffer out = CharBuffer.allocate(bytes.length);
+
+    for (int i = 0; i < bytes.length; i++) {
+      in.put(bytes[i]);
+      in.flip();
+      CoderResult result = decoder.decode(in, out, i == bytes.length - 1);
+      assertEquals(false, result.isError());
+      in.compact();
+    }
+
+    decoder.flush(out);
+    out.flip();
+
+    assertEquals("Jos\u00E9 \u1EAD", out.toString());
+  }
+
+  /**
+   * Decodes the bytes with {@link GedcomAnselCharset#decode(byte[], int, int)}
+   * and with the decoder of the character set
+   *
+   * @param expected
+   * @param bytes
+   */
+  private static void assertDecoded(String expected, byte[] bytes) {
+    assertEquals(expected, GedcomAnselCharset.decode(bytes, 0, bytes.length));
+    assertEquals(expected, new String(bytes, GedcomAnselCharset.ANSEL));
+  }
+
+  private static byte[] bytes(String string) {
+    byte[] bytes = new byte[string.length()];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte)string.charAt(i);
+    }
+
+    return bytes;
+  }
+
+  private static byte[] bytes(int... values) {
+    byte[] bytes = new byte[values.length];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte)values[i];
+    }
+
+    return bytes;
+  }
+
+}
@@ -0,0 +1,116 @@
+/**
+ *    Copyright 2014 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ch.thn.gedcom.reader.ged;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.charset.Charset;
+
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+
+/**
+ * Tests the detection of the character set from the byte order mark and the
+ * CHAR line of the HEAD record
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ */
+public class GedcomCharsetDetectorTest {
+
+  private static final String HEAD = "0 HEAD\n1 SOUR Test\n1 CHAR %s\n0 @I1@ INDI\n0 TRLR\n";
+
+  @Test
+  public void ansel() throws UnsupportedEncodingException {
+    assertDetected(GedcomAnselCharset.ANSEL, head("ANSEL"));
+  }
+
+  @Test
+  public void ansi() throws UnsupportedEncodingException {
+    assertDetected(Charset.forName("windows-1252"), head("ANSI"));
+  }
+
+  @Test
+  public void utf8WithoutBom() throws UnsupportedEncodingException {
+    assertDetected(Charsets.UTF_8, head("UTF-8"));
+  }
+
+  @Test
+  public void utf8WithBom() throws UnsupportedEncodingException {
+    byte[] head = head("UTF-8");
+    byte[] data = new byte[head.length + 3];
+    data[0] = (byte)0xEF;
+    data[1] = (byte)0xBB;
+    data[2] = (byte)0xBF;
+    System.arraycopy(head, 0, data, 3, head.length);
+
+    assertDetected(Charsets.UTF_8, data);
+    assertEquals(3, GedcomCharsetDetector.getBomLength(data, data.length));
+  }
+
+  @Test
+  public void bomBeforeCharLine() throws UnsupportedEncodingException {
+    //The byte order mark decides, even if the CHAR line says something else
+    byte[] head = head("ANSEL");
+    byte[] data = new byte[head.length + 3];
+    data[0] = (byte)0xEF;
+    data[1] = (byte)0xBB;
+    data[2] = (byte)0xBF;
+    System.arraycopy(head, 0, data, 3, head.length);
+
+    assertDetected(Charsets.UTF_8, data);
+  }
+
+  @Test
+  public void charLineCase() throws UnsupportedEncodingException {
+    assertDetected(GedcomAnselCharset.ANSEL, head("ansel"));
+  }
+
+  @Test
+  public void ascii() throws UnsupportedEncodingException {
+    assertDetected(Charsets.UTF_8, head("ASCII"));
+  }
+
+  @Test
+  public void noCharLine() throws UnsupportedEncodingException {
+    assertDetected(GedcomCharsetDetector.DEFAULT_CHARSET,
+        "0 HEAD\n1 SOUR Test\n0 @I1@ INDI\n0 TRLR\n".getBytes("US-ASCII"));
+  }
+
+  @Test
+  public void charLineOutsideOfHead() throws UnsupportedEncodingException {
+    assertDetected(GedcomCharsetDetector.DEFAULT_CHARSET,
+        "0 HEAD\n1 SOUR Test\n0 @I1@ INDI\n1 CHAR ANSEL\n0 TRLR\n".getBytes("US-ASCII"));
+  }
+
+  @Test
+  public void utf16() throws UnsupportedEncodingException {
+    assertDetected(Charsets.UTF_16LE, String.format(HEAD, "UNICODE").getBytes("UTF-16LE"));
+    assertDetected(Charsets.UTF_16BE, String.format(HEAD, "UNICODE").getBytes("UTF-16BE"));
+  }
+
+  private static byte[] head(String charName) throws UnsupportedEncodingException {
+    return String.format(HEAD, charName).getBytes("US-ASCII");
+  }
+
+  private static void assertDetected(Charset expected, byte[] data) {
+    assertEquals(expected, GedcomCharsetDetector.detect(data, data.length));
+  }
+
+}
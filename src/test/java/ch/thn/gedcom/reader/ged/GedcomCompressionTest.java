@@ -0,0 +1,157 @@
+/**
+ *    Copyright 2014 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ch.thn.gedcom.reader.ged;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import ch.thn.gedcom.reader.GedcomReaderError;
+
+/**
+ * Tests which entry of a zip archive {@link GedcomCompression} reads
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ */
+public class GedcomCompressionTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void gedzipEntry() throws IOException {
+    assertEquals("gedzip", read(zip("media/photo.jpg", "jpg", "gedcom.ged", "gedzip")));
+  }
+
+  @Test
+  public void gedzipEntryAfterOtherGedcomFile() throws IOException {
+    assertEquals("gedzip", readFile(zip("backup.ged", "backup", "media/photo.jpg", "jpg",
+        "gedcom.ged", "gedzip", "other.ged", "other")));
+  }
+
+  @Test
+  public void streamReadsFirstGedcomFile() throws IOException {
+    //A stream can not be searched for gedcom.ged
+    assertEquals("backup", read(zip("backup.ged", "backup", "media/photo.jpg", "jpg",
+        "gedcom.ged", "gedzip")));
+  }
+
+  @Test
+  public void firstGedcomFileWithoutGedzipEntry() throws IOException {
+    byte[] zip = zip("readme.txt", "text", "family/first.GED", "first", "second.ged", "second");
+
+    assertEquals("first", read(zip));
+    assertEquals("first", readFile(zip));
+  }
+
+  @Test(expected = GedcomReaderError.class)
+  public void noGedcomFile() throws IOException {
+    read(zip("readme.txt", "text"));
+  }
+
+  @Test(expected = GedcomReaderError.class)
+  public void noGedcomFileInFile() throws IOException {
+    readFile(zip("readme.txt", "text"));
+  }
+
+  @Test
+  public void gzipFile() throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+    gzip.write("0 HEAD".getBytes(StandardCharsets.UTF_8));
+    gzip.close();
+
+    assertEquals("0 HEAD", readFile(bytes.toByteArray()));
+  }
+
+  @Test
+  public void notCompressed() throws IOException {
+    assertEquals("0 HEAD", read("0 HEAD".getBytes(StandardCharsets.UTF_8)));
+    assertEquals("0 HEAD", readFile("0 HEAD".getBytes(StandardCharsets.UTF_8)));
+  }
+
+  /**
+   * Creates a zip archive with the given pairs of entry names and contents
+   *
+   * @param entries
+   * @return
+   * @throws IOException
+   */
+  private static byte[] zip(String... entries) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    ZipOutputStream zip = new ZipOutputStream(bytes);
+
+    for (int i = 0; i < entries.length; i += 2) {
+      zip.putNextEntry(new ZipEntry(entries[i]));
+      zip.write(entries[i + 1].getBytes(StandardCharsets.UTF_8));
+      zip.closeEntry();
+    }
+
+    zip.close();
+    return bytes.toByteArray();
+  }
+
+  private static String read(byte[] data) throws IOException {
+    return readAll(GedcomCompression.decompress(new ByteArrayInputStream(data)));
+  }
+
+  /**
+   * Writes the data into a file and reads it with
+   * {@link GedcomCompression#open(String)}
+   *
+   * @param data
+   * @return
+   * @throws IOException
+   */
+  private String readFile(byte[] data) throws IOException {
+    File file = folder.newFile();
+    Files.write(file.toPath(), data);
+
+    return readAll(GedcomCompression.open(file.getPath()));
+  }
+
+  private static String readAll(InputStream in) throws IOException {
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      byte[] buffer = new byte[1024];
+      int read = 0;
+
+      while ((read = in.read(buffer)) != -1) {
+        out.write(buffer, 0, read);
+      }
+
+      return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    } finally {
+      in.close();
+    }
+  }
+
+}
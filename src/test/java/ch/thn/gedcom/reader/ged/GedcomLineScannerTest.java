@@ -0,0 +1,236 @@
+/**
+ *    Copyright 2014 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ch.thn.gedcom.reader.ged;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import ch.thn.gedcom.GedcomHelper;
+import ch.thn.gedcom.data.GedcomLine;
+import ch.thn.gedcom.reader.ged.GedcomLineScanner.LineStatus;
+import ch.thn.stringutil.StringUtil;
+
+/**
+ * Compares the lines of the {@link GedcomCharLineScanner} with the lines of
+ * the previous line parsing (BufferedReader, regular expressions and split)
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ */
+public class GedcomLineScannerTest {
+
+  @Test
+  public void tabs() throws IOException {
+    assertSameLines("\t0 HEAD\t\n1 NAME John /Doe/\t\t\n\t\t2 GIVN\tJohn\n");
+  }
+
+  @Test
+  public void multipleSpaces() throws IOException {
+    assertSameLines("0   HEAD\n1  NAME   John    /Doe/  \n   2 SURN  Doe\n");
+  }
+
+  @Test
+  public void xrefBeforeTag() throws IOException {
+    assertSameLines("0 HEAD\n0 @I1@ INDI\n0  @F1@   FAM  \n0 @N1@ NOTE a note\n");
+  }
+
+  @Test
+  public void xrefAfterTag() throws IOException {
+    assertSameLines("0 HEAD\n1 FAMS @F1@\n1  CHIL   @I2@  \n1 SOUR @S1@ with value\n");
+  }
+
+  @Test
+  public void emptyValues() throws IOException {
+    assertSameLines("0 HEAD\n1 BIRT\n1 DEAT \n2 DATE\t\n\n   \n1 NOTE @@\n");
+  }
+
+  @Test
+  public void incompleteAndInvalidLines() throws IOException {
+    assertSameLines("0 HEAD\n1\nx NAME John\n1NAME\n");
+  }
+
+  @Test
+  public void crOnlyLineEndings() throws IOException {
+    assertSameLines("0 HEAD\r1 NAME John /Doe/\r\r2 GIVN John\r");
+  }
+
+  @Test
+  public void mixedLineEndings() throws IOException {
+    assertSameLines("0 HEAD\r\n1 NAME John\r2 GIVN John\n\r\n1 SEX M");
+  }
+
+  @Test
+  public void byteOrderMark() throws IOException {
+    //The previous parsing kept the byte order mark in the first line, which
+    //then was not recognized as header. The scanner skips it.
+    String lines = "0 HEAD\n1 CHAR UTF-8\n0 @I1@ INDI\n";
+    assertEquals(previousLines(lines), scannedLines("\uFEFF" + lines));
+  }
+
+  /**
+   *
+   *
+   * @param lines
+   * @throws IOException
+   */
+  private static void assertSameLines(String lines) throws IOException {
+    assertEquals(previousLines(lines), scannedLines(lines));
+  }
+
+  /**
+   * The lines as they are scanned by the {@link GedcomCharLineScanner}
+   *
+   * @param lines
+   * @return
+   * @throws IOException
+   */
+  private static List<String> scannedLines(String lines) throws IOException {
+    GedcomCharLineScanner scanner = new GedcomCharLineScanner(new StringReader(lines));
+    List<String> scanned = new ArrayList<String>();
+
+    try {
+      while (scanner.next()) {
+        if (scanner.getStatus() == LineStatus.EMPTY) {
+          continue;
+        }
+
+        if (scanner.getStatus() != LineStatus.VALID) {
+          scanned.add(scanner.getLineNumber() + " " + scanner.getStatus());
+          continue;
+        }
+
+        scanned.add(format(scanner.getLineNumber(), scanner.getLevel(), scanner.getTag(),
+            scanner.hasXRef() ? scanner.getXRef() : null, scanner.getValue(),
+            scanner.isXRefBeforeTag()));
+      }
+    } finally {
+      scanner.close();
+    }
+
+    return scanned;
+  }
+
+  /**
+   * The lines as they have been parsed before the scanner
+   *
+   * @param lines
+   * @return
+   * @throws IOException
+   */
+  private static List<String> previousLines(String lines) throws IOException {
+    BufferedReader input = new BufferedReader(new StringReader(lines));
+    List<String> parsed = new ArrayList<String>();
+
+    String line = null;
+    int lineCount = 0;
+
+    while ((line = input.readLine()) != null) {
+      line = StringUtil.removeAll(GedcomHelper.leadingTrailingPatternWhole, line);
+      line = StringUtil.replaceAll(GedcomHelper.spacesPattern, line, " ");
+
+      lineCount++;
+
+      if (line.length() == 0) {
+        continue;
+      }
+
+      String[] lineParts = line.split(GedcomLine.DELIM);
+
+      if (lineParts.length < 2) {
+        parsed.add(lineCount + " " + LineStatus.INCOMPLETE);
+        continue;
+      }
+
+      int level = 0;
+      try {
+        level = Integer.parseInt(lineParts[0]);
+      } catch (NumberFormatException e) {
+        parsed.add(lineCount + " " + LineStatus.INVALID_LEVEL);
+        continue;
+      }
+
+      String tag = null;
+      String xref = null;
+      boolean xrefBeforeTag = false;
+      int valueIndex = 2;
+
+      if (isXRef(lineParts[1])) {
+        xrefBeforeTag = true;
+        xref = lineParts[1].substring(1, lineParts[1].length() - 1);
+      } else {
+        tag = lineParts[1];
+      }
+
+      if (lineParts.length > 2) {
+        if (tag != null && isXRef(lineParts[2])) {
+          xref = lineParts[2].substring(1, lineParts[2].length() - 1);
+          valueIndex++;
+        } else if (tag == null) {
+          tag = lineParts[2];
+          valueIndex++;
+        }
+      }
+
+      String value = null;
+      for (int i = valueIndex; i < lineParts.length; i++) {
+        value = (value == null ? "" : value + " ") + lineParts[i];
+      }
+
+      parsed.add(format(lineCount, level, tag, xref == null || xref.length() == 0 ? null : xref,
+          value, xrefBeforeTag));
+    }
+
+    input.close();
+
+    return parsed;
+  }
+
+  /**
+   *
+   *
+   * @param linePart
+   * @return
+   */
+  private static boolean isXRef(String linePart) {
+    return linePart.length() >= 2 && linePart.startsWith("@") && linePart.endsWith("@");
+  }
+
+  /**
+   *
+   *
+   * @param lineNumber
+   * @param level
+   * @param tag
+   * @param xref
+   * @param value
+   * @param xrefBeforeTag
+   * @return
+   */
+  private static String format(int lineNumber, int level, String tag, String xref,
+      String value, boolean xrefBeforeTag) {
+    return lineNumber + " " + level + " tag=" + tag + " xref=" + xref + " value=" + value +
+        " xrefBeforeTag=" + xrefBeforeTag;
+  }
+
+}
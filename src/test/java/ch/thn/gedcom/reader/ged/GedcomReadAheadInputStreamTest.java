@@ -0,0 +1,136 @@
+/**
+ *    Copyright 2014 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ch.thn.gedcom.reader.ged;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Test;
+
+/**
+ * Tests that the {@link GedcomReadAheadInputStream} passes on the data and the
+ * errors of its source
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ */
+public class GedcomReadAheadInputStreamTest {
+
+  @Test(timeout = 10000)
+  public void readsAllData() throws IOException {
+    byte[] data = new byte[100000];
+    for (int i = 0; i < data.length; i++) {
+      data[i] = (byte)i;
+    }
+
+    InputStream in = new GedcomReadAheadInputStream(new ByteArrayInputStream(data), 1000, 3);
+
+    try {
+      assertArrayEquals(data, readAll(in));
+    } finally {
+      in.close();
+    }
+  }
+
+  @Test(timeout = 10000)
+  public void ioException() {
+    assertFailure(new IOException("source failed"), IOException.class);
+  }
+
+  @Test(timeout = 10000)
+  public void runtimeException() {
+    assertFailure(new IllegalStateException("source failed"), IllegalStateException.class);
+  }
+
+  @Test(timeout = 10000)
+  public void error() {
+    assertFailure(new AssertionError("source failed"), AssertionError.class);
+  }
+
+  /**
+   * Reads a source which fails after some bytes with the given exception. The
+   * reader has to get the data before the failure and then an IOException,
+   * instead of waiting for the end of the input.
+   *
+   * @param failure
+   * @param expectedCause The exception or the cause of the IOException
+   */
+  private static void assertFailure(final Throwable failure,
+      Class<? extends Throwable> expectedCause) {
+    InputStream source = new InputStream() {
+      private int count = 0;
+
+      @Override
+      public int read() throws IOException {
+        byte[] b = new byte[1];
+        return read(b, 0, 1) < 0 ? -1 : b[0] & 0xFF;
+      }
+
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+        //One byte at a time, so that no read bytes are lost with the failure
+        if (count == 10) {
+          if (failure instanceof IOException) {
+            throw (IOException)failure;
+          } else if (failure instanceof RuntimeException) {
+            throw (RuntimeException)failure;
+          }
+
+          throw (Error)failure;
+        }
+
+        b[off] = (byte)count++;
+        return 1;
+      }
+    };
+
+    InputStream in = new GedcomReadAheadInputStream(source, 4, 2);
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+    try {
+      int b = 0;
+      while ((b = in.read()) != -1) {
+        out.write(b);
+      }
+    } catch (IOException e) {
+      Throwable cause = e == failure ? e : e.getCause();
+      assertEquals(expectedCause, cause.getClass());
+      assertEquals(10, out.size());
+      return;
+    }
+
+    throw new AssertionError("The failure of the source has not been passed on");
+  }
+
+  private static byte[] readAll(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buffer = new byte[777];
+    int read = 0;
+
+    while ((read = in.read(buffer)) != -1) {
+      out.write(buffer, 0, read);
+    }
+
+    return out.toByteArray();
+  }
+
+}
@@ -0,0 +1,191 @@
+/**
+ *    Copyright 2014 Thomas Naeff (github.com/thnaeff)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+package ch.thn.gedcom.reader.ged;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.base.Charsets;
+
+import ch.thn.gedcom.data.GedcomTree;
+import ch.thn.gedcom.reader.GedcomReaderError;
+import ch.thn.gedcom.store.GedcomParseException;
+import ch.thn.gedcom.store.GedcomStore;
+
+/**
+ * Reimports a GEDCOM file in which one record has been changed
+ *
+ * @author Thomas Naeff (github.com/thnaeff)
+ *
+ */
+public class GedcomReimportTest {
+
+  private static final String RECORDS =
+      "0 HEAD\n1 CHAR UTF-8\n" +
+      "0 @I1@ INDI\n1 NAME John /Doe/\n1 SEX M\n" +
+      "0 @I2@ INDI\n1 NAME Jane /Doe/\n1 SEX F\n" +
+      "0 @I3@ INDI\n1 NAME Jim /Doe/\n1 SEX M\n" +
+      "0 TRLR\n";
+
+  private GedcomStore store = null;
+
+  private File gedcomFile = null;
+  private File fingerprintFile = null;
+
+  @Before
+  public void setUp() throws IOException, GedcomParseException {
+    store = new GedcomStore();
+    store.showParsingOutput(false);
+    store.parse(store.getClass().getResource("/gedcomobjects_5.5.1.gedg").getPath());
+
+    gedcomFile = File.createTempFile("reimport", ".ged");
+    fingerprintFile = new File(gedcomFile.getPath() + ".fingerprints");
+  }
+
+  @After
+  public void tearDown() {
+    gedcomFile.delete();
+    fingerprintFile.delete();
+  }
+
+  @Test
+  public void oneChangedRecord() throws IOException {
+    write(RECORDS);
+
+    GedcomReimportResult first = reimport(new GedcomGEDReader(store), null);
+    assertEquals(Arrays.asList("I1", "I2", "I3"), sorted(first.getAdded()));
+
+    //Same size, only the name of I2 changes
+    write(RECORDS.replace("Jane", "Joan"));
+
+    GedcomGEDReader reader = new GedcomGEDReader(store);
+    List<GedcomTree> read = new ArrayList<GedcomTree>();
+    GedcomReimportResult second = reimport(reader, read);
+
+    assertEquals(Collections.emptyList(), second.getAdded());
+    assertEquals(Arrays.asList("I2"), second.getChanged());
+    assertEquals(Collections.emptyList(), second.getDeleted());
+    assertEquals(2, second.getUnchangedCount());
+
+    //Only the new version of the changed record is in the new storage
+    assertEquals(1, read.size());
+    assertEquals(1, reader.getStructureStorage().getTotalStructureCount());
+
+    assertTrue(!reimport(new GedcomGEDReader(store), null).hasChanges());
+  }
+
+  @Test(expected = GedcomReaderError.class)
+  public void storageWithRecords() throws IOException {
+    write(RECORDS);
+
+    GedcomGEDReader reader = new GedcomGEDReader(store);
+    reimport(reader, null);
+
+    write(RECORDS.replace("Jane", "Joan"));
+
+    //The storage still contains the old version of I2
+    reimport(reader, null);
+  }
+
+  @Test
+  public void recordFilter() throws IOException {
+    write(RECORDS);
+
+    GedcomGEDReader reader = new GedcomGEDReader(store);
+    reader.setRecordFilter(new GedcomRecordTypeFilter("FAM"));
+
+    try {
+      reimport(reader, null);
+      fail("Reimported with a record filter");
+    } catch (GedcomReaderError e) {
+      //The skipped records would be taken as unchanged next time
+    }
+
+    assertTrue(!fingerprintFile.exists());
+  }
+
+  @Test
+  public void tagProjection() throws IOException {
+    write(RECORDS);
+
+    GedcomGEDReader reader = new GedcomGEDReader(store);
+    reader.setTagProjection(new GedcomTagProjection("INDI.NAME"));
+
+    try {
+      reimport(reader, null);
+      fail("Reimported with a tag projection");
+    } catch (GedcomReaderError e) {
+      //The changes of the pruned lines would be lost
+    }
+
+    assertTrue(!fingerprintFile.exists());
+  }
+
+  private void write(String data) throws IOException {
+    OutputStream out = new FileOutputStream(gedcomFile);
+
+    try {
+      out.write(data.getBytes(Charsets.UTF_8));
+    } finally {
+      out.close();
+    }
+  }
+
+  /**
+   * Reimports the file and collects the records which have been read
+   *
+   * @param reader
+   * @param read The list for the records or <code>null</code>
+   * @return
+   * @throws IOException
+   */
+  private GedcomReimportResult reimport(GedcomGEDReader reader, final List<GedcomTree> read)
+      throws IOException {
+    if (read != null) {
+      reader.setRecordListener(new GedcomRecordListener() {
+        @Override
+        public boolean recordRead(GedcomTree record) {
+          read.add(record);
+          return true;
+        }
+      });
+    }
+
+    return reader.reimport(gedcomFile.getPath(), fingerprintFile.getPath());
+  }
+
+  private static List<String> sorted(List<String> list) {
+    List<String> sorted = new ArrayList<String>(list);
+    Collections.sort(sorted);
+    return sorted;
+  }
+
+}